@@ -0,0 +1,98 @@
+package bench;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * La classe BenchmarkRunner esegue la suite di benchmark di {@link MiningBenchmarks} e ne stampa i risultati.
+ * <p>
+ * I benchmark si compilano insieme ai sorgenti del server (cartella bench/src) e si avviano con
+ * {@code java -cp <classi> bench.BenchmarkRunner [opzioni]}. Le opzioni sono:
+ * <ul>
+ *     <li>{@code -f <regex>}: esegue solo i benchmark la cui chiave "nome[parametri]" contiene l'espressione;</li>
+ *     <li>{@code -wi <n>}: iterazioni di riscaldamento (predefinito 3);</li>
+ *     <li>{@code -i <n>}: iterazioni misurate (predefinito 5);</li>
+ *     <li>{@code -t <ms>}: durata minima di un'iterazione in millisecondi (predefinito 500);</li>
+ *     <li>{@code -o <file>}: salva i risultati in un file CSV;</li>
+ *     <li>{@code -b <file>}: confronta i risultati con quelli di un'esecuzione precedente salvati con -o;</li>
+ *     <li>{@code -r <percentuale>}: peggioramento oltre il quale un confronto è una regressione (predefinito 10),
+ *     purché superi anche il doppio della somma delle deviazioni standard delle due misure.</li>
+ * </ul>
+ * Con -b il programma termina con codice 1 se almeno un benchmark è peggiorato oltre la soglia,
+ * così da poter essere usato per verificare una modifica prima di integrarla.
+ * I benchmark vanno eseguiti in una JVM dedicata e con un heap fisso (ad esempio -Xms2g -Xmx2g).
+ */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Pattern filter = null;
+        int warmup = 3;
+        int iterations = 5;
+        long iterationMillis = 500;
+        Path output = null;
+        Path baselineFile = null;
+        double threshold = 10;
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            if (i + 1 >= args.length) usage("Valore mancante per " + option);
+            String value = args[++i];
+            switch (option) {
+                case "-f": filter = Pattern.compile(value); break;
+                case "-wi": warmup = Integer.parseInt(value); break;
+                case "-i": iterations = Integer.parseInt(value); break;
+                case "-t": iterationMillis = Long.parseLong(value); break;
+                case "-o": output = Path.of(value); break;
+                case "-b": baselineFile = Path.of(value); break;
+                case "-r": threshold = Double.parseDouble(value); break;
+                default: usage("Opzione sconosciuta: " + option);
+            }
+        }
+        if (iterations < 1 || warmup < 0 || iterationMillis < 1) usage("Numero di iterazioni o durata non validi");
+
+        Map<String, Result> baseline = baselineFile != null ? Result.read(baselineFile) : Map.of();
+        Harness harness = new Harness(warmup, iterations, iterationMillis);
+        List<Result> results = new ArrayList<>();
+        int regressions = 0;
+        System.out.println("JVM " + System.getProperty("java.vm.name") + " " + Runtime.version()
+                + ", " + Runtime.getRuntime().availableProcessors() + " CPU, heap " + Runtime.getRuntime().maxMemory() / (1 << 20) + " MB");
+        for (MiningBenchmarks.Case c : MiningBenchmarks.all()) {
+            if (filter != null && !filter.matcher(c.getKey()).find()) continue;
+            Result result = harness.measure(c.name, c.params, c.prepare());
+            results.add(result);
+            StringBuilder line = new StringBuilder(result.format());
+            Result previous = baseline.get(result.getKey());
+            if (previous != null) {
+                double change = 100 * (result.getMeanNanos() - previous.getMeanNanos()) / previous.getMeanNanos();
+                line.append(String.format(Locale.ROOT, "  %+.1f%% vs %s", change, Result.formatNanos(previous.getMeanNanos())));
+                // una differenza entro l'errore delle due misure non è considerata una regressione
+                double error = 2 * (result.getDeviationNanos() + previous.getDeviationNanos());
+                if (change > threshold && result.getMeanNanos() - previous.getMeanNanos() > error) {
+                    line.append("  REGRESSION");
+                    regressions++;
+                }
+            }
+            System.out.println(line);
+        }
+        if (output != null) {
+            Result.write(results, output);
+            System.out.println("Risultati salvati in " + output);
+        }
+        if (regressions > 0) {
+            System.out.println(regressions + " benchmark peggiorati oltre il " + threshold + "%");
+            System.exit(1);
+        }
+    }
+
+    private static void usage(String message) {
+        System.err.println(message);
+        System.err.println("Uso: bench.BenchmarkRunner [-f regex] [-wi n] [-i n] [-t ms] [-o risultati.csv] [-b baseline.csv] [-r percentuale]");
+        System.exit(2);
+    }
+}
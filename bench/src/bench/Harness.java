@@ -0,0 +1,110 @@
+package bench;
+
+/**
+ * La classe Harness misura il tempo medio di un'operazione, sul modello dei microbenchmark di JMH:
+ * <ul>
+ *     <li>il numero di invocazioni per iterazione viene calibrato così che un'iterazione duri almeno il tempo indicato;</li>
+ *     <li>le iterazioni di riscaldamento permettono al JIT di compilare il codice misurato e non vengono conteggiate;</li>
+ *     <li>i valori restituiti dalle operazioni vengono accumulati in un campo volatile, così che il JIT
+ *     non possa eliminare il calcolo come codice morto;</li>
+ *     <li>il risultato riporta media e deviazione standard del tempo per operazione sulle iterazioni misurate.</li>
+ * </ul>
+ */
+final class Harness {
+
+    /**
+     * Operazione misurata.
+     */
+    @FunctionalInterface
+    interface Operation {
+
+        /**
+         * Esegue una volta l'operazione.
+         * @return Un valore che dipende dal risultato dell'operazione, consumato dall'harness.
+         * @throws Exception Se l'operazione fallisce; il benchmark viene interrotto.
+         */
+        long run() throws Exception;
+    }
+
+    /**
+     * Numero di iterazioni di riscaldamento.
+     */
+    private final int warmupIterations;
+
+    /**
+     * Numero di iterazioni misurate.
+     */
+    private final int measurementIterations;
+
+    /**
+     * Durata minima di un'iterazione in nanosecondi.
+     */
+    private final long iterationNanos;
+
+    /**
+     * Destinazione dei valori restituiti dalle operazioni.
+     */
+    private volatile long sink;
+
+    Harness(int warmupIterations, int measurementIterations, long iterationMillis) {
+        this.warmupIterations = warmupIterations;
+        this.measurementIterations = measurementIterations;
+        this.iterationNanos = iterationMillis * 1_000_000L;
+    }
+
+    /**
+     * Misura l'operazione.
+     * @param name Il nome del benchmark.
+     * @param params I parametri del benchmark, nella forma "nome=valore,...".
+     * @param operation L'operazione da misurare.
+     * @return Il risultato della misura.
+     * @throws Exception Se l'operazione fallisce.
+     */
+    Result measure(String name, String params, Operation operation) throws Exception {
+        long invocations = calibrate(operation);
+        for (int i = 0; i < warmupIterations; i++) {
+            iteration(operation, invocations);
+        }
+        double[] samples = new double[measurementIterations];
+        for (int i = 0; i < measurementIterations; i++) {
+            samples[i] = (double) iteration(operation, invocations) / invocations;
+        }
+        double mean = 0;
+        for (double sample : samples) mean += sample;
+        mean /= samples.length;
+        double variance = 0;
+        for (double sample : samples) variance += (sample - mean) * (sample - mean);
+        double deviation = samples.length > 1 ? Math.sqrt(variance / (samples.length - 1)) : 0;
+        return new Result(name, params, mean, deviation, invocations);
+    }
+
+    /**
+     * Raddoppia il numero di invocazioni finché un'iterazione non raggiunge la durata minima.
+     */
+    private long calibrate(Operation operation) throws Exception {
+        long invocations = 1;
+        while (true) {
+            long elapsed = iteration(operation, invocations);
+            if (elapsed >= iterationNanos || invocations >= 1L << 30) {
+                return invocations;
+            }
+            // stima il numero necessario, senza superare un fattore 16 per tentativo
+            long estimate = elapsed > 0 ? (long) Math.ceil((double) invocations * iterationNanos / elapsed) : invocations * 16;
+            invocations = Math.max(invocations + 1, Math.min(estimate, invocations * 16));
+        }
+    }
+
+    /**
+     * Esegue le invocazioni e restituisce il tempo trascorso in nanosecondi.
+     */
+    private long iteration(Operation operation, long invocations) throws Exception {
+        long accumulator = 0;
+        long start = System.nanoTime();
+        for (long i = 0; i < invocations; i++) {
+            accumulator += operation.run();
+        }
+        long elapsed = System.nanoTime() - start;
+        sink += accumulator;
+        return elapsed;
+    }
+}
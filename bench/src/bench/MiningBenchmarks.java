@@ -0,0 +1,149 @@
+package bench;
+
+import data.Data;
+import data.Tuple;
+import mining.ClusteringRadiusException;
+import mining.MappedModel;
+import mining.QTMiner;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * La classe MiningBenchmarks definisce i benchmark dei percorsi critici del dataset e del clustering:
+ * distanza tra tuple, costruzione delle tuple, cluster candidato, clustering completo, formattazione
+ * dei cluster e salvataggio/caricamento del modello. Ogni benchmark è ripetuto per più dimensioni del dataset
+ * e, dove ha senso, per più raggi.
+ */
+final class MiningBenchmarks {
+
+    /**
+     * Benchmark con i suoi parametri: la preparazione viene eseguita solo se il benchmark è selezionato.
+     */
+    static final class Case {
+
+        final String name;
+        final String params;
+        private final Setup setup;
+
+        Case(String name, String params, Setup setup) {
+            this.name = name;
+            this.params = params;
+            this.setup = setup;
+        }
+
+        String getKey() {
+            return name + "[" + params + "]";
+        }
+
+        Harness.Operation prepare() throws Exception {
+            return setup.prepare();
+        }
+    }
+
+    /**
+     * Preparazione di un benchmark: genera i dati e restituisce l'operazione da misurare.
+     */
+    @FunctionalInterface
+    interface Setup {
+        Harness.Operation prepare() throws Exception;
+    }
+
+    private static final int[] COMPUTE_ROWS = {500, 1000, 2000};
+    private static final double[] RADII = {0.5, 1.5};
+
+    private MiningBenchmarks() {
+    }
+
+    /**
+     * Restituisce l'elenco dei benchmark.
+     * @return I benchmark, nell'ordine di esecuzione.
+     */
+    static List<Case> all() {
+        List<Case> cases = new ArrayList<>();
+
+        for (int attributes : new int[]{4, 16}) {
+            cases.add(new Case("Tuple.getDistance", "attributes=" + attributes, () -> {
+                Data data = SyntheticData.generate(1024, attributes / 2, attributes / 2, 8, 7L);
+                Tuple[] tuples = new Tuple[data.getNumberOfExamples()];
+                for (int i = 0; i < tuples.length; i++) tuples[i] = data.getItemSet(i);
+                int[] next = {0};
+                return () -> {
+                    int i = next[0]++ & 1023;
+                    return Double.doubleToRawLongBits(tuples[i % tuples.length].getDistance(tuples[(i * 31 + 7) % tuples.length]));
+                };
+            }));
+        }
+
+        cases.add(new Case("Data.getItemSet", "rows=10000", () -> {
+            Data data = SyntheticData.generate(10000);
+            int[] next = {0};
+            return () -> {
+                int i = next[0]++;
+                if (next[0] == data.getNumberOfExamples()) next[0] = 0;
+                return data.getItemSet(i).getLength();
+            };
+        }));
+
+        for (int rows : new int[]{1000, 4000}) {
+            for (double radius : RADII) {
+                cases.add(new Case("QTMiner.buildCandidateCluster", "rows=" + rows + ",radius=" + radius, () -> {
+                    Data data = SyntheticData.generate(rows);
+                    QTMiner miner = new QTMiner(radius);
+                    boolean[] isClustered = new boolean[data.getNumberOfExamples()];
+                    // Cluster non è pubblica: il risultato viene consumato tramite Object
+                    return () -> System.identityHashCode(miner.buildCandidateCluster(data, isClustered));
+                }));
+            }
+        }
+
+        for (int rows : COMPUTE_ROWS) {
+            for (double radius : RADII) {
+                cases.add(new Case("QTMiner.compute", "rows=" + rows + ",radius=" + radius, () -> {
+                    Data data = SyntheticData.generate(rows);
+                    return () -> new QTMiner(radius).compute(data);
+                }));
+            }
+        }
+
+        for (int rows : COMPUTE_ROWS) {
+            cases.add(new Case("ClusterSet.toString(Data)", "rows=" + rows + ",radius=1.5", () -> {
+                Data data = SyntheticData.generate(rows);
+                QTMiner miner = mine(data, 1.5);
+                return () -> miner.getC().toString(data).length();
+            }));
+
+            cases.add(new Case("QTMiner.salva", "rows=" + rows + ",radius=1.5", () -> {
+                QTMiner miner = mine(SyntheticData.generate(rows), 1.5);
+                Path file = SyntheticData.tempFile(".qtm");
+                return () -> {
+                    miner.salva(file.toString(), "bench");
+                    return 1;
+                };
+            }));
+
+            cases.add(new Case("QTMiner.load", "rows=" + rows + ",radius=1.5", () -> {
+                Path file = SyntheticData.tempFile(".qtm");
+                mine(SyntheticData.generate(rows), 1.5).salva(file.toString(), "bench");
+                return () -> new QTMiner(file.toString()).getC().size();
+            }));
+
+            cases.add(new Case("MappedModel.open+toString", "rows=" + rows + ",radius=1.5", () -> {
+                Path file = SyntheticData.tempFile(".qtm");
+                mine(SyntheticData.generate(rows), 1.5).salva(file.toString(), "bench");
+                return () -> MappedModel.open(file).toString().length();
+            }));
+        }
+        return cases;
+    }
+
+    private static QTMiner mine(Data data, double radius) throws Exception {
+        QTMiner miner = new QTMiner(radius);
+        try {
+            miner.compute(data);
+        } catch (ClusteringRadiusException e) {
+            // un solo cluster: il modello resta comunque utilizzabile per i benchmark
+        }
+        return miner;
+    }
+}
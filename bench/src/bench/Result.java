@@ -0,0 +1,102 @@
+package bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * La classe Result rappresenta il risultato di un benchmark: tempo medio per operazione e sua deviazione standard.
+ * I risultati possono essere salvati in un file CSV e riletti come riferimento (baseline) per un'esecuzione successiva.
+ */
+final class Result {
+
+    private static final String HEADER = "benchmark,params,mean_ns,stddev_ns,invocations";
+
+    private final String name;
+    private final String params;
+    private final double meanNanos;
+    private final double deviationNanos;
+    private final long invocations;
+
+    Result(String name, String params, double meanNanos, double deviationNanos, long invocations) {
+        this.name = name;
+        this.params = params;
+        this.meanNanos = meanNanos;
+        this.deviationNanos = deviationNanos;
+        this.invocations = invocations;
+    }
+
+    /**
+     * Restituisce la chiave che identifica il benchmark con i suoi parametri.
+     * @return La chiave "nome[parametri]".
+     */
+    String getKey() {
+        return name + "[" + params + "]";
+    }
+
+    double getMeanNanos() {
+        return meanNanos;
+    }
+
+    double getDeviationNanos() {
+        return deviationNanos;
+    }
+
+    /**
+     * Restituisce la riga che descrive il risultato, con il tempo in un'unità leggibile.
+     * @return La riga formattata.
+     */
+    String format() {
+        return String.format(Locale.ROOT, "%-45s %-28s %14s +- %-12s (%d op/iter)",
+                name, params, formatNanos(meanNanos), formatNanos(deviationNanos), invocations);
+    }
+
+    static String formatNanos(double nanos) {
+        if (nanos >= 1e9) return String.format(Locale.ROOT, "%.3f s", nanos / 1e9);
+        if (nanos >= 1e6) return String.format(Locale.ROOT, "%.3f ms", nanos / 1e6);
+        if (nanos >= 1e3) return String.format(Locale.ROOT, "%.3f us", nanos / 1e3);
+        return String.format(Locale.ROOT, "%.1f ns", nanos);
+    }
+
+    /**
+     * Salva i risultati in un file CSV.
+     * @param results I risultati.
+     * @param file Il file di destinazione.
+     * @throws IOException Se la scrittura fallisce.
+     */
+    static void write(List<Result> results, Path file) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add(HEADER);
+        for (Result r : results) {
+            lines.add(String.format(Locale.ROOT, "%s,%s,%.3f,%.3f,%d",
+                    r.name, r.params.replace(',', ';'), r.meanNanos, r.deviationNanos, r.invocations));
+        }
+        Files.write(file, lines);
+    }
+
+    /**
+     * Legge i risultati da un file CSV scritto da {@link #write(List, Path)}.
+     * @param file Il file da leggere.
+     * @return I risultati indicizzati per chiave.
+     * @throws IOException Se la lettura fallisce o il file non è nel formato atteso.
+     */
+    static Map<String, Result> read(Path file) throws IOException {
+        Map<String, Result> results = new LinkedHashMap<>();
+        List<String> lines = Files.readAllLines(file);
+        if (lines.isEmpty() || !lines.get(0).equals(HEADER)) throw new IOException("Formato dei risultati non riconosciuto: " + file);
+        for (String line : lines.subList(1, lines.size())) {
+            if (line.isBlank()) continue;
+            String[] fields = line.split(",");
+            if (fields.length != 5) throw new IOException("Riga non valida in " + file + ": " + line);
+            Result r = new Result(fields[0], fields[1].replace(';', ','), Double.parseDouble(fields[2]),
+                    Double.parseDouble(fields[3]), Long.parseLong(fields[4]));
+            results.put(r.getKey(), r);
+        }
+        return results;
+    }
+}
@@ -0,0 +1,253 @@
+package bench;
+
+import data.Data;
+import data.SyntheticSource;
+import mining.ClusteringRadiusException;
+import mining.QTMiner;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * La classe ScalabilitySuite misura come crescono tempo, memoria e numero di distanze calcolate dal clustering QT
+ * al crescere del dataset, così che un cambiamento della complessità dell'algoritmo sia evidente.
+ * <p>
+ * Per ogni dimensione (di default la serie 1k, 2k, 5k, 10k, ... fino a 1M tuple) viene generato un dataset con
+ * {@link SyntheticSource} e ne viene misurato il clustering. Per ogni dimensione si registrano il tempo,
+ * il picco dell'heap, le distanze calcolate, il loro rapporto con n² e l'esponente locale della curva del tempo
+ * (log(t2/t1) / log(n2/n1) rispetto alla dimensione precedente). Poiché l'algoritmo è quadratico, le dimensioni
+ * il cui tempo stimato supera il budget vengono saltate. Le opzioni sono:
+ * <ul>
+ *     <li>{@code -min <n>} e {@code -max <n>}: dimensioni minima e massima (predefinite 1000 e 1000000);</li>
+ *     <li>{@code -radius <r>}: raggio del clustering (predefinito 0.5);</li>
+ *     <li>{@code -spec <specifica>}: parametri del generatore come in {@link SyntheticSource#parse}, senza rows
+ *     (predefinito "continuous=2,discrete=2,clusters=8,noise=0.05,seed=42");</li>
+ *     <li>{@code -budget <s>}: tempo massimo stimato per una dimensione, in secondi (predefinito 600);</li>
+ *     <li>{@code -o <file>}: salva la curva in un file CSV;</li>
+ *     <li>{@code -b <file>}: confronta la curva con una salvata in precedenza con -o;</li>
+ *     <li>{@code -e <tolleranza>}: aumento dell'esponente oltre il quale il confronto è una regressione (predefinito 0.5).</li>
+ * </ul>
+ * Nel confronto, il numero di distanze calcolate è deterministico e ogni aumento è una regressione;
+ * il tempo dipende dalla macchina, quindi si confronta solo la sua crescita tramite l'esponente.
+ * Con -b il programma termina con codice 1 se c'è almeno una regressione.
+ */
+public final class ScalabilitySuite {
+
+    private static final String HEADER = "rows,clusters,millis,peak_heap_mb,distance_evaluations,evaluations_per_n2,exponent";
+
+    /**
+     * Misura del clustering per una dimensione del dataset.
+     */
+    private static final class Point {
+
+        final int rows;
+        final int clusters;
+        final double millis;
+        final double peakHeapMb;
+        final long evaluations;
+        final double exponent;
+
+        Point(int rows, int clusters, double millis, double peakHeapMb, long evaluations, double exponent) {
+            this.rows = rows;
+            this.clusters = clusters;
+            this.millis = millis;
+            this.peakHeapMb = peakHeapMb;
+            this.evaluations = evaluations;
+            this.exponent = exponent;
+        }
+
+        double getEvaluationsPerN2() {
+            return (double) evaluations / ((double) rows * rows);
+        }
+
+        String toCsv() {
+            return String.format(Locale.ROOT, "%d,%d,%.3f,%.1f,%d,%.6f,%s", rows, clusters, millis, peakHeapMb,
+                    evaluations, getEvaluationsPerN2(), Double.isNaN(exponent) ? "" : String.format(Locale.ROOT, "%.3f", exponent));
+        }
+
+        static Point fromCsv(String line) {
+            String[] fields = line.split(",", -1);
+            if (fields.length != 7) throw new IllegalArgumentException("Riga non valida: " + line);
+            return new Point(Integer.parseInt(fields[0]), Integer.parseInt(fields[1]), Double.parseDouble(fields[2]),
+                    Double.parseDouble(fields[3]), Long.parseLong(fields[4]),
+                    fields[6].isEmpty() ? Double.NaN : Double.parseDouble(fields[6]));
+        }
+    }
+
+    private ScalabilitySuite() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int min = 1000;
+        int max = 1_000_000;
+        double radius = 0.5;
+        String spec = "continuous=2,discrete=2,clusters=8,noise=0.05,seed=42";
+        double budgetSeconds = 600;
+        Path output = null;
+        Path baselineFile = null;
+        double tolerance = 0.5;
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            if (i + 1 >= args.length) usage("Valore mancante per " + option);
+            String value = args[++i];
+            switch (option) {
+                case "-min": min = Integer.parseInt(value); break;
+                case "-max": max = Integer.parseInt(value); break;
+                case "-radius": radius = Double.parseDouble(value); break;
+                case "-spec": spec = value; break;
+                case "-budget": budgetSeconds = Double.parseDouble(value); break;
+                case "-o": output = Path.of(value); break;
+                case "-b": baselineFile = Path.of(value); break;
+                case "-e": tolerance = Double.parseDouble(value); break;
+                default: usage("Opzione sconosciuta: " + option);
+            }
+        }
+        if (min < 1 || max < min || budgetSeconds <= 0) usage("Dimensioni o budget non validi");
+        if (spec.matches("(^|.*,)\\s*rows\\s*=.*")) usage("La specifica non deve contenere rows");
+
+        Map<Integer, Point> baseline = baselineFile != null ? read(baselineFile) : Map.of();
+        System.out.println("JVM " + System.getProperty("java.vm.name") + " " + Runtime.version()
+                + ", heap " + Runtime.getRuntime().maxMemory() / (1 << 20) + " MB, radius " + radius + ", " + spec);
+        // riscaldamento: la prima misura non deve includere la compilazione del JIT
+        mine(generate(spec, min), radius);
+
+        List<Point> points = new ArrayList<>();
+        int regressions = 0;
+        Point previous = null;
+        for (int rows : sizes(min, max)) {
+            if (previous != null) {
+                // stima il tempo con l'esponente misurato finora, almeno quadratico
+                double exponent = Double.isNaN(previous.exponent) ? 2 : Math.max(2, previous.exponent);
+                double estimate = previous.millis * Math.pow((double) rows / previous.rows, exponent) / 1000;
+                if (estimate > budgetSeconds) {
+                    System.out.printf(Locale.ROOT, "%9d tuple: saltato, tempo stimato %.0f s oltre il budget di %.0f s%n",
+                            rows, estimate, budgetSeconds);
+                    break;
+                }
+            }
+            Point point = measure(spec, rows, radius, previous);
+            points.add(point);
+            StringBuilder line = new StringBuilder(String.format(Locale.ROOT,
+                    "%9d tuple: %6d cluster  %12.1f ms  heap %8.1f MB  %,16d distanze (%.3f n^2)  esponente %s",
+                    point.rows, point.clusters, point.millis, point.peakHeapMb, point.evaluations, point.getEvaluationsPerN2(),
+                    Double.isNaN(point.exponent) ? "-" : String.format(Locale.ROOT, "%.2f", point.exponent)));
+            Point reference = baseline.get(rows);
+            if (reference != null) {
+                if (point.evaluations > reference.evaluations) {
+                    line.append(String.format(Locale.ROOT, "  REGRESSION: distanze %+d", point.evaluations - reference.evaluations));
+                    regressions++;
+                } else if (!Double.isNaN(point.exponent) && !Double.isNaN(reference.exponent)
+                        && point.exponent > reference.exponent + tolerance) {
+                    line.append(String.format(Locale.ROOT, "  REGRESSION: esponente %.2f vs %.2f", point.exponent, reference.exponent));
+                    regressions++;
+                }
+            }
+            System.out.println(line);
+            previous = point;
+        }
+        if (output != null) {
+            write(points, output);
+            System.out.println("Curva salvata in " + output);
+        }
+        if (regressions > 0) {
+            System.out.println(regressions + " dimensioni peggiorate rispetto a " + baselineFile);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Restituisce le dimensioni della serie 1, 2, 5, 10, 20, 50, ... comprese tra min e max, più max stesso.
+     */
+    private static List<Integer> sizes(int min, int max) {
+        List<Integer> sizes = new ArrayList<>();
+        sizes.add(min);
+        for (long decade = 1; decade <= max; decade *= 10) {
+            for (int factor : new int[]{1, 2, 5}) {
+                long size = decade * factor;
+                if (size > min && size < max) sizes.add((int) size);
+            }
+        }
+        if (max > min) sizes.add(max);
+        return sizes;
+    }
+
+    private static Data generate(String spec, int rows) {
+        return SyntheticSource.parse(spec + ",rows=" + rows).load();
+    }
+
+    /**
+     * Genera il dataset e ne misura il clustering. La generazione non rientra nel tempo,
+     * mentre il picco dell'heap comprende anche il dataset.
+     */
+    private static Point measure(String spec, int rows, double radius, Point previous) throws Exception {
+        System.gc();
+        List<MemoryPoolMXBean> pools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                pool.resetPeakUsage();
+                pools.add(pool);
+            }
+        }
+        Data data = generate(spec, rows);
+        long start = System.nanoTime();
+        QTMiner miner = mine(data, radius);
+        double millis = (System.nanoTime() - start) / 1e6;
+        long peak = 0;
+        for (MemoryPoolMXBean pool : pools) {
+            peak += pool.getPeakUsage().getUsed();
+        }
+        double exponent = previous != null && previous.millis > 0
+                ? Math.log(millis / previous.millis) / Math.log((double) rows / previous.rows) : Double.NaN;
+        return new Point(rows, miner.getC().size(), millis, peak / (double) (1 << 20), miner.getDistanceEvaluations(), exponent);
+    }
+
+    private static QTMiner mine(Data data, double radius) throws Exception {
+        QTMiner miner = new QTMiner(radius);
+        try {
+            miner.compute(data);
+        } catch (ClusteringRadiusException e) {
+            // un solo cluster: la misura resta valida
+        }
+        return miner;
+    }
+
+    private static void write(List<Point> points, Path file) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add(HEADER);
+        for (Point point : points) {
+            lines.add(point.toCsv());
+        }
+        Files.write(file, lines);
+    }
+
+    private static Map<Integer, Point> read(Path file) throws IOException {
+        List<String> lines = Files.readAllLines(file);
+        if (lines.isEmpty() || !lines.get(0).equals(HEADER)) throw new IOException("Formato della curva non riconosciuto: " + file);
+        Map<Integer, Point> points = new LinkedHashMap<>();
+        for (String line : lines.subList(1, lines.size())) {
+            if (line.isBlank()) continue;
+            try {
+                Point point = Point.fromCsv(line);
+                points.put(point.rows, point);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Riga non valida in " + file + ": " + line);
+            }
+        }
+        return points;
+    }
+
+    private static void usage(String message) {
+        System.err.println(message);
+        System.err.println("Uso: bench.ScalabilitySuite [-min n] [-max n] [-radius r] [-spec specifica] [-budget s]"
+                + " [-o curva.csv] [-b baseline.csv] [-e tolleranza]");
+        System.exit(2);
+    }
+}
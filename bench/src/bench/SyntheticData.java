@@ -0,0 +1,52 @@
+package bench;
+
+import data.Data;
+import data.SyntheticSource;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * La classe SyntheticData genera i dataset sintetici riproducibili dei benchmark tramite {@link SyntheticSource},
+ * senza bisogno del database.
+ */
+final class SyntheticData {
+
+    private SyntheticData() {
+    }
+
+    /**
+     * Genera un dataset senza rumore, con le tuple raccolte attorno ai centri.
+     * @param rows Il numero di tuple.
+     * @param continuous Il numero di attributi continui.
+     * @param discrete Il numero di attributi discreti.
+     * @param centers Il numero di centri attorno a cui sono distribuite le tuple.
+     * @param seed Il seme del generatore: a parità di parametri e seme il dataset è identico.
+     * @return Il dataset.
+     */
+    static Data generate(int rows, int continuous, int discrete, int centers, long seed) {
+        return new SyntheticSource(rows, continuous, discrete, centers, 0, 0.05, 8, seed).load();
+    }
+
+    /**
+     * Genera un dataset con due attributi continui e due discreti distribuiti attorno a otto centri,
+     * la configurazione usata dai benchmark quando non indicano diversamente.
+     * @param rows Il numero di tuple.
+     * @return Il dataset.
+     */
+    static Data generate(int rows) {
+        return generate(rows, 2, 2, 8, 42L + rows);
+    }
+
+    /**
+     * Crea un file temporaneo che viene eliminato all'uscita della JVM.
+     * @param suffix Il suffisso del nome del file.
+     * @return Il percorso del file.
+     * @throws IOException Se il file non può essere creato.
+     */
+    static Path tempFile(String suffix) throws IOException {
+        Path file = Files.createTempFile("qt-bench", suffix);
+        file.toFile().deleteOnExit();
+        return file;
+    }
+}
@@ -0,0 +1,497 @@
+package server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * La classe LoadTest genera carico su un {@link MultiServer} aprendo molte connessioni concorrenti, ognuna delle quali
+ * invia una sequenza casuale di comandi secondo un mix configurabile. Al termine riporta, per ogni comando,
+ * throughput, percentili della latenza e percentuale di errori, oltre al costo di apertura delle connessioni
+ * (connessione TCP e negoziazione del protocollo).
+ * <p>
+ * Si trova nel package server per usare le stesse implementazioni di {@link MessageChannel} del server.
+ * Le opzioni sono:
+ * <ul>
+ *     <li>{@code -h <host>} e {@code -p <porta>}: indirizzo del server (predefiniti localhost e 8080);</li>
+ *     <li>{@code -embedded}: avvia il server nella stessa JVM, comodo per una prova veloce
+ *     (per misure attendibili il server va avviato in una JVM separata);</li>
+ *     <li>{@code -c <n>}: connessioni concorrenti (predefinito 16);</li>
+ *     <li>{@code -d <s>} e {@code -w <s>}: durata della misura e del riscaldamento iniziale, escluso dai risultati
+ *     (predefiniti 30 e 5 secondi);</li>
+ *     <li>{@code -rate <n>}: richieste al secondo complessive; 0 (predefinito) invia ogni richiesta appena
+ *     ricevuta la risposta alla precedente;</li>
+ *     <li>{@code -mix <codice=peso,...>}: comandi da inviare con il loro peso (predefinito "0=1,1=2,3=2,12=2,14=1");</li>
+ *     <li>{@code -table <nome>}: dataset caricato dai comandi 0 e 15, con gli stessi prefissi accettati dal server
+ *     (predefinito "synth:rows=2000,seed=42"; un server separato accetta i dataset sintetici solo se avviato
+ *     con la proprietà qt.synth.max.values);</li>
+ *     <li>{@code -radius <r>}: raggio del comando 1 (predefinito 0.5);</li>
+ *     <li>{@code -model <file>}: file del modello dei comandi 2 e 3 (predefinito "loadtest.qtm");</li>
+ *     <li>{@code -protocol <binary|deflate|object>}: protocollo delle connessioni (predefinito binary);</li>
+ *     <li>{@code -trace}: richiede la traccia di ogni comando (vedi {@link ServerOneClient#TRACE_FLAG})
+ *     e al termine stampa quella della richiesta più lenta di ogni comando;</li>
+ *     <li>{@code -o <file>}: salva i risultati in un file CSV.</li>
+ * </ul>
+ * I comandi supportati sono 0, 1, 2, 3, 9, 11, 12, 13, 14, 15, 18 e 20. Sono esclusi i comandi che richiedono
+ * l'identificativo di un job o che scrivono su disco o nel database dati diversi dal modello.
+ * Ogni connessione, appena aperta, carica il dataset ed esegue il clustering (comandi 0 e 1), così che i comandi
+ * che li richiedono trovino lo stato necessario; se il mix contiene il comando 3 il modello viene salvato
+ * una volta prima di iniziare. I comandi vengono eseguiti nello stato in cui si trova la connessione, come farebbe
+ * un client reale: ad esempio il comando 13 dopo il comando 3 riceve KO, perché il modello letto da file
+ * non conosce le tuple, e conta come errore.
+ * <p>
+ * Con -rate le richieste di ogni connessione sono programmate a intervalli regolari e la latenza è misurata
+ * dall'istante programmato, non da quello di invio: se il server rallenta, l'attesa accumulata dalle richieste
+ * in ritardo fa parte della latenza invece di essere nascosta dalla riduzione del ritmo di invio.
+ */
+public final class LoadTest {
+
+    private static final int[] SUPPORTED = {0, 1, 2, 3, 9, 11, 12, 13, 14, 15, 18, 20};
+
+    /**
+     * Codice con cui il costo di apertura delle connessioni compare nei risultati.
+     */
+    private static final int CONNECT = -1;
+
+    /**
+     * Numero massimo di valori dei dataset sintetici accettati dal server avviato con -embedded.
+     */
+    private static final long EMBEDDED_SYNTH_VALUES = 50_000_000L;
+
+    private final String host;
+    private final int port;
+    private final String protocol;
+    private final String table;
+    private final double radius;
+    private final String model;
+    private final boolean trace;
+
+    private LoadTest(String host, int port, String protocol, String table, double radius, String model, boolean trace) {
+        this.host = host;
+        this.port = port;
+        this.protocol = protocol;
+        this.table = table;
+        this.radius = radius;
+        this.model = model;
+        this.trace = trace;
+    }
+
+    /**
+     * Latenze misurate per un comando, in nanosecondi, e numero di errori.
+     */
+    private static final class Samples {
+
+        private long[] values = new long[1024];
+        private int size;
+        private long errors;
+        // traccia della richiesta più lenta tra quelle tracciate
+        private String slowestTrace;
+        private long slowestNanos;
+
+        void add(long nanos) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = nanos;
+        }
+
+        void addTrace(long nanos, String trace) {
+            if (trace != null && (slowestTrace == null || nanos > slowestNanos)) {
+                slowestTrace = trace;
+                slowestNanos = nanos;
+            }
+        }
+
+        void addAll(Samples other) {
+            for (int i = 0; i < other.size; i++) add(other.values[i]);
+            errors += other.errors;
+            addTrace(other.slowestNanos, other.slowestTrace);
+        }
+
+        long count() {
+            return size + errors;
+        }
+
+        /**
+         * Ordina le latenze; va chiamato prima di {@link #percentile(double)}.
+         */
+        void sort() {
+            Arrays.sort(values, 0, size);
+        }
+
+        double percentile(double p) {
+            if (size == 0) return Double.NaN;
+            int rank = (int) Math.ceil(p / 100 * size);
+            return values[Math.max(0, Math.min(size, rank) - 1)];
+        }
+
+        double mean() {
+            if (size == 0) return Double.NaN;
+            double sum = 0;
+            for (int i = 0; i < size; i++) sum += values[i];
+            return sum / size;
+        }
+    }
+
+    /**
+     * Una connessione al server con lo stato necessario ai comandi.
+     */
+    private final class Session implements AutoCloseable {
+
+        private final Socket socket;
+        private final MessageChannel channel;
+        // traccia dell'ultimo comando, se richiesta
+        private String lastTrace;
+
+        Session() throws IOException {
+            socket = new Socket();
+            boolean connected = false;
+            try {
+                socket.connect(new InetSocketAddress(host, port));
+                socket.setTcpNoDelay(true);
+                switch (protocol) {
+                    case "object": channel = new ObjectMessageChannel(socket.getInputStream(), socket.getOutputStream()); break;
+                    case "deflate": channel = BinaryMessageChannel.connect(socket, BinaryMessageChannel.FLAG_DEFLATE); break;
+                    default: channel = BinaryMessageChannel.connect(socket, 0);
+                }
+                connected = true;
+            } finally {
+                if (!connected) socket.close();
+            }
+        }
+
+        /**
+         * Invia un comando e ne legge la risposta completa.
+         * @return true se il server ha risposto OK, false se ha risposto KO.
+         */
+        boolean execute(int code) throws IOException, ClassNotFoundException {
+            channel.write(trace ? code | ServerOneClient.TRACE_FLAG : code);
+            switch (code) {
+                case 0: case 15: channel.write(table); break;
+                case 1: channel.write(radius); break;
+                case 2: case 3: channel.write(model); break;
+                case 11: case 12: channel.write(0); channel.write(-1); break;
+                case 13: channel.write(1); break;
+                default: break;
+            }
+            channel.flush();
+            lastTrace = null;
+            boolean ok = readResponse(code);
+            // la traccia segue la risposta, anche quando è un KO
+            if (trace) lastTrace = (String) channel.read();
+            return ok;
+        }
+
+        private boolean readResponse(int code) throws IOException, ClassNotFoundException {
+            String status = (String) channel.read();
+            if (status.startsWith("KO")) return false;
+            switch (code) {
+                // il comando 0 invia prima la tabella e poi OK
+                case 0: channel.read(); break;
+                case 1: channel.read(); channel.read(); break;
+                case 3: case 9: case 14: case 18: case 20: channel.read(); break;
+                case 11: case 12: case 13:
+                    while (!((String) channel.read()).isEmpty()) {
+                        // blocchi del testo fino al terminatore
+                    }
+                    break;
+                default: break;
+            }
+            return true;
+        }
+
+        @Override
+        public void close() {
+            try {
+                channel.close();
+                socket.close();
+            } catch (IOException e) {
+                // la connessione viene comunque abbandonata
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String host = "localhost";
+        int port = 8080;
+        boolean embedded = false;
+        int connections = 16;
+        int seconds = 30;
+        int warmupSeconds = 5;
+        double rate = 0;
+        String mix = "0=1,1=2,3=2,12=2,14=1";
+        String table = "synth:rows=2000,seed=42";
+        double radius = 0.5;
+        String model = "loadtest.qtm";
+        String protocol = "binary";
+        boolean trace = false;
+        Path output = null;
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            if (option.equals("-embedded")) {
+                embedded = true;
+                continue;
+            }
+            if (option.equals("-trace")) {
+                trace = true;
+                continue;
+            }
+            if (i + 1 >= args.length) usage("Valore mancante per " + option);
+            String value = args[++i];
+            switch (option) {
+                case "-h": host = value; break;
+                case "-p": port = Integer.parseInt(value); break;
+                case "-c": connections = Integer.parseInt(value); break;
+                case "-d": seconds = Integer.parseInt(value); break;
+                case "-w": warmupSeconds = Integer.parseInt(value); break;
+                case "-rate": rate = Double.parseDouble(value); break;
+                case "-mix": mix = value; break;
+                case "-table": table = value; break;
+                case "-radius": radius = Double.parseDouble(value); break;
+                case "-model": model = value; break;
+                case "-protocol": protocol = value; break;
+                case "-o": output = Path.of(value); break;
+                default: usage("Opzione sconosciuta: " + option);
+            }
+        }
+        if (connections < 1 || seconds < 1 || warmupSeconds < 0 || rate < 0) usage("Parametri di carico non validi");
+        if (!List.of("binary", "deflate", "object").contains(protocol)) usage("Protocollo sconosciuto: " + protocol);
+        int[] weights = parseMix(mix);
+
+        LoadTest test = new LoadTest(host, port, protocol, table, radius, model, trace);
+        if (embedded) test.startEmbedded();
+        test.run(connections, seconds, warmupSeconds, rate, weights, output);
+    }
+
+    /**
+     * Interpreta il mix dei comandi.
+     * @return Il peso di ogni comando, indicizzato per codice.
+     */
+    private static int[] parseMix(String mix) {
+        int[] weights = new int[SUPPORTED[SUPPORTED.length - 1] + 1];
+        for (String entry : mix.split(",")) {
+            String[] pair = entry.trim().split("=");
+            int code = -1;
+            int weight = 0;
+            try {
+                code = Integer.parseInt(pair[0].trim());
+                weight = pair.length > 1 ? Integer.parseInt(pair[1].trim()) : 1;
+            } catch (NumberFormatException e) {
+                usage("Mix non valido: " + entry);
+            }
+            int command = code;
+            if (Arrays.stream(SUPPORTED).noneMatch(c -> c == command)) usage("Comando non supportato: " + code);
+            if (weight < 0 || pair.length > 2) usage("Peso non valido: " + entry);
+            weights[code] += weight;
+        }
+        if (Arrays.stream(weights).sum() == 0) usage("Il mix non contiene comandi");
+        return weights;
+    }
+
+    /**
+     * Avvia il server su un thread della JVM corrente e attende che accetti connessioni.
+     * Se non è indicato diversamente con qt.synth.max.values, il server accetta i dataset sintetici
+     * fino a {@link #EMBEDDED_SYNTH_VALUES} valori.
+     */
+    private void startEmbedded() throws InterruptedException {
+        if (System.getProperty("qt.synth.max.values") == null) {
+            System.setProperty("qt.synth.max.values", String.valueOf(EMBEDDED_SYNTH_VALUES));
+        }
+        Thread server = new Thread(() -> new MultiServer(port), "qt-embedded-server");
+        server.setDaemon(true);
+        server.start();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (true) {
+            try {
+                // basta che la connessione venga accettata: viene chiusa subito
+                new Socket(host, port).close();
+                return;
+            } catch (IOException e) {
+                if (System.nanoTime() > deadline) throw new IllegalStateException("Il server non risponde sulla porta " + port);
+                Thread.sleep(50);
+            }
+        }
+    }
+
+    private void run(int connections, int seconds, int warmupSeconds, double rate, int[] weights, Path output) throws Exception {
+        if (weights[3] > 0) {
+            // il comando 3 apre il modello salvato: lo si crea una volta prima di iniziare
+            try (Session session = new Session()) {
+                if (!session.execute(0) || !session.execute(1) || !session.execute(2)) {
+                    throw new IllegalStateException("Preparazione del modello " + model + " non riuscita");
+                }
+            }
+        }
+
+        int[] cumulative = new int[weights.length];
+        for (int code = 0, sum = 0; code < weights.length; code++) {
+            sum += weights[code];
+            cumulative[code] = sum;
+        }
+        long start = System.nanoTime();
+        long measureStart = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long end = measureStart + TimeUnit.SECONDS.toNanos(seconds);
+        // intervallo tra due richieste della stessa connessione
+        long interval = rate > 0 ? (long) (1e9 * connections / rate) : 0;
+        List<Map<Integer, Samples>> results = new ArrayList<>();
+        AtomicBoolean failed = new AtomicBoolean();
+        CountDownLatch done = new CountDownLatch(connections);
+        for (int t = 0; t < connections; t++) {
+            Map<Integer, Samples> samples = new TreeMap<>();
+            results.add(samples);
+            Random random = new Random(t);
+            // le connessioni partono sfasate per non inviare le richieste tutte insieme
+            long offset = interval > 0 ? interval * t / connections : 0;
+            Thread.ofVirtual().name("qt-load-" + t).start(() -> {
+                try {
+                    worker(samples, random, cumulative, start + offset, interval, measureStart, end);
+                } catch (Exception e) {
+                    failed.set(true);
+                    System.err.println("Errore nel client di carico: " + e);
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        System.out.printf(Locale.ROOT, "%d connessioni verso %s:%d (%s), %s, riscaldamento %d s, misura %d s%n", connections,
+                host, port, protocol, rate > 0 ? "ritmo " + rate + " richieste/s" : "ritmo libero", warmupSeconds, seconds);
+        done.await();
+
+        Map<Integer, Samples> merged = new TreeMap<>();
+        for (Map<Integer, Samples> samples : results) {
+            samples.forEach((code, s) -> merged.computeIfAbsent(code, k -> new Samples()).addAll(s));
+        }
+        report(merged, seconds, output);
+        if (failed.get()) System.exit(1);
+    }
+
+    /**
+     * Ciclo di una connessione: invia comandi fino alla scadenza, riaprendo la connessione dopo un errore di comunicazione.
+     */
+    private void worker(Map<Integer, Samples> samples, Random random, int[] cumulative, long first, long interval,
+                        long measureStart, long end) throws InterruptedException {
+        Session session = null;
+        long next = first;
+        try {
+            while (System.nanoTime() < end) {
+                if (session == null) {
+                    long connectStart = System.nanoTime();
+                    try {
+                        session = new Session();
+                    } catch (IOException e) {
+                        record(samples, CONNECT, connectStart, false, measureStart, null);
+                        Thread.sleep(100);
+                        continue;
+                    }
+                    record(samples, CONNECT, connectStart, true, measureStart, null);
+                    // stato iniziale della connessione: dataset caricato e clustering eseguito
+                    for (int code : new int[]{0, 1}) {
+                        long setupStart = System.nanoTime();
+                        boolean ok = execute(session, code);
+                        record(samples, code, setupStart, ok, measureStart, session.lastTrace);
+                    }
+                    if (!session.socket.isConnected() || session.socket.isClosed()) session = null;
+                    continue;
+                }
+                long scheduled;
+                if (interval > 0) {
+                    long wait = next - System.nanoTime();
+                    if (wait > 0) TimeUnit.NANOSECONDS.sleep(wait);
+                    scheduled = next;
+                    next += interval;
+                    if (scheduled >= end) break;
+                } else {
+                    scheduled = System.nanoTime();
+                }
+                int code = pick(random, cumulative);
+                boolean ok = execute(session, code);
+                record(samples, code, scheduled, ok, measureStart, session.lastTrace);
+                if (session.socket.isClosed()) session = null;
+            }
+        } finally {
+            if (session != null) session.close();
+        }
+    }
+
+    /**
+     * Esegue un comando; un errore di comunicazione chiude la connessione e conta come errore del comando.
+     */
+    private static boolean execute(Session session, int code) {
+        try {
+            return session.execute(code);
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            session.close();
+            return false;
+        }
+    }
+
+    private static void record(Map<Integer, Samples> samples, int code, long start, boolean ok, long measureStart, String trace) {
+        long now = System.nanoTime();
+        // le connessioni si aprono soprattutto durante il riscaldamento: il loro costo viene sempre registrato
+        if (start < measureStart && code != CONNECT) return;
+        Samples s = samples.computeIfAbsent(code, k -> new Samples());
+        if (ok) {
+            s.add(now - start);
+            s.addTrace(now - start, trace);
+        } else {
+            s.errors++;
+        }
+    }
+
+    private static int pick(Random random, int[] cumulative) {
+        int r = random.nextInt(cumulative[cumulative.length - 1]);
+        int code = 0;
+        while (cumulative[code] <= r) code++;
+        return code;
+    }
+
+    private static void report(Map<Integer, Samples> merged, int seconds, Path output) throws IOException {
+        List<String> csv = new ArrayList<>();
+        csv.add("command,requests,errors,error_pct,throughput,mean_ms,p50_ms,p90_ms,p99_ms,p999_ms,max_ms");
+        System.out.printf(Locale.ROOT, "%-8s %9s %7s %7s %9s %9s %9s %9s %9s %9s %9s%n",
+                "comando", "richieste", "errori", "err%", "req/s", "media ms", "p50", "p90", "p99", "p99.9", "max");
+        long total = 0;
+        for (Map.Entry<Integer, Samples> entry : merged.entrySet()) {
+            Samples s = entry.getValue();
+            s.sort();
+            String name = entry.getKey() == CONNECT ? "connect" : String.valueOf(entry.getKey());
+            double errorPct = 100.0 * s.errors / s.count();
+            double throughput = (double) s.count() / seconds;
+            if (entry.getKey() != CONNECT) total += s.count();
+            double[] millis = {s.mean() / 1e6, s.percentile(50) / 1e6, s.percentile(90) / 1e6, s.percentile(99) / 1e6,
+                    s.percentile(99.9) / 1e6, s.percentile(100) / 1e6};
+            System.out.printf(Locale.ROOT, "%-8s %9d %7d %6.2f%% %9.1f %9.3f %9.3f %9.3f %9.3f %9.3f %9.3f%n",
+                    name, s.count(), s.errors, errorPct, throughput, millis[0], millis[1], millis[2], millis[3], millis[4], millis[5]);
+            csv.add(String.format(Locale.ROOT, "%s,%d,%d,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f",
+                    name, s.count(), s.errors, errorPct, throughput, millis[0], millis[1], millis[2], millis[3], millis[4], millis[5]));
+        }
+        System.out.printf(Locale.ROOT, "Totale: %d richieste, %.1f richieste/s%n", total, (double) total / seconds);
+        for (Map.Entry<Integer, Samples> entry : merged.entrySet()) {
+            Samples s = entry.getValue();
+            if (s.slowestTrace == null) continue;
+            System.out.printf(Locale.ROOT, "%nTraccia della richiesta più lenta del comando %d (%.3f ms lato client):%n%s",
+                    entry.getKey(), s.slowestNanos / 1e6, s.slowestTrace);
+        }
+        if (output != null) {
+            Files.write(output, csv);
+            System.out.println("Risultati salvati in " + output);
+        }
+    }
+
+    private static void usage(String message) {
+        System.err.println(message);
+        System.err.println("Uso: server.LoadTest [-h host] [-p porta] [-embedded] [-c connessioni] [-d s] [-w s] [-rate n]"
+                + " [-mix codice=peso,...] [-table nome] [-radius r] [-model file] [-protocol binary|deflate|object] [-trace] [-o risultati.csv]");
+        System.exit(2);
+    }
+}
@@ -0,0 +1,69 @@
+package data;
+
+/**
+ * Classe astratta che modella la memorizzazione per colonne dei valori assunti da un attributo nel dataset.
+ * I valori sono mantenuti in buffer primitivi invece che come oggetti, uno per ogni cella.
+ * @see ContinuousColumn
+ * @see DiscreteColumn
+ */
+abstract class AttributeColumn {
+
+    /**
+     * Restituisce il valore della colonna nella riga specificata.
+     * @param row L'indice della riga.
+     * @return Il valore (Double o String).
+     */
+    abstract Object getValue(int row);
+
+    /**
+     * Moltiplicatore dell'hash FNV-1a a 64 bit.
+     */
+    static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * Aggiunge all'impronta i byte del valore nella riga specificata (vedi {@link Data#getFingerprint()}).
+     * Valori diversi, compreso null, producono sequenze di byte diverse.
+     * @param h L'impronta calcolata fino alla riga precedente.
+     * @param row L'indice della riga.
+     * @return L'impronta aggiornata.
+     */
+    abstract long fingerprint(long h, int row);
+
+    /**
+     * Aggiunge all'impronta FNV-1a i byte meno significativi di un valore, dal meno significativo.
+     * @param h L'impronta.
+     * @param value Il valore.
+     * @param bytes Il numero di byte da aggiungere.
+     * @return L'impronta aggiornata.
+     */
+    static long fnv(long h, long value, int bytes) {
+        for (int i = 0; i < bytes; i++) {
+            h = (h ^ (value & 0xff)) * FNV_PRIME;
+            value >>>= 8;
+        }
+        return h;
+    }
+
+    /**
+     * Aggiunge all'impronta FNV-1a una stringa: un byte che la distingue da null, la lunghezza e i caratteri.
+     * La lunghezza separa stringhe consecutive, così che ad esempio "ab","c" e "a","bc" diano impronte diverse.
+     * @param h L'impronta.
+     * @param value La stringa, eventualmente null.
+     * @return L'impronta aggiornata.
+     */
+    static long fnv(long h, String value) {
+        if (value == null) return fnv(h, 0, 1);
+        h = fnv(h, 1, 1);
+        h = fnv(h, value.length(), Integer.BYTES);
+        for (int i = 0; i < value.length(); i++) {
+            h = fnv(h, value.charAt(i), Character.BYTES);
+        }
+        return h;
+    }
+
+    /**
+     * Stima l'occupazione in memoria della colonna, in byte.
+     * @return La dimensione stimata.
+     */
+    abstract long getEstimatedSize();
+}
@@ -31,6 +31,22 @@ public class ContinuousAttribute extends Attribute {
         this.max = max;
     }
 
+    /**
+     * Restituisce il valore minimo del range dell'attributo.
+     * @return Il valore minimo.
+     */
+    public double getMin() {
+        return min;
+    }
+
+    /**
+     * Restituisce il valore massimo del range dell'attributo.
+     * @return Il valore massimo.
+     */
+    public double getMax() {
+        return max;
+    }
+
     /**
      * Calcola il valore normalizzato (scalato) del parametro v nell'intervallo [0, 1].
      * @param v Il valore originale (grezzo) da scalare.
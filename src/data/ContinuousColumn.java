@@ -0,0 +1,57 @@
+package data;
+
+import java.nio.DoubleBuffer;
+
+/**
+ * La classe ContinuousColumn memorizza i valori di un attributo continuo in un DoubleBuffer.
+ * @see AttributeColumn
+ */
+class ContinuousColumn extends AttributeColumn {
+
+    /**
+     * Valori della colonna, uno per riga.
+     */
+    private final DoubleBuffer values;
+
+    /**
+     * Costruttore della classe ContinuousColumn.
+     * @param values I valori della colonna.
+     */
+    ContinuousColumn(DoubleBuffer values) {
+        this.values = values;
+    }
+
+    /**
+     * Restituisce il valore numerico della colonna nella riga specificata.
+     * @param row L'indice della riga.
+     * @return Il valore.
+     */
+    double get(int row) {
+        return values.get(row);
+    }
+
+    /**
+     * Restituisce il buffer dei valori della colonna.
+     * @return Il buffer dei valori.
+     */
+    DoubleBuffer getValues() {
+        return values;
+    }
+
+    @Override
+    Object getValue(int row) {
+        return values.get(row);
+    }
+
+    @Override
+    long fingerprint(long h, int row) {
+        return fnv(h, Double.doubleToLongBits(values.get(row)), Double.BYTES);
+    }
+
+    @Override
+    long getEstimatedSize() {
+        //un buffer diretto (mappato da uno snapshot) non occupa memoria dello heap
+        if (values.isDirect()) return 64L;
+        return 64L + (long) Double.BYTES * values.capacity();
+    }
+}
@@ -9,13 +9,18 @@ import java.io.Serializable;
  */
 public class ContinuousItem extends Item implements Serializable {
 
+    /**
+     * Identificativo di versione della serializzazione, invariato rispetto ai file salvati in formato legacy.
+     */
+    private static final long serialVersionUID = -1068975465387272954L;
+
     /**
      * Costruttore della classe ContinuousItem.
      * Richiama il costruttore della classe Item per inizializzare l'attributo di riferimento e il valore numerico specifico.
      * @param attribute L'attributo di tipo ContinuousAttribute a cui il valore si riferisce.
      * @param value Il valore numerico (Double) assunto dall'attributo.
      */
-    ContinuousItem(Attribute attribute, Double value){
+    public ContinuousItem(Attribute attribute, Double value){
         super(attribute, value);
     }
 
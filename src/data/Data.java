@@ -1,24 +1,38 @@
 package data;
 
 import database.*;
+import database.TableSchema.Column;
+import metrics.DatasetBuildEvent;
+import metrics.FormatEvent;
+import metrics.Histogram;
+import metrics.Metrics;
+import metrics.Trace;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Set;
 
 /**
  * La classe Data modella un dataset caricato da una tabella del database.
- * Gestisce una matrice di valori grezzi e una lista di attributi che descrivono lo schema dei dati
- * (distinguendo tra attributi continui e discreti).
+ * Gestisce i valori del dataset, memorizzati per colonne in buffer primitivi, e una lista di attributi
+ * che descrivono lo schema dei dati (distinguendo tra attributi continui e discreti).
  */
 public class Data {
 
     /**
-     * Matrice bidimensionale che contiene i valori del dataset.
-     * Il primo indice rappresenta la riga (esempio), il secondo la colonna (attributo).
+     * Durata della costruzione di attributi e colonne a partire dai buffer letti.
      */
-    private Object data[][];
+    private static final Histogram BUILD_SECONDS = Metrics.timer("qt_load_build_seconds", "Durata della costruzione di un dataset dai buffer delle colonne lette.");
+
+    /**
+     * Colonne del dataset, una per attributo, nello stesso ordine di attributeSet.
+     * I valori di un attributo continuo sono memorizzati come double, quelli di un attributo discreto
+     * come codici di un dizionario dei valori distinti.
+     */
+    private AttributeColumn[] columns;
 
     /**
      * Numero totale di esempi (transazioni) contenuti nel dataset.
@@ -28,69 +42,134 @@ public class Data {
     /**
      * Lista degli attributi che definiscono lo schema del dataset.
      */
-    private List<Attribute> attributeSet = new LinkedList<>();
+    private List<Attribute> attributeSet = new ArrayList<>();
+
+    /**
+     * Impronta del contenuto del dataset, calcolata al primo utilizzo (0 = non ancora calcolata).
+     */
+    private volatile long fingerprint;
 
     /**
      * Costruttore della classe Data.
      * Carica i dati di addestramento da una tabella specificata nel database.
      * Inizializza la connessione al database, recupera lo schema della tabella,
-     * popola la matrice dei dati con le transazioni distinte creando
+     * legge le transazioni distinte direttamente nelle colonne del dataset creando
      * oggetti ContinuousAttribute o DiscreteAttribute a seconda dei metadati.
+     * I valori minimo e massimo degli attributi continui e i valori distinti degli attributi discreti
+     * vengono calcolati durante la stessa scansione delle transazioni, senza ulteriori query sulla tabella.
      * @param TableName Il nome della tabella del database da cui caricare i dati.
      * @throws DatabaseConnectionException Se fallisce la connessione al database.
      * @throws SQLException Se si verifica un errore durante l'esecuzione delle query SQL.
      * @throws EmptySetException Se la tabella specificata è vuota (nessuna tupla trovata).
-     * @throws NoValueException Se non è possibile calcolare i valori aggregati (min/max) per gli attributi continui.
      */
-    public Data(String TableName) throws DatabaseConnectionException, SQLException, EmptySetException, NoValueException {
+    public Data(String TableName) throws DatabaseConnectionException, SQLException, EmptySetException {
+        this(TableName, 1);
+    }
+
+    /**
+     * Costruttore della classe Data che legge la tabella suddividendola in partizioni caricate in parallelo,
+     * ciascuna su una propria connessione del pool.
+     * @param TableName Il nome della tabella del database da cui caricare i dati.
+     * @param partitions Il numero di partizioni lette in parallelo; 1 per leggere la tabella su una sola connessione.
+     * @throws DatabaseConnectionException Se fallisce la connessione al database.
+     * @throws SQLException Se si verifica un errore durante l'esecuzione delle query SQL.
+     * @throws EmptySetException Se la tabella specificata è vuota (nessuna tupla trovata).
+     */
+    public Data(String TableName, int partitions) throws DatabaseConnectionException, SQLException, EmptySetException {
+        this(new LoadSpec(TableName), partitions);
+    }
+
+    /**
+     * Costruttore della classe Data che carica solo una porzione della tabella: le colonne e le righe
+     * indicate dalla specifica vengono selezionate direttamente dalla query SQL.
+     * @param spec La porzione della tabella da caricare (proiezione e filtro).
+     * @param partitions Il numero di partizioni lette in parallelo; 1 per leggere la tabella su una sola connessione.
+     * @throws DatabaseConnectionException Se fallisce la connessione al database.
+     * @throws SQLException Se si verifica un errore durante l'esecuzione delle query SQL o la specifica non è valida per la tabella.
+     * @throws EmptySetException Se nessuna tupla soddisfa il filtro.
+     */
+    public Data(LoadSpec spec, int partitions) throws DatabaseConnectionException, SQLException, EmptySetException {
         //inizializza la connessione
         DbAccess db = new DbAccess();
-        //apre la connessione
+        //preleva una connessione dal pool
         db.initConnection();
-        //recupera lo schema della tabella
-        TableSchema ts = new TableSchema(db, TableName);
-        //prepara il gestore dei dati
-        TableData td = new TableData(db);
-        //estrae le transazioni (tuple)
-        List<Example> transazioni = td.getDistinctTransazioni(TableName);
-        //inizializza numberOfExample
-        numberOfExamples = transazioni.size();
-        //inizializza data
-        data = new Object[numberOfExamples][ts.getNumberOfAttributes()];
-        //popola la matrice data
-        int i = 0;
-        for(Example e : transazioni){
-            for(int j=0;j<ts.getNumberOfAttributes();j++){
-                data[i][j] = e.get(j);
+        try {
+            //recupera lo schema della tabella (dalla cache, se già letto) e le colonne selezionate
+            TableSchema ts = TableSchema.getSchema(db, spec.getTable());
+            List<Column> selected = spec.getColumns(ts);
+            //prepara il gestore dei dati
+            TableData td = new TableData(db);
+            //legge le transazioni (tuple) in streaming nei buffer delle colonne: è l'unica scansione della tabella
+            List<ColumnBuffer> buffers = td.getDistinctColumns(spec, partitions);
+            List<String> names = new ArrayList<>(selected.size());
+            for (Column c : selected) {
+                names.add(c.getColumnName());
             }
-            i++;
+            initColumns(names, buffers);
+        } finally {
+            //restituisce la connessione al pool, anche in caso di errore
+            db.closeConnection();
         }
-        //creazione attributeSet
-        for(int k=0; k< ts.getNumberOfAttributes(); k++){
-            TableSchema.Column column = ts.getColumn(k);
-            String columnName = column.getColumnName();
+    }
 
-            //controllo se la colonna è numerica e quindi avremo un Continuous attribute o no e avremo un Discrete attribute
-            if(column.isNumber()){
-                //otteniamo i valori MIN e MAX della colonna
-                double min = ((Number) td.getAggregateColumnValue(TableName, column, QUERY_TYPE.MIN)).doubleValue();
-                double max = ((Number) td.getAggregateColumnValue(TableName, column, QUERY_TYPE.MAX)).doubleValue();
+    /**
+     * Costruttore che crea un dataset a partire da attributi e colonne già costruiti.
+     * @param attributes Gli attributi del dataset, nell'ordine delle colonne.
+     * @param columns Le colonne dei valori.
+     * @param numberOfExamples Il numero di esempi.
+     */
+    Data(List<Attribute> attributes, AttributeColumn[] columns, int numberOfExamples) {
+        this.attributeSet.addAll(attributes);
+        this.columns = columns;
+        this.numberOfExamples = numberOfExamples;
+    }
 
-                attributeSet.add(new ContinuousAttribute(columnName, k, min, max));
-            }else{
-                //recupero valori distinti
-                Set<Object> distinctObject = td.getDistinctColumnValues(TableName, column);
-                Set<String> distinctString = new HashSet<>();
-                //converte ogni oggetto del set in stringa
-                for(Object o : distinctObject){
-                    distinctString.add((String) o);
-                }
+    /**
+     * Costruttore che crea un dataset a partire da buffer di colonne già letti (ad esempio da un file).
+     * I buffer numerici diventano attributi continui, gli altri attributi discreti.
+     * @param names I nomi delle colonne.
+     * @param buffers I buffer delle colonne, nello stesso ordine dei nomi.
+     */
+    Data(List<String> names, List<ColumnBuffer> buffers) {
+        initColumns(names, buffers);
+    }
 
-                attributeSet.add(new DiscreteAttribute(columnName, k, distinctString));
+    /**
+     * Crea attributi e colonne del dataset a partire dai buffer letti dal database.
+     * @param names I nomi delle colonne lette nei buffer.
+     * @param buffers I buffer delle colonne, nello stesso ordine.
+     */
+    private void initColumns(List<String> names, List<ColumnBuffer> buffers) {
+        DatasetBuildEvent event = new DatasetBuildEvent();
+        event.begin();
+        long start = System.nanoTime();
+        numberOfExamples = buffers.get(0).size();
+        columns = new AttributeColumn[buffers.size()];
+        for(int k=0; k<buffers.size(); k++){
+            String columnName = names.get(k);
+            ColumnBuffer buffer = buffers.get(k);
+
+            //controllo se la colonna è numerica e quindi avremo un Continuous attribute o no e avremo un Discrete attribute
+            if(buffer instanceof NumericColumnBuffer){
+                NumericColumnBuffer numeric = (NumericColumnBuffer) buffer;
+                attributeSet.add(new ContinuousAttribute(columnName, k, numeric.getMin(), numeric.getMax()));
+                columns[k] = new ContinuousColumn(numeric.toBuffer());
+            }else{
+                StringColumnBuffer strings = (StringColumnBuffer) buffer;
+                //il dizionario della colonna coincide con l'insieme dei valori distinti
+                String[] dictionary = strings.getDictionary();
+                attributeSet.add(new DiscreteAttribute(columnName, k, new HashSet<>(Arrays.asList(dictionary))));
+                columns[k] = new DiscreteColumn(strings.toBuffer(), dictionary);
             }
         }
-        //chiusura connessione
-        db.closeConnection();
+        BUILD_SECONDS.recordSince(start);
+        Trace.record("data.build", start);
+        event.end();
+        if (event.shouldCommit()) {
+            event.rows = numberOfExamples;
+            event.attributes = columns.length;
+            event.commit();
+        }
     }
 
     /**
@@ -117,6 +196,24 @@ public class Data {
         return  attributeSet.toArray(new Attribute[getNumberOfAttributes()]);
     }
 
+    /**
+     * Restituisce il nome dell'attributo specificato.
+     * @param attributeIndex L'indice dell'attributo.
+     * @return Il nome dell'attributo.
+     */
+    public String getAttributeName(int attributeIndex){
+        return attributeSet.get(attributeIndex).getName();
+    }
+
+    /**
+     * Verifica se l'attributo specificato è continuo.
+     * @param attributeIndex L'indice dell'attributo.
+     * @return true se i valori dell'attributo sono numerici (Double), false se sono discreti (String).
+     */
+    public boolean isContinuous(int attributeIndex){
+        return attributeSet.get(attributeIndex) instanceof ContinuousAttribute;
+    }
+
     /**
      * Restituisce il valore memorizzato nella matrice dati in corrispondenza dell'esempio e dell'attributo specificati.
      * @param exampleIndex L'indice della riga (esempio).
@@ -124,7 +221,16 @@ public class Data {
      * @return L'oggetto che rappresenta il valore della cella specificata.
      */
     public Object getValue(int exampleIndex, int attributeIndex){
-        return data[exampleIndex][attributeIndex];
+        return columns[attributeIndex].getValue(exampleIndex);
+    }
+
+    /**
+     * Restituisce la colonna dei valori dell'attributo specificato.
+     * @param attributeIndex L'indice dell'attributo.
+     * @return La colonna dei valori.
+     */
+    AttributeColumn getColumn(int attributeIndex){
+        return columns[attributeIndex];
     }
 
     /**
@@ -140,9 +246,9 @@ public class Data {
             Attribute attribute = attributeSet.get(i);
 
             if (attribute instanceof DiscreteAttribute) {
-                tuple.add(new DiscreteItem((DiscreteAttribute) attribute, (String) data[index][i]), i);
+                tuple.add(new DiscreteItem((DiscreteAttribute) attribute, ((DiscreteColumn) columns[i]).get(index)), i);
             }else if (attribute instanceof ContinuousAttribute) {
-                tuple.add(new ContinuousItem((ContinuousAttribute) attribute, (Double) data[index][i]), i);
+                tuple.add(new ContinuousItem((ContinuousAttribute) attribute, ((ContinuousColumn) columns[i]).get(index)), i);
             }
 
         }
@@ -150,20 +256,90 @@ public class Data {
         return tuple;
     }
 
+    /**
+     * Stima l'occupazione in memoria del dataset, in byte.
+     * La stima considera i buffer delle colonne e i dizionari dei valori discreti;
+     * è pensata per confrontare dataset diversi (ad esempio per dimensionare una cache), non per misure esatte.
+     * @return La dimensione stimata del dataset in byte.
+     */
+    public long getEstimatedSize(){
+        long size = 64L;
+        for(AttributeColumn column : columns){
+            size += column.getEstimatedSize();
+        }
+        return size;
+    }
+
+    /**
+     * Restituisce un'impronta (hash a 64 bit) del contenuto del dataset: schema e valori di tutti gli esempi.
+     * Due caricamenti della stessa tabella hanno la stessa impronta solo se i dati non sono cambiati,
+     * quindi l'impronta identifica la versione del dataset (ad esempio per riutilizzare risultati già calcolati).
+     * @return L'impronta del dataset.
+     */
+    public long getFingerprint(){
+        long h = fingerprint;
+        if(h == 0){
+            //FNV-1a sui byte dei nomi degli attributi e dei valori (caratteri delle stringhe, bit dei double):
+            //gli hashCode a 32 bit dei valori renderebbero banali le collisioni ("Aa" e "BB", null e "")
+            h = 0xcbf29ce484222325L;
+            for(Attribute attribute : attributeSet){
+                h = AttributeColumn.fnv(h, attribute.getName());
+            }
+            for(int i=0;i<numberOfExamples;i++){
+                for(AttributeColumn column : columns){
+                    h = column.fingerprint(h, i);
+                }
+            }
+            if(h == 0) h = 1;
+            fingerprint = h;
+        }
+        return h;
+    }
+
     /**
      * Restituisce una rappresentazione testuale dell'intero dataset.
      * La stringa include l'intestazione degli attributi e l'elenco di tutti gli esempi con i relativi valori.
      * @return Una stringa che rappresenta il contenuto del dataset.
      */
     public String toString(){
-        String stampa = "Outlook,Temperature,Humidity,Wind,PlayTennis\n";
-        for(int i=0;i<getNumberOfExamples();i++){
-            stampa+=i+":";
+        FormatEvent event = new FormatEvent();
+        event.begin();
+        long start = System.nanoTime();
+        StringBuilder stampa = new StringBuilder();
+        try {
+            write(stampa, 0, getNumberOfExamples());
+        } catch (IOException e) {
+            // StringBuilder non solleva IOException
+            throw new UncheckedIOException(e);
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.target = FormatEvent.DATASET;
+            event.items = getNumberOfExamples();
+            event.characters = stampa.length();
+            event.commit();
+        }
+        Trace.record("format.dataset", start);
+        return stampa.toString();
+    }
+
+    /**
+     * Scrive in modo incrementale la rappresentazione testuale degli esempi compresi nell'intervallo specificato,
+     * nello stesso formato di toString(): l'intestazione seguita da una riga per esempio.
+     * Permette di inviare dataset di grandi dimensioni senza costruirne l'intera rappresentazione in memoria.
+     * @param out La destinazione su cui scrivere.
+     * @param from L'indice del primo esempio da scrivere (incluso).
+     * @param to L'indice dell'ultimo esempio da scrivere (escluso); viene limitato al numero di esempi.
+     * @throws IOException Se la scrittura sulla destinazione fallisce.
+     */
+    public void write(Appendable out, int from, int to) throws IOException {
+        out.append("Outlook,Temperature,Humidity,Wind,PlayTennis\n");
+        for(int i=Math.max(from, 0);i<Math.min(to, getNumberOfExamples());i++){
+            out.append(String.valueOf(i)).append(":");
             for(int j=0;j<getNumberOfAttributes();j++){
-                stampa+=getValue(i,j)+",";
+                out.append(String.valueOf(getValue(i,j))).append(",");
             }
-            stampa+="\n";
+            out.append("\n");
         }
-        return stampa;
     }
 }
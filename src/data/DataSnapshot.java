@@ -0,0 +1,281 @@
+package data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * La classe DataSnapshot salva e carica un dataset in un file binario a colonne (snapshot),
+ * così da poterlo riutilizzare senza interrogare di nuovo il database.
+ * <p>
+ * Il file, in formato little-endian, è composto da:
+ * <ul>
+ *     <li>un'intestazione fissa: magic "QTDS", versione, numero di esempi, numero di attributi,
+ *     lunghezza e CRC32 della sezione degli attributi;</li>
+ *     <li>la sezione degli attributi: per ciascuno tipo, nome, estremi (continui) o dizionario (discreti);</li>
+ *     <li>le colonne, ciascuna allineata a 8 byte: valori double per gli attributi continui,
+ *     codici int nel dizionario (-1 per null) per quelli discreti.</li>
+ * </ul>
+ * In lettura le colonne non vengono copiate ma mappate in memoria: il dataset è utilizzabile subito
+ * e le pagine del file vengono lette dal sistema operativo solo quando servono.
+ * Ogni colonna può occupare al massimo 2 GB (circa 268 milioni di esempi per una colonna continua).
+ */
+public class DataSnapshot {
+
+    /**
+     * Numero magico all'inizio del file ("QTDS").
+     */
+    private static final int MAGIC = 0x53445451;
+
+    /**
+     * Versione corrente del formato.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Dimensione dell'intestazione fissa in byte.
+     */
+    private static final int HEADER_SIZE = 24;
+
+    /**
+     * Tipo di un attributo continuo nella sezione degli attributi.
+     */
+    private static final byte CONTINUOUS = 1;
+
+    /**
+     * Tipo di un attributo discreto nella sezione degli attributi.
+     */
+    private static final byte DISCRETE = 2;
+
+    /**
+     * Dimensione del buffer usato per scrivere le colonne.
+     */
+    private static final int WRITE_BUFFER_SIZE = 1 << 20;
+
+    private DataSnapshot() {
+    }
+
+    /**
+     * Salva il dataset nel file specificato.
+     * Il file viene scritto in un file temporaneo nella stessa directory e poi rinominato,
+     * così che un lettore non veda mai uno snapshot scritto a metà.
+     * @param data Il dataset da salvare.
+     * @param file Il file di destinazione.
+     * @throws IOException Se si verifica un errore durante la scrittura.
+     */
+    public static void write(Data data, Path file) throws IOException {
+        int examples = data.getNumberOfExamples();
+        Attribute[] attributes = data.getAttributeSchema();
+        ByteBuffer section = encodeAttributes(data, attributes);
+        CRC32 crc = new CRC32();
+        crc.update(section.duplicate());
+
+        Path dir = file.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                buffer.putInt(MAGIC).putInt(VERSION).putInt(examples).putInt(attributes.length)
+                        .putInt(section.remaining()).putInt((int) crc.getValue());
+                buffer.flip();
+                writeFully(channel, buffer);
+                writeFully(channel, section);
+                for (int k = 0; k < attributes.length; k++) {
+                    pad(channel, buffer);
+                    AttributeColumn column = data.getColumn(k);
+                    buffer.clear();
+                    if (column instanceof ContinuousColumn) {
+                        DoubleBuffer values = ((ContinuousColumn) column).getValues();
+                        for (int i = 0; i < examples; i++) {
+                            if (buffer.remaining() < Double.BYTES) flush(channel, buffer);
+                            buffer.putDouble(values.get(i));
+                        }
+                    } else {
+                        IntBuffer codes = ((DiscreteColumn) column).getCodes();
+                        for (int i = 0; i < examples; i++) {
+                            if (buffer.remaining() < Integer.BYTES) flush(channel, buffer);
+                            buffer.putInt(codes.get(i));
+                        }
+                    }
+                    flush(channel, buffer);
+                }
+                channel.force(false);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Carica un dataset da uno snapshot, mappandone in memoria le colonne.
+     * @param file Il file dello snapshot.
+     * @return Il dataset.
+     * @throws IOException Se il file non esiste, non è uno snapshot valido o è stato troncato.
+     */
+    public static Data read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, header, 0);
+            if (header.getInt() != MAGIC) throw new IOException("Il file " + file + " non è uno snapshot");
+            int version = header.getInt();
+            if (version != VERSION) throw new IOException("Versione dello snapshot non supportata: " + version);
+            int examples = header.getInt();
+            int numberOfAttributes = header.getInt();
+            int sectionLength = header.getInt();
+            int expectedCrc = header.getInt();
+            if (examples < 0 || numberOfAttributes <= 0 || sectionLength < 0 || HEADER_SIZE + (long) sectionLength > channel.size()) {
+                throw new IOException("Intestazione dello snapshot non valida");
+            }
+
+            ByteBuffer section = ByteBuffer.allocate(sectionLength).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, section, HEADER_SIZE);
+            CRC32 crc = new CRC32();
+            crc.update(section.duplicate());
+            if ((int) crc.getValue() != expectedCrc) throw new IOException("Sezione degli attributi dello snapshot corrotta");
+
+            List<Attribute> attributes = new ArrayList<>(numberOfAttributes);
+            AttributeColumn[] columns = new AttributeColumn[numberOfAttributes];
+            long offset = HEADER_SIZE + sectionLength;
+            for (int k = 0; k < numberOfAttributes; k++) {
+                offset = align(offset);
+                byte kind = section.get();
+                String name = getString(section);
+                if (kind == CONTINUOUS) {
+                    attributes.add(new ContinuousAttribute(name, k, section.getDouble(), section.getDouble()));
+                    columns[k] = new ContinuousColumn(map(channel, offset, (long) Double.BYTES * examples).asDoubleBuffer());
+                    offset += (long) Double.BYTES * examples;
+                } else if (kind == DISCRETE) {
+                    String[] dictionary = new String[section.getInt()];
+                    for (int i = 0; i < dictionary.length; i++) {
+                        dictionary[i] = getString(section);
+                    }
+                    attributes.add(new DiscreteAttribute(name, k, new HashSet<>(Arrays.asList(dictionary))));
+                    columns[k] = new DiscreteColumn(map(channel, offset, (long) Integer.BYTES * examples).asIntBuffer(), dictionary);
+                    offset += (long) Integer.BYTES * examples;
+                } else {
+                    throw new IOException("Tipo di attributo sconosciuto nello snapshot: " + kind);
+                }
+            }
+            return new Data(attributes, columns, examples);
+        }
+    }
+
+    /**
+     * Codifica la sezione degli attributi.
+     * @param data Il dataset.
+     * @param attributes Gli attributi del dataset.
+     * @return Il buffer pronto per la lettura con la sezione codificata.
+     */
+    private static ByteBuffer encodeAttributes(Data data, Attribute[] attributes) {
+        List<byte[]> strings = new ArrayList<>();
+        int length = 0;
+        for (int k = 0; k < attributes.length; k++) {
+            byte[] name = attributes[k].getName().getBytes(StandardCharsets.UTF_8);
+            strings.add(name);
+            length += 1 + Integer.BYTES + name.length;
+            if (attributes[k] instanceof ContinuousAttribute) {
+                length += 2 * Double.BYTES;
+            } else {
+                length += Integer.BYTES;
+                for (String value : ((DiscreteColumn) data.getColumn(k)).getDictionary()) {
+                    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                    strings.add(bytes);
+                    length += Integer.BYTES + bytes.length;
+                }
+            }
+        }
+
+        ByteBuffer section = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        int next = 0;
+        for (int k = 0; k < attributes.length; k++) {
+            if (attributes[k] instanceof ContinuousAttribute) {
+                ContinuousAttribute attribute = (ContinuousAttribute) attributes[k];
+                section.put(CONTINUOUS);
+                putString(section, strings.get(next++));
+                section.putDouble(attribute.getMin()).putDouble(attribute.getMax());
+            } else {
+                String[] dictionary = ((DiscreteColumn) data.getColumn(k)).getDictionary();
+                section.put(DISCRETE);
+                putString(section, strings.get(next++));
+                section.putInt(dictionary.length);
+                for (int i = 0; i < dictionary.length; i++) {
+                    putString(section, strings.get(next++));
+                }
+            }
+        }
+        return section.flip();
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] bytes) {
+        buffer.putInt(bytes.length).put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) throws IOException {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) throw new IOException("Stringa non valida nello snapshot");
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Mappa in sola lettura una regione del file.
+     * @param channel Il canale del file.
+     * @param offset La posizione iniziale della regione.
+     * @param length La lunghezza della regione in byte.
+     * @return Il buffer mappato, in ordine little-endian.
+     * @throws IOException Se la regione supera la fine del file o la dimensione massima di una mappatura.
+     */
+    private static ByteBuffer map(FileChannel channel, long offset, long length) throws IOException {
+        if (offset + length > channel.size()) throw new IOException("Snapshot troncato");
+        if (length > Integer.MAX_VALUE) throw new IOException("Colonna troppo grande per essere mappata");
+        return channel.map(FileChannel.MapMode.READ_ONLY, offset, length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static long align(long offset) {
+        return (offset + 7) & ~7L;
+    }
+
+    /**
+     * Scrive gli zeri necessari ad allineare a 8 byte la posizione corrente del file.
+     */
+    private static void pad(FileChannel channel, ByteBuffer buffer) throws IOException {
+        long position = channel.position();
+        buffer.clear().limit((int) (align(position) - position));
+        while (buffer.hasRemaining()) buffer.put((byte) 0);
+        buffer.flip();
+        writeFully(channel, buffer);
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        writeFully(channel, buffer);
+        buffer.clear();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) channel.write(buffer);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) throw new IOException("Snapshot troncato");
+        }
+        buffer.flip();
+    }
+}
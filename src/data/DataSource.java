@@ -0,0 +1,23 @@
+package data;
+
+/**
+ * L'interfaccia DataSource rappresenta una sorgente da cui caricare un dataset:
+ * una tabella (o una sua porzione) del database, uno snapshot binario, un file di testo delimitato
+ * o un generatore di dati sintetici.
+ * Le implementazioni sono leggere e si limitano a descrivere la sorgente: il caricamento avviene solo
+ * alla chiamata di {@link #load()}.
+ * @see TableSource
+ * @see SnapshotSource
+ * @see DelimitedFileSource
+ * @see SyntheticSource
+ */
+public interface DataSource {
+
+    /**
+     * Carica il dataset dalla sorgente.
+     * @return Il dataset caricato.
+     * @throws Exception Se il caricamento fallisce; il tipo dipende dalla sorgente
+     * (ad esempio SQLException per il database, IOException per i file, EmptySetException se non ci sono esempi).
+     */
+    Data load() throws Exception;
+}
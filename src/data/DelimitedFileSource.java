@@ -0,0 +1,48 @@
+package data;
+
+import database.ColumnBuffer;
+import database.DelimitedFileData;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * La classe DelimitedFileSource carica un dataset da un file di testo delimitato (CSV o TSV)
+ * con i nomi delle colonne nella prima riga. Il tipo degli attributi viene dedotto dai valori.
+ * @see DelimitedFileData
+ */
+public class DelimitedFileSource implements DataSource {
+
+    /**
+     * Il file da caricare.
+     */
+    private final Path file;
+
+    /**
+     * Il carattere separatore dei campi.
+     */
+    private final char delimiter;
+
+    /**
+     * Il numero di thread con cui analizzare il file.
+     */
+    private final int threads;
+
+    /**
+     * Costruttore della classe DelimitedFileSource.
+     * @param file Il file da caricare.
+     * @param delimiter Il carattere separatore dei campi (',' per CSV, '\t' per TSV).
+     * @param threads Il numero di thread con cui analizzare il file in parallelo.
+     */
+    public DelimitedFileSource(Path file, char delimiter, int threads) {
+        this.file = file;
+        this.delimiter = delimiter;
+        this.threads = threads;
+    }
+
+    @Override
+    public Data load() throws Exception {
+        DelimitedFileData fileData = new DelimitedFileData(file, delimiter, threads);
+        List<ColumnBuffer> buffers = fileData.getDistinctColumns();
+        return new Data(fileData.getColumnNames(), buffers);
+    }
+}
@@ -0,0 +1,78 @@
+package data;
+
+import java.nio.IntBuffer;
+
+/**
+ * La classe DiscreteColumn memorizza i valori di un attributo discreto codificati tramite dizionario:
+ * ogni riga contiene il codice del valore (indice nel dizionario), -1 per null.
+ * @see AttributeColumn
+ */
+class DiscreteColumn extends AttributeColumn {
+
+    /**
+     * Codici dei valori, uno per riga.
+     */
+    private final IntBuffer codes;
+
+    /**
+     * Dizionario dei valori: il valore con codice i è in posizione i.
+     */
+    private final String[] dictionary;
+
+    /**
+     * Costruttore della classe DiscreteColumn.
+     * @param codes I codici dei valori.
+     * @param dictionary Il dizionario dei valori.
+     */
+    DiscreteColumn(IntBuffer codes, String[] dictionary) {
+        this.codes = codes;
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * Restituisce il valore della colonna nella riga specificata.
+     * @param row L'indice della riga.
+     * @return Il valore, oppure null.
+     */
+    String get(int row) {
+        int code = codes.get(row);
+        return code < 0 ? null : dictionary[code];
+    }
+
+    /**
+     * Restituisce il buffer dei codici della colonna.
+     * @return Il buffer dei codici.
+     */
+    IntBuffer getCodes() {
+        return codes;
+    }
+
+    /**
+     * Restituisce il dizionario dei valori della colonna.
+     * @return Il dizionario, indicizzato per codice.
+     */
+    String[] getDictionary() {
+        return dictionary;
+    }
+
+    @Override
+    Object getValue(int row) {
+        return get(row);
+    }
+
+    @Override
+    long fingerprint(long h, int row) {
+        int code = codes.get(row);
+        return fnv(h, code < 0 ? null : dictionary[code]);
+    }
+
+    @Override
+    long getEstimatedSize() {
+        //un buffer diretto (mappato da uno snapshot) non occupa memoria dello heap
+        long size = 64L + (codes.isDirect() ? 0 : (long) Integer.BYTES * codes.capacity()) + 8L * dictionary.length;
+        for (String value : dictionary) {
+            size += 40 + value.length();
+        }
+        return size;
+    }
+}
@@ -9,6 +9,11 @@ import java.io.Serializable;
  */
 public class DiscreteItem extends Item implements Serializable {
 
+    /**
+     * Identificativo di versione della serializzazione (vedi ClusterSet).
+     */
+    private static final long serialVersionUID = 5561228224466986913L;
+
     /**
      * Costruttore della classe DiscreteItem.
      * Richiama il costruttore della classe Item con l'attributo di riferimento e il valore simbolico specifico.
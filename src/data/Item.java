@@ -12,6 +12,11 @@ import java.io.Serializable;
  */
 abstract class Item implements Serializable {
 
+    /**
+     * Identificativo di versione della serializzazione (vedi ClusterSet).
+     */
+    private static final long serialVersionUID = -6678134870011422422L;
+
     /**
      * Riferimento all'attributo descrittivo.
      * Dichiarato transient: questo campo non verrà salvato durante la serializzazione.
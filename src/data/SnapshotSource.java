@@ -0,0 +1,28 @@
+package data;
+
+import java.nio.file.Path;
+
+/**
+ * La classe SnapshotSource carica un dataset da uno snapshot binario, mappandone le colonne in memoria.
+ * @see DataSnapshot
+ */
+public class SnapshotSource implements DataSource {
+
+    /**
+     * Il file dello snapshot.
+     */
+    private final Path file;
+
+    /**
+     * Costruttore della classe SnapshotSource.
+     * @param file Il file dello snapshot.
+     */
+    public SnapshotSource(Path file) {
+        this.file = file;
+    }
+
+    @Override
+    public Data load() throws Exception {
+        return DataSnapshot.read(file);
+    }
+}
@@ -0,0 +1,185 @@
+package data;
+
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * La classe SyntheticSource genera un dataset sintetico riproducibile, così da poter provare il clustering
+ * su dataset grandi a piacere senza un database.
+ * <p>
+ * Le tuple sono distribuite attorno a un certo numero di centri scelti a caso:
+ * <ul>
+ *     <li>gli attributi continui seguono una normale attorno al valore del centro, con deviazione standard
+ *     pari a {@code spread} volte l'ampiezza del dominio [0, 100);</li>
+ *     <li>gli attributi discreti assumono il valore del centro con probabilità {@code 1 - spread},
+ *     altrimenti un valore qualsiasi tra i {@code domain} possibili ("v0", "v1", ...);</li>
+ *     <li>una frazione {@code noise} delle tuple non appartiene ad alcun centro e ha valori uniformi su tutto il dominio.</li>
+ * </ul>
+ * A parità di parametri e di seme il dataset generato è identico. Le colonne sono costruite direttamente in memoria,
+ * senza il passaggio per un file; per ottenere uno snapshot basta salvare il dataset con {@link DataSnapshot#write}.
+ * A differenza delle altre sorgenti le tuple non vengono rese distinte: con almeno un attributo continuo
+ * i duplicati sono comunque estremamente improbabili.
+ */
+public class SyntheticSource implements DataSource {
+
+    /**
+     * Ampiezza del dominio degli attributi continui.
+     */
+    private static final double RANGE = 100;
+
+    private final int rows;
+    private final int continuous;
+    private final int discrete;
+    private final int clusters;
+    private final double noise;
+    private final double spread;
+    private final int domain;
+    private final long seed;
+
+    /**
+     * Costruttore della classe SyntheticSource.
+     * @param rows Il numero di tuple.
+     * @param continuous Il numero di attributi continui.
+     * @param discrete Il numero di attributi discreti.
+     * @param clusters Il numero di centri attorno a cui sono distribuite le tuple.
+     * @param noise La frazione di tuple di rumore, tra 0 e 1.
+     * @param spread La dispersione delle tuple attorno al centro, tra 0 e 1.
+     * @param domain Il numero di valori possibili di ogni attributo discreto.
+     * @param seed Il seme del generatore.
+     * @throws IllegalArgumentException Se un parametro è fuori dal suo intervallo.
+     */
+    public SyntheticSource(int rows, int continuous, int discrete, int clusters, double noise, double spread, int domain, long seed) {
+        if (rows <= 0) throw new IllegalArgumentException("Il numero di tuple deve essere positivo");
+        if (continuous < 0 || discrete < 0 || continuous + discrete == 0) {
+            throw new IllegalArgumentException("Il dataset deve avere almeno un attributo");
+        }
+        if (clusters <= 0) throw new IllegalArgumentException("Il numero di centri deve essere positivo");
+        if (!(noise >= 0 && noise <= 1) || !(spread >= 0 && spread <= 1)) {
+            throw new IllegalArgumentException("Rumore e dispersione devono essere compresi tra 0 e 1");
+        }
+        if (domain <= 0) throw new IllegalArgumentException("Il dominio degli attributi discreti deve essere positivo");
+        this.rows = rows;
+        this.continuous = continuous;
+        this.discrete = discrete;
+        this.clusters = clusters;
+        this.noise = noise;
+        this.spread = spread;
+        this.domain = domain;
+        this.seed = seed;
+    }
+
+    /**
+     * Crea una sorgente a partire da una specifica nella forma "chiave=valore,...", ad esempio
+     * "rows=100000,continuous=3,discrete=2,clusters=8,noise=0.05,seed=42".
+     * Le chiavi riconosciute sono rows, continuous, discrete, clusters, noise, spread, domain e seed;
+     * quelle assenti assumono i valori predefiniti (1000 tuple, 2 attributi continui e 2 discreti, 8 centri,
+     * nessun rumore, dispersione 0.05, 8 valori discreti, seme 42).
+     * @param spec La specifica del dataset.
+     * @return La sorgente.
+     * @throws IllegalArgumentException Se la specifica non è valida.
+     */
+    public static SyntheticSource parse(String spec) {
+        int rows = 1000;
+        int continuous = 2;
+        int discrete = 2;
+        int clusters = 8;
+        double noise = 0;
+        double spread = 0.05;
+        int domain = 8;
+        long seed = 42;
+        for (String entry : spec.split(",")) {
+            if (entry.isBlank()) continue;
+            int eq = entry.indexOf('=');
+            if (eq < 0) throw new IllegalArgumentException("Parametro del dataset sintetico non valido: " + entry);
+            String key = entry.substring(0, eq).trim();
+            String value = entry.substring(eq + 1).trim();
+            try {
+                switch (key) {
+                    case "rows": rows = Integer.parseInt(value); break;
+                    case "continuous": continuous = Integer.parseInt(value); break;
+                    case "discrete": discrete = Integer.parseInt(value); break;
+                    case "clusters": clusters = Integer.parseInt(value); break;
+                    case "noise": noise = Double.parseDouble(value); break;
+                    case "spread": spread = Double.parseDouble(value); break;
+                    case "domain": domain = Integer.parseInt(value); break;
+                    case "seed": seed = Long.parseLong(value); break;
+                    default: throw new IllegalArgumentException("Parametro del dataset sintetico sconosciuto: " + key);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Valore non valido per " + key + ": " + value);
+            }
+        }
+        return new SyntheticSource(rows, continuous, discrete, clusters, noise, spread, domain, seed);
+    }
+
+    /**
+     * Restituisce il numero di valori che il caricamento genera e tiene in memoria: i valori delle tuple,
+     * quelli dei centri e il dizionario degli attributi discreti. Permette di rifiutare una specifica
+     * troppo grande prima di allocarla.
+     * @return Il numero di valori generati.
+     */
+    public long getGeneratedValues() {
+        long attributes = (long) continuous + discrete;
+        return ((long) rows + clusters) * attributes + (discrete > 0 ? domain : 0);
+    }
+
+    @Override
+    public Data load() {
+        Random random = new Random(seed);
+        double[][] continuousCenters = new double[clusters][continuous];
+        int[][] discreteCenters = new int[clusters][discrete];
+        for (int c = 0; c < clusters; c++) {
+            for (int k = 0; k < continuous; k++) continuousCenters[c][k] = random.nextDouble() * RANGE;
+            for (int k = 0; k < discrete; k++) discreteCenters[c][k] = random.nextInt(domain);
+        }
+
+        double[][] values = new double[continuous][rows];
+        int[][] codes = new int[discrete][rows];
+        double deviation = spread * RANGE;
+        for (int i = 0; i < rows; i++) {
+            if (random.nextDouble() < noise) {
+                for (int k = 0; k < continuous; k++) values[k][i] = random.nextDouble() * RANGE;
+                for (int k = 0; k < discrete; k++) codes[k][i] = random.nextInt(domain);
+            } else {
+                int c = random.nextInt(clusters);
+                for (int k = 0; k < continuous; k++) values[k][i] = continuousCenters[c][k] + random.nextGaussian() * deviation;
+                for (int k = 0; k < discrete; k++) {
+                    codes[k][i] = random.nextDouble() < spread ? random.nextInt(domain) : discreteCenters[c][k];
+                }
+            }
+        }
+
+        String[] dictionary = new String[domain];
+        for (int v = 0; v < domain; v++) dictionary[v] = "v" + v;
+        List<Attribute> attributes = new ArrayList<>(continuous + discrete);
+        AttributeColumn[] columns = new AttributeColumn[continuous + discrete];
+        for (int k = 0; k < continuous; k++) {
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for (double value : values[k]) {
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+            attributes.add(new ContinuousAttribute("x" + k, k, min, max));
+            columns[k] = new ContinuousColumn(DoubleBuffer.wrap(values[k]));
+        }
+        for (int k = 0; k < discrete; k++) {
+            int index = continuous + k;
+            attributes.add(new DiscreteAttribute("d" + k, index, new HashSet<>(Arrays.asList(dictionary))));
+            columns[index] = new DiscreteColumn(IntBuffer.wrap(codes[k]), dictionary);
+        }
+        return new Data(attributes, columns, rows);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "rows=%d,continuous=%d,discrete=%d,clusters=%d,noise=%s,spread=%s,domain=%d,seed=%d",
+                rows, continuous, discrete, clusters, noise, spread, domain, seed);
+    }
+}
@@ -0,0 +1,36 @@
+package data;
+
+import database.LoadSpec;
+
+/**
+ * La classe TableSource carica un dataset da una tabella del database, eventualmente limitata
+ * a una porzione (proiezione e filtro) e letta in partizioni parallele.
+ * @see Data#Data(LoadSpec, int)
+ */
+public class TableSource implements DataSource {
+
+    /**
+     * La porzione della tabella da caricare.
+     */
+    private final LoadSpec spec;
+
+    /**
+     * Il numero di partizioni lette in parallelo.
+     */
+    private final int partitions;
+
+    /**
+     * Costruttore della classe TableSource.
+     * @param spec La porzione della tabella da caricare.
+     * @param partitions Il numero di partizioni lette in parallelo; 1 per una sola connessione.
+     */
+    public TableSource(LoadSpec spec, int partitions) {
+        this.spec = spec;
+        this.partitions = partitions;
+    }
+
+    @Override
+    public Data load() throws Exception {
+        return new Data(spec, partitions);
+    }
+}
@@ -9,6 +9,11 @@ import java.util.Set;
  */
 public class Tuple implements Serializable {
 
+    /**
+     * Identificativo di versione della serializzazione (vedi ClusterSet).
+     */
+    private static final long serialVersionUID = 1128862453280410765L;
+
     /**
      * Array di oggetti Item che compongono la tupla. L'ordine corrisponde all'indice degli attributi.
      */
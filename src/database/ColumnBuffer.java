@@ -0,0 +1,89 @@
+package database;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * La classe astratta ColumnBuffer modella il buffer in cui vengono accumulati, riga per riga,
+ * i valori di una colonna letti da un ResultSet. I valori sono memorizzati in array primitivi
+ * che crescono man mano che arrivano le righe, senza creare un oggetto per ogni cella.
+ * @see NumericColumnBuffer
+ * @see StringColumnBuffer
+ */
+public abstract class ColumnBuffer {
+
+    /**
+     * Capacità iniziale dei buffer.
+     */
+    static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * Numero di valori presenti nel buffer.
+     */
+    int size;
+
+    /**
+     * Crea il buffer adatto al tipo della colonna specificata.
+     * @param column La colonna dello schema.
+     * @return Un NumericColumnBuffer per le colonne numeriche, uno StringColumnBuffer per le altre.
+     */
+    static ColumnBuffer forColumn(TableSchema.Column column) {
+        return column.isNumber() ? new NumericColumnBuffer() : new StringColumnBuffer();
+    }
+
+    /**
+     * Legge il valore della colonna dalla riga corrente del ResultSet e lo aggiunge in coda al buffer.
+     * @param rs Il ResultSet posizionato sulla riga da leggere.
+     * @param columnIndex L'indice (a partire da 1) della colonna nel ResultSet.
+     * @throws SQLException Se si verifica un errore durante la lettura.
+     */
+    abstract void read(ResultSet rs, int columnIndex) throws SQLException;
+
+    /**
+     * Aggiunge in coda al buffer tutti i valori di un altro buffer dello stesso tipo.
+     * @param other Il buffer da accodare.
+     */
+    public abstract void appendAll(ColumnBuffer other);
+
+    /**
+     * Aggiunge in coda al buffer i valori di alcune righe di un altro buffer dello stesso tipo.
+     * @param other Il buffer da cui copiare i valori.
+     * @param rows Gli indici delle righe da copiare, nell'ordine in cui aggiungerle.
+     * @param count Il numero di indici validi in rows.
+     */
+    abstract void appendRows(ColumnBuffer other, int[] rows, int count);
+
+    /**
+     * Restituisce l'hash del valore nella riga specificata.
+     * @param row L'indice della riga.
+     * @return L'hash del valore (0 per null).
+     */
+    abstract int valueHash(int row);
+
+    /**
+     * Verifica se il valore di una riga è uguale a quello di una riga di un altro buffer dello stesso tipo.
+     * @param row L'indice della riga in questo buffer.
+     * @param other L'altro buffer.
+     * @param otherRow L'indice della riga nell'altro buffer.
+     * @return true se i due valori sono uguali.
+     */
+    abstract boolean sameValue(int row, ColumnBuffer other, int otherRow);
+
+    /**
+     * Restituisce il numero di valori presenti nel buffer.
+     * @return Il numero di valori.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Calcola la nuova capacità di un array pieno (crescita del 50%).
+     * @param capacity La capacità attuale.
+     * @param required La capacità minima richiesta.
+     * @return La nuova capacità.
+     */
+    static int grow(int capacity, int required) {
+        return Math.max(required, capacity + (capacity >> 1) + 1);
+    }
+}
@@ -1,15 +1,51 @@
 package database;
 
+import metrics.Trace;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 /**
  * La classe DbAccess gestisce la connessione con un database relazionale MySQL.
  * Mantiene le credenziali e i parametri di connessione e fornisce metodi per inizializzare, recuperare e chiudere la connessione.
+ * Le connessioni fisiche sono mantenute in un pool condiviso da tutte le istanze: initConnection() preleva
+ * una connessione dal pool (creandola solo se necessario) e closeConnection() la restituisce al pool.
  */
 public class DbAccess {
 
+    /**
+     * Numero massimo di connessioni fisiche aperte contemporaneamente.
+     */
+    private static final int MAX_POOL_SIZE = 8;
+
+    /**
+     * Tempo massimo di attesa (in secondi) di una connessione libera.
+     */
+    private static final int CHECKOUT_TIMEOUT = 30;
+
+    /**
+     * Tempo massimo (in secondi) concesso alla verifica di validità di una connessione inattiva.
+     */
+    private static final int VALIDATION_TIMEOUT = 2;
+
+    /**
+     * Permessi del pool: uno per ogni connessione che può essere in uso.
+     */
+    private static final Semaphore available = new Semaphore(MAX_POOL_SIZE, true);
+
+    /**
+     * Connessioni inattive pronte per essere riutilizzate.
+     */
+    private static final ConcurrentLinkedDeque<Connection> idle = new ConcurrentLinkedDeque<>();
+
+    /**
+     * Indica se il driver JDBC è già stato caricato.
+     */
+    private static volatile boolean driverLoaded = false;
+
     /**
      * Nome della classe del driver JDBC per MySQL.
      */
@@ -44,35 +80,111 @@ public class DbAccess {
     private Connection conn;
 
     /**
-     * Inizializza la connessione al database.
+     * Inizializza la connessione al database, prelevandola dal pool.
      * Il metodo esegue i seguenti passi:
-     * 1. Carica la classe del driver JDBC.
-     * 2. Costruisce la stringa di connessione (URL).
-     * 3. Stabilisce la connessione tramite DriverManager.getConnection().
+     * 1. Carica la classe del driver JDBC (solo la prima volta).
+     * 2. Attende che nel pool ci sia posto per una connessione.
+     * 3. Riutilizza una connessione inattiva, dopo averne verificato la validità,
+     *    oppure ne stabilisce una nuova tramite DriverManager.getConnection().
      *
      * @throws DatabaseConnectionException Se si verifica un errore durante il caricamento del driver,
-     * l'accesso al driver o durante l'effettiva connessione SQL.
+     * l'accesso al driver, l'attesa di una connessione libera o durante l'effettiva connessione SQL.
      */
     public void initConnection() throws DatabaseConnectionException {
+        loadDriver();
+
+        long start = System.nanoTime();
         try {
-            Class.forName(DRIVER_CLASS_NAME).newInstance();
-        } catch(ClassNotFoundException e) {
-            System.out.println("[!] Driver not found: " + e.getMessage());
-            throw new DatabaseConnectionException();
-        } catch(InstantiationException e){
-            System.out.println("[!] Error during the instantiation : " + e.getMessage());
-            throw new DatabaseConnectionException();
-        } catch(IllegalAccessException e){
-            System.out.println("[!] Cannot access the driver : " + e.getMessage());
-            throw new DatabaseConnectionException();
+            if (!available.tryAcquire(CHECKOUT_TIMEOUT, TimeUnit.SECONDS)) {
+                throw new DatabaseConnectionException("No free connection in the pool");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DatabaseConnectionException("Interrupted while waiting for a connection");
         }
 
-        String connectionString = DBMS + "://" + SERVER + ":" + PORT + "/" + DATABASE + "?user=" + USER_ID + "&password=" + PASSWORD + "&serverTimezone=UTC";
+        take();
+        // attesa di un posto nel pool compresa: è la causa tipica di un caricamento lento sotto carico
+        Trace.record("db.checkout", start);
+    }
+
+    /**
+     * Preleva una connessione dal pool solo se c'è un posto libero, senza attendere.
+     * Va usato da chi possiede già una connessione e ne vuole altre (ad esempio per leggere o scrivere in parallelo):
+     * attenderle tenendo occupata la propria porterebbe più operazioni concorrenti a esaurire il pool
+     * aspettandosi a vicenda.
+     * @return true se la connessione è stata prelevata, false se il pool è pieno.
+     * @throws DatabaseConnectionException Se il driver non può essere caricato o la connessione non può essere stabilita.
+     */
+    public boolean tryInitConnection() throws DatabaseConnectionException {
+        loadDriver();
+        if (!available.tryAcquire()) return false;
+        take();
+        return true;
+    }
+
+    /**
+     * Preleva la connessione per un permesso già acquisito, restituendo il permesso in caso di errore.
+     * @throws DatabaseConnectionException Se non è possibile stabilire una nuova connessione.
+     */
+    private void take() throws DatabaseConnectionException {
+        try {
+            conn = checkout();
+        } catch (DatabaseConnectionException e) {
+            available.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Carica la classe del driver JDBC, una sola volta per l'intero processo.
+     * @throws DatabaseConnectionException Se il driver non può essere caricato.
+     */
+    private void loadDriver() throws DatabaseConnectionException {
+        if (driverLoaded) return;
+        synchronized (DbAccess.class) {
+            if (driverLoaded) return;
+            try {
+                Class.forName(DRIVER_CLASS_NAME).getDeclaredConstructor().newInstance();
+            } catch(ClassNotFoundException e) {
+                System.out.println("[!] Driver not found: " + e.getMessage());
+                throw new DatabaseConnectionException();
+            } catch(InstantiationException | java.lang.reflect.InvocationTargetException e){
+                System.out.println("[!] Error during the instantiation : " + e.getMessage());
+                throw new DatabaseConnectionException();
+            } catch(IllegalAccessException | NoSuchMethodException e){
+                System.out.println("[!] Cannot access the driver : " + e.getMessage());
+                throw new DatabaseConnectionException();
+            }
+            driverLoaded = true;
+        }
+    }
+
+    /**
+     * Preleva una connessione valida tra quelle inattive, scartando quelle non più valide,
+     * oppure ne crea una nuova se non ce ne sono.
+     * @return La connessione da utilizzare.
+     * @throws DatabaseConnectionException Se non è possibile stabilire una nuova connessione.
+     */
+    private Connection checkout() throws DatabaseConnectionException {
+        Connection c;
+        while ((c = idle.pollFirst()) != null) {
+            try {
+                if (c.isValid(VALIDATION_TIMEOUT)) {
+                    return c;
+                }
+            } catch (SQLException e) {
+                // connessione non verificabile: viene scartata
+            }
+            discard(c);
+        }
+
+        String connectionString = DBMS + "://" + SERVER + ":" + PORT + "/" + DATABASE + "?user=" + USER_ID + "&password=" + PASSWORD + "&serverTimezone=UTC&rewriteBatchedStatements=true";
 
         System.out.println("Connection's String: " + connectionString);
 
         try {
-            conn = DriverManager.getConnection(connectionString);
+            return DriverManager.getConnection(connectionString);
         } catch(SQLException e) {
             System.out.println("[!] SQLException: " + e.getMessage());
             System.out.println("[!] SQLState: " + e.getSQLState());
@@ -81,6 +193,18 @@ public class DbAccess {
         }
     }
 
+    /**
+     * Chiude definitivamente una connessione fisica, ignorando eventuali errori.
+     * @param c La connessione da chiudere.
+     */
+    private static void discard(Connection c) {
+        try {
+            c.close();
+        } catch (SQLException e) {
+            // la connessione è già inutilizzabile
+        }
+    }
+
     /**
      * Restituisce l'oggetto Connection stabilito, permettendo ad altre classi di eseguire query SQL.
      * @return L'oggetto Connection corrente.
@@ -90,11 +214,26 @@ public class DbAccess {
     }
 
     /**
-     * Chiude la connessione attiva al database.
-     * @throws SQLException Se si verifica un errore SQL durante la chiusura della connessione.
+     * Rilascia la connessione attiva restituendola al pool, dove potrà essere riutilizzata.
+     * Una connessione già chiusa, o lasciata con una transazione aperta, viene scartata.
+     * @throws SQLException Se si verifica un errore SQL durante il controllo dello stato della connessione.
      */
     public void closeConnection() throws SQLException {
-        conn.close();
+        if (conn == null) return;
+        Connection c = conn;
+        conn = null;
+        try {
+            if (!c.isClosed() && c.getAutoCommit()) {
+                idle.offerFirst(c);
+            } else {
+                discard(c);
+            }
+        } catch (SQLException e) {
+            discard(c);
+            throw e;
+        } finally {
+            available.release();
+        }
     }
 
 }
@@ -0,0 +1,602 @@
+package database;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * La classe DelimitedFileData legge le transazioni distinte di un file di testo delimitato (CSV o TSV),
+ * memorizzandole per colonne come fa {@link TableData} per una tabella del database.
+ * <p>
+ * La prima riga del file contiene i nomi delle colonne. Il resto del file viene mappato in memoria
+ * e diviso in blocchi di righe intere, analizzati in parallelo direttamente sui byte del file.
+ * Il tipo di ogni colonna viene dedotto dai valori: una colonna è numerica (attributo continuo) se tutti
+ * i suoi valori non vuoti sono numeri, altrimenti è trattata come stringa (attributo discreto).
+ * Come per una tabella, un valore vuoto vale 0 in una colonna numerica e null in una colonna di stringhe.
+ * I campi possono essere racchiusi tra virgolette (con "" per una virgoletta), ma non possono contenere
+ * un ritorno a capo. Le righe duplicate vengono scartate, per mantenere la semantica di "select distinct".
+ */
+public class DelimitedFileData {
+
+    /**
+     * Dimensione nominale massima di un blocco di righe.
+     */
+    private static final long MAX_CHUNK_SIZE = 256L << 20;
+
+    /**
+     * Dimensione minima di un blocco di righe, sotto la quale non conviene dividere il lavoro.
+     */
+    private static final long MIN_CHUNK_SIZE = 4L << 20;
+
+    /**
+     * Numero di righe esaminate all'inizio del file per dedurre il tipo iniziale delle colonne.
+     */
+    private static final int SAMPLE_LINES = 1000;
+
+    /**
+     * Potenze di 10 rappresentabili esattamente come double, usate per la conversione veloce dei numeri.
+     */
+    private static final double[] POWERS_OF_TEN = new double[23];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    /**
+     * Il file da leggere.
+     */
+    private final Path file;
+
+    /**
+     * Il carattere separatore dei campi.
+     */
+    private final byte delimiter;
+
+    /**
+     * Il numero di thread usati per l'analisi dei blocchi.
+     */
+    private final int threads;
+
+    /**
+     * Nomi delle colonne letti dall'intestazione del file.
+     */
+    private List<String> columnNames;
+
+    /**
+     * Tipo di ogni colonna: true se numerica. Una colonna può solo passare da numerica a stringa.
+     */
+    private volatile boolean[] numeric;
+
+    /**
+     * Costruttore della classe DelimitedFileData.
+     * @param file Il file da leggere.
+     * @param delimiter Il carattere separatore dei campi (ad esempio ',' o '\t').
+     * @param threads Il numero di thread con cui analizzare il file in parallelo.
+     */
+    public DelimitedFileData(Path file, char delimiter, int threads) {
+        if (delimiter > 127 || delimiter == '"' || delimiter == '\n' || delimiter == '\r') {
+            throw new IllegalArgumentException("Separatore non ammesso: " + delimiter);
+        }
+        this.file = file;
+        this.delimiter = (byte) delimiter;
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Restituisce i nomi delle colonne, letti dall'intestazione da {@link #getDistinctColumns()}.
+     * @return I nomi delle colonne, nell'ordine del file.
+     */
+    public List<String> getColumnNames() {
+        return columnNames;
+    }
+
+    /**
+     * Legge le transazioni distinte del file, memorizzandole per colonne.
+     * @return Un buffer per ogni colonna del file: NumericColumnBuffer per le colonne numeriche, StringColumnBuffer per le altre.
+     * @throws IOException Se si verifica un errore di lettura o il file non è nel formato atteso.
+     * @throws EmptySetException Se il file non contiene alcuna riga oltre all'intestazione.
+     */
+    public List<ColumnBuffer> getDistinctColumns() throws IOException, EmptySetException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long dataStart = readHeader(channel);
+            if (dataStart >= size) throw new EmptySetException("Empty set");
+
+            long[] bounds = splitChunks(channel, dataStart, size);
+            Chunk[] chunks = new Chunk[bounds.length - 1];
+            for (int c = 0; c < chunks.length; c++) {
+                chunks[c] = new Chunk(bounds[c], bounds[c + 1]);
+            }
+            numeric = sampleTypes(channel, dataStart, size);
+
+            ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, chunks.length),
+                    Thread.ofPlatform().name("qt-parse-", 0).daemon(true).factory());
+            try {
+                // un blocco che scopre un valore non numerico in una colonna numerica cambia il tipo della colonna:
+                // i blocchi analizzati con il tipo precedente vengono analizzati di nuovo
+                List<Chunk> pending = new ArrayList<>(Arrays.asList(chunks));
+                while (!pending.isEmpty()) {
+                    List<Future<?>> futures = new ArrayList<>(pending.size());
+                    for (Chunk chunk : pending) {
+                        futures.add(executor.submit(() -> {
+                            chunk.parse(channel);
+                            return null;
+                        }));
+                    }
+                    for (Future<?> future : futures) {
+                        await(future);
+                    }
+                    pending.clear();
+                    for (Chunk chunk : chunks) {
+                        if (!chunk.hasTypes(numeric)) pending.add(chunk);
+                    }
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+            return mergeDistinct(chunks);
+        }
+    }
+
+    /**
+     * Legge l'intestazione del file e ne ricava i nomi delle colonne.
+     * @return La posizione del primo byte dopo l'intestazione.
+     */
+    private long readHeader(FileChannel channel) throws IOException {
+        long end = findLineStart(channel, 0);
+        if (end == 0) throw new IOException("Il file " + file + " è vuoto");
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, end);
+        LineParser parser = new LineParser(header);
+        columnNames = new ArrayList<>();
+        int lineEnd = parser.lineEnd(0);
+        int pos = parser.skipBom();
+        while (true) {
+            pos = parser.field(pos, lineEnd);
+            columnNames.add(parser.fieldString());
+            if (pos >= lineEnd) break;
+            pos++;
+        }
+        return end;
+    }
+
+    /**
+     * Divide la parte dati del file in blocchi di righe intere.
+     * @return Le posizioni di inizio dei blocchi, seguite dalla fine del file.
+     */
+    private long[] splitChunks(FileChannel channel, long start, long end) throws IOException {
+        long length = end - start;
+        long chunkSize = Math.min(MAX_CHUNK_SIZE, Math.max(MIN_CHUNK_SIZE, length / (threads * 4L) + 1));
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(start);
+        for (long nominal = start + chunkSize; nominal < end; nominal += chunkSize) {
+            long lineStart = findLineStart(channel, nominal);
+            if (lineStart > bounds.get(bounds.size() - 1) && lineStart < end) bounds.add(lineStart);
+        }
+        bounds.add(end);
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+            if (i > 0 && result[i] - result[i - 1] > Integer.MAX_VALUE) {
+                throw new IOException("Riga troppo lunga nel file " + file);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Cerca l'inizio della prima riga che comincia dopo la posizione specificata.
+     * @return La posizione successiva al primo '\n' trovato, oppure la fine del file.
+     */
+    private static long findLineStart(FileChannel channel, long from) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        long pos = from;
+        while (true) {
+            buffer.clear();
+            int read = channel.read(buffer, pos);
+            if (read < 0) return channel.size();
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') return pos + i + 1;
+            }
+            pos += read;
+        }
+    }
+
+    /**
+     * Deduce il tipo iniziale delle colonne dalle prime righe del file.
+     * Il tipo può ancora cambiare durante l'analisi completa.
+     */
+    private boolean[] sampleTypes(FileChannel channel, long start, long end) throws IOException {
+        boolean[] types = new boolean[columnNames.size()];
+        Arrays.fill(types, true);
+        long sampleEnd = Math.min(end, start + MIN_CHUNK_SIZE);
+        if (sampleEnd < end) sampleEnd = Math.min(end, findLineStart(channel, sampleEnd));
+        LineParser parser = new LineParser(channel.map(FileChannel.MapMode.READ_ONLY, start, sampleEnd - start));
+        int pos = 0;
+        for (int line = 0; line < SAMPLE_LINES && pos < parser.limit(); line++) {
+            int lineEnd = parser.lineEnd(pos);
+            if (!parser.isBlank(pos, lineEnd)) {
+                for (int j = 0; j < types.length && pos <= lineEnd; j++) {
+                    pos = parser.field(pos, lineEnd) + 1;
+                    if (types[j] && !parser.isEmpty() && Double.isNaN(parser.fieldNumber())) types[j] = false;
+                }
+            }
+            pos = parser.nextLine(lineEnd);
+        }
+        return types;
+    }
+
+    /**
+     * Segna come stringa una colonna numerica in cui è stato trovato un valore non numerico.
+     */
+    private synchronized void markDiscrete(int column) {
+        if (numeric[column]) {
+            boolean[] types = numeric.clone();
+            types[column] = false;
+            numeric = types;
+        }
+    }
+
+    /**
+     * Unisce i buffer dei blocchi, scartando le righe già presenti.
+     * Le righe sono confrontate tramite una tabella hash ad indirizzamento aperto che contiene,
+     * per ogni riga tenuta, il blocco e la riga di origine.
+     */
+    private List<ColumnBuffer> mergeDistinct(Chunk[] chunks) throws EmptySetException {
+        int columns = columnNames.size();
+        long total = 0;
+        for (Chunk chunk : chunks) total += chunk.rows;
+        if (total == 0) throw new EmptySetException("Empty set");
+
+        long wanted = Math.max(16, total + (total >> 1));
+        int capacity = wanted >= (1 << 29) ? (1 << 30) : Integer.highestOneBit((int) wanted) << 1;
+        long[] table = new long[capacity];
+        Arrays.fill(table, -1L);
+        int mask = capacity - 1;
+
+        List<ColumnBuffer> merged = new ArrayList<>(columns);
+        for (int j = 0; j < columns; j++) {
+            merged.add(numeric[j] ? new NumericColumnBuffer() : new StringColumnBuffer());
+        }
+        for (int c = 0; c < chunks.length; c++) {
+            Chunk chunk = chunks[c];
+            int[] kept = new int[chunk.rows];
+            int count = 0;
+            for (int r = 0; r < chunk.rows; r++) {
+                int hash = chunk.hashes[r];
+                int mixed = hash * 0x9E3779B9;
+                int slot = (mixed ^ (mixed >>> 16)) & mask;
+                boolean duplicate = false;
+                while (table[slot] != -1L) {
+                    Chunk other = chunks[(int) (table[slot] >>> 32)];
+                    int otherRow = (int) table[slot];
+                    if (other.hashes[otherRow] == hash && chunk.sameRow(r, other, otherRow)) {
+                        duplicate = true;
+                        break;
+                    }
+                    slot = (slot + 1) & mask;
+                }
+                if (!duplicate) {
+                    table[slot] = ((long) c << 32) | r;
+                    kept[count++] = r;
+                }
+            }
+            for (int j = 0; j < columns; j++) {
+                merged.get(j).appendRows(chunk.columns.get(j), kept, count);
+            }
+        }
+        return merged;
+    }
+
+    private static void await(Future<?> future) throws IOException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while parsing", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Blocco di righe intere del file, analizzato da un solo thread nei propri buffer.
+     */
+    private class Chunk {
+
+        /**
+         * Posizione iniziale del blocco nel file.
+         */
+        private final long start;
+
+        /**
+         * Posizione finale (esclusa) del blocco nel file.
+         */
+        private final long end;
+
+        /**
+         * Tipi delle colonne con cui è stato analizzato il blocco.
+         */
+        private boolean[] types;
+
+        /**
+         * Buffer delle colonne del blocco.
+         */
+        private List<ColumnBuffer> columns;
+
+        /**
+         * Hash di ogni riga del blocco.
+         */
+        private int[] hashes;
+
+        /**
+         * Numero di righe del blocco.
+         */
+        private int rows;
+
+        Chunk(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        boolean hasTypes(boolean[] current) {
+            return Arrays.equals(types, current);
+        }
+
+        /**
+         * Analizza il blocco con i tipi correnti delle colonne.
+         * Se trova un valore non numerico in una colonna numerica cambia il tipo della colonna e ricomincia.
+         */
+        void parse(FileChannel channel) throws IOException {
+            LineParser parser = new LineParser(channel.map(FileChannel.MapMode.READ_ONLY, start, end - start));
+            while (!parseWith(parser, numeric)) {
+                // tipo cambiato: si ricomincia con i nuovi tipi
+            }
+        }
+
+        private boolean parseWith(LineParser parser, boolean[] current) throws IOException {
+            int count = current.length;
+            List<ColumnBuffer> buffers = new ArrayList<>(count);
+            for (int j = 0; j < count; j++) {
+                buffers.add(current[j] ? new NumericColumnBuffer() : new StringColumnBuffer());
+            }
+            int[] rowHashes = new int[1024];
+            int n = 0;
+            int pos = 0;
+            while (pos < parser.limit()) {
+                int lineEnd = parser.lineEnd(pos);
+                if (!parser.isBlank(pos, lineEnd)) {
+                    int hash = 1;
+                    for (int j = 0; j < count; j++) {
+                        if (pos > lineEnd) throw fieldCount(pos);
+                        pos = parser.field(pos, lineEnd);
+                        if (pos < lineEnd && j == count - 1) throw fieldCount(pos);
+                        pos++;
+                        if (current[j]) {
+                            double value = 0;
+                            if (!parser.isEmpty()) {
+                                value = parser.fieldNumber();
+                                if (Double.isNaN(value)) {
+                                    markDiscrete(j);
+                                    return false;
+                                }
+                            }
+                            ((NumericColumnBuffer) buffers.get(j)).add(value);
+                            hash = 31 * hash + Double.hashCode(value);
+                        } else {
+                            String value = parser.isEmpty() ? null : parser.fieldString();
+                            ((StringColumnBuffer) buffers.get(j)).add(value);
+                            hash = 31 * hash + (value == null ? 0 : value.hashCode());
+                        }
+                    }
+                    if (n == rowHashes.length) rowHashes = Arrays.copyOf(rowHashes, ColumnBuffer.grow(n, n + 1));
+                    rowHashes[n++] = hash;
+                }
+                pos = parser.nextLine(lineEnd);
+            }
+            this.types = current;
+            this.columns = buffers;
+            this.hashes = rowHashes;
+            this.rows = n;
+            return true;
+        }
+
+        boolean sameRow(int row, Chunk other, int otherRow) {
+            for (int j = 0; j < columns.size(); j++) {
+                if (!columns.get(j).sameValue(row, other.columns.get(j), otherRow)) return false;
+            }
+            return true;
+        }
+
+        private IOException fieldCount(int pos) {
+            return new IOException("Numero di campi errato nella riga alla posizione " + (start + pos) + " del file " + file);
+        }
+    }
+
+    /**
+     * Analizzatore delle righe di un blocco mappato in memoria.
+     * Il campo corrente viene copiato in un array di byte riutilizzato, senza ulteriori allocazioni
+     * finché non viene convertito in stringa.
+     */
+    private class LineParser {
+
+        private final MappedByteBuffer buffer;
+
+        private final int limit;
+
+        /**
+         * Byte del campo corrente, senza virgolette e spazi esterni.
+         */
+        private byte[] field = new byte[256];
+
+        /**
+         * Lunghezza del campo corrente.
+         */
+        private int length;
+
+        LineParser(MappedByteBuffer buffer) {
+            this.buffer = buffer;
+            this.limit = buffer.limit();
+        }
+
+        int limit() {
+            return limit;
+        }
+
+        int skipBom() {
+            if (limit >= 3 && buffer.get(0) == (byte) 0xEF && buffer.get(1) == (byte) 0xBB && buffer.get(2) == (byte) 0xBF) return 3;
+            return 0;
+        }
+
+        /**
+         * Restituisce la fine della riga che inizia in pos, escluso l'eventuale '\r' finale.
+         */
+        int lineEnd(int pos) {
+            int i = pos;
+            while (i < limit && buffer.get(i) != '\n') i++;
+            int end = i;
+            if (end > pos && buffer.get(end - 1) == '\r') end--;
+            return end;
+        }
+
+        int nextLine(int lineEnd) {
+            int i = lineEnd;
+            while (i < limit && buffer.get(i) != '\n') i++;
+            return i + 1;
+        }
+
+        boolean isBlank(int pos, int lineEnd) {
+            for (int i = pos; i < lineEnd; i++) {
+                byte b = buffer.get(i);
+                if (b != ' ' && b != '\t') return false;
+            }
+            return true;
+        }
+
+        boolean isEmpty() {
+            return length == 0;
+        }
+
+        /**
+         * Legge il campo che inizia in pos e lo copia nell'array del campo corrente.
+         * @return La posizione del separatore che chiude il campo, oppure lineEnd.
+         */
+        int field(int pos, int lineEnd) throws IOException {
+            length = 0;
+            int i = pos;
+            while (i < lineEnd && buffer.get(i) == ' ' && delimiter != ' ') i++;
+            if (i < lineEnd && buffer.get(i) == '"') {
+                i++;
+                while (true) {
+                    if (i >= lineEnd) throw new IOException("Virgolette non chiuse nel file " + file);
+                    byte b = buffer.get(i++);
+                    if (b == '"') {
+                        if (i < lineEnd && buffer.get(i) == '"') {
+                            i++;
+                        } else {
+                            break;
+                        }
+                    }
+                    append(b);
+                }
+                while (i < lineEnd && buffer.get(i) != delimiter) i++;
+                return i;
+            }
+            while (i < lineEnd && buffer.get(i) != delimiter) {
+                append(buffer.get(i++));
+            }
+            while (length > 0 && field[length - 1] == ' ') length--;
+            return i;
+        }
+
+        private void append(byte b) {
+            if (length == field.length) field = Arrays.copyOf(field, length * 2);
+            field[length++] = b;
+        }
+
+        String fieldString() {
+            return new String(field, 0, length, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Converte il campo corrente in numero.
+         * I numeri decimali con al più 15 cifre significative ed esponente piccolo sono convertiti
+         * direttamente (in modo esatto); gli altri passano da Double.parseDouble.
+         * @return Il valore, oppure NaN se il campo non è un numero.
+         */
+        double fieldNumber() {
+            int i = 0;
+            boolean negative = false;
+            if (i < length && (field[i] == '-' || field[i] == '+')) {
+                negative = field[i] == '-';
+                i++;
+            }
+            long mantissa = 0;
+            int digits = 0;
+            int exponent = 0;
+            boolean any = false;
+            while (i < length && field[i] >= '0' && field[i] <= '9') {
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (field[i] - '0');
+                    if (mantissa != 0) digits++;
+                } else {
+                    exponent++;
+                }
+                any = true;
+                i++;
+            }
+            if (i < length && field[i] == '.') {
+                i++;
+                while (i < length && field[i] >= '0' && field[i] <= '9') {
+                    if (digits < 18) {
+                        mantissa = mantissa * 10 + (field[i] - '0');
+                        if (mantissa != 0) digits++;
+                        exponent--;
+                    }
+                    any = true;
+                    i++;
+                }
+            }
+            if (!any) return Double.NaN;
+            if (i < length && (field[i] == 'e' || field[i] == 'E')) {
+                i++;
+                boolean negativeExponent = false;
+                if (i < length && (field[i] == '-' || field[i] == '+')) {
+                    negativeExponent = field[i] == '-';
+                    i++;
+                }
+                if (i == length) return Double.NaN;
+                int e = 0;
+                while (i < length && field[i] >= '0' && field[i] <= '9') {
+                    if (e < 100000) e = e * 10 + (field[i] - '0');
+                    i++;
+                }
+                exponent += negativeExponent ? -e : e;
+            }
+            if (i != length) return Double.NaN;
+            if (mantissa == 0) return negative ? -0.0 : 0.0;
+            if (digits <= 15 && exponent >= -22 && exponent <= 22) {
+                double value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+                return negative ? -value : value;
+            }
+            return Double.parseDouble(new String(field, 0, length, StandardCharsets.ISO_8859_1));
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package database;
+
+import database.TableSchema.Column;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * La classe LoadSpec descrive quale porzione di una tabella caricare: un sottoinsieme delle colonne (proiezione)
+ * e un filtro sulle righe, formato da condizioni "colonna operatore valore" in congiunzione (AND).
+ * I nomi delle colonne vengono verificati sullo schema della tabella e gli operatori su un elenco chiuso;
+ * i valori non vengono mai concatenati nella query ma associati ai parametri di un PreparedStatement.
+ */
+public class LoadSpec {
+
+    /**
+     * Operatori di confronto ammessi nelle condizioni del filtro.
+     */
+    private static final Set<String> OPERATORS = Set.of("=", "<>", "<", "<=", ">", ">=");
+
+    /**
+     * Classe innestata che modella una condizione del filtro.
+     */
+    private static class Condition {
+
+        /**
+         * Nome della colonna, così come indicato dal client.
+         */
+        private final String column;
+
+        /**
+         * Operatore di confronto.
+         */
+        private final String operator;
+
+        /**
+         * Valore da confrontare (String o Number).
+         */
+        private final Object value;
+
+        Condition(String column, String operator, Object value) {
+            this.column = column;
+            this.operator = operator;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Nome della tabella.
+     */
+    private final String table;
+
+    /**
+     * Colonne da caricare; una lista vuota indica tutte le colonne mappate dello schema.
+     */
+    private final List<String> columns;
+
+    /**
+     * Condizioni del filtro, in congiunzione.
+     */
+    private final List<Condition> conditions = new ArrayList<>();
+
+    /**
+     * Costruttore che seleziona l'intera tabella, con tutte le colonne e senza filtro.
+     * @param table Il nome della tabella.
+     */
+    public LoadSpec(String table) {
+        this(table, Collections.emptyList());
+    }
+
+    /**
+     * Costruttore che seleziona un sottoinsieme delle colonne della tabella.
+     * @param table Il nome della tabella.
+     * @param columns I nomi delle colonne da caricare, nell'ordine desiderato; vuota per tutte le colonne.
+     */
+    public LoadSpec(String table, List<String> columns) {
+        this.table = table;
+        this.columns = new ArrayList<>(columns);
+    }
+
+    /**
+     * Aggiunge una condizione al filtro sulle righe.
+     * @param column Il nome della colonna su cui applicare la condizione.
+     * @param operator L'operatore di confronto (=, &lt;&gt;, &lt;, &lt;=, &gt;, &gt;=).
+     * @param value Il valore da confrontare, di tipo String o Number.
+     * @return Questo oggetto, per concatenare più condizioni.
+     * @throws IllegalArgumentException Se l'operatore non è ammesso o il valore non è di un tipo supportato.
+     */
+    public LoadSpec where(String column, String operator, Object value) {
+        if (!OPERATORS.contains(operator))
+            throw new IllegalArgumentException("Operatore non ammesso: " + operator);
+        if (!(value instanceof String) && !(value instanceof Number))
+            throw new IllegalArgumentException("Valore non ammesso per la colonna " + column);
+        conditions.add(new Condition(column, operator, value));
+        return this;
+    }
+
+    /**
+     * Restituisce il nome della tabella.
+     * @return Il nome della tabella.
+     */
+    public String getTable() {
+        return table;
+    }
+
+    /**
+     * Verifica se la specifica seleziona l'intera tabella.
+     * @return true se non ci sono né proiezione né filtro.
+     */
+    public boolean isWholeTable() {
+        return columns.isEmpty() && conditions.isEmpty();
+    }
+
+    /**
+     * Risolve le colonne da caricare sullo schema della tabella.
+     * @param schema Lo schema della tabella.
+     * @return Le colonne selezionate, nell'ordine richiesto (o in quello dello schema se non è indicata una proiezione).
+     * @throws SQLException Se una colonna richiesta non esiste o non è di un tipo mappato, o se non resta alcuna colonna.
+     */
+    public List<Column> getColumns(TableSchema schema) throws SQLException {
+        List<Column> selected = new ArrayList<>();
+        if (columns.isEmpty()) {
+            for (int i = 0; i < schema.getNumberOfAttributes(); i++)
+                selected.add(schema.getColumn(i));
+        } else {
+            for (String name : columns) {
+                Column c = schema.getColumn(name);
+                if (c == null)
+                    throw new SQLException("La colonna " + name + " non esiste nella tabella " + table + " o non è di un tipo supportato.");
+                if (!selected.contains(c))
+                    selected.add(c);
+            }
+        }
+        if (selected.isEmpty())
+            throw new SQLException();
+        return selected;
+    }
+
+    /**
+     * Costruisce la clausola WHERE del filtro, con un parametro "?" per ogni valore.
+     * I nomi delle colonne sono quelli definiti nel database, verificati sullo schema.
+     * @param schema Lo schema della tabella.
+     * @return La clausola, senza la parola chiave WHERE, oppure una stringa vuota se non c'è filtro.
+     * @throws SQLException Se una colonna del filtro non esiste nella tabella.
+     */
+    String getFilter(TableSchema schema) throws SQLException {
+        StringBuilder filter = new StringBuilder();
+        for (Condition condition : conditions) {
+            String name = schema.resolveColumnName(condition.column);
+            if (name == null)
+                throw new SQLException("La colonna " + condition.column + " non esiste nella tabella " + table + ".");
+            if (filter.length() > 0)
+                filter.append(" AND ");
+            filter.append(name).append(' ').append(condition.operator).append(" ?");
+        }
+        return filter.toString();
+    }
+
+    /**
+     * Associa i valori del filtro ai parametri della query, nell'ordine delle condizioni.
+     * @param statement La query preparata con la clausola prodotta da {@link #getFilter(TableSchema)}.
+     * @throws SQLException Se si verifica un errore nell'impostazione dei parametri.
+     */
+    void bind(PreparedStatement statement) throws SQLException {
+        for (int i = 0; i < conditions.size(); i++) {
+            Object value = conditions.get(i).value;
+            if (value instanceof String)
+                statement.setString(i + 1, (String) value);
+            else
+                statement.setDouble(i + 1, ((Number) value).doubleValue());
+        }
+    }
+
+    /**
+     * Restituisce una chiave che identifica univocamente la specifica, adatta a indicizzare una cache.
+     * Per l'intera tabella coincide con il nome della tabella; altrimenti è "tabella?..." seguito da
+     * colonne e condizioni, ciascun elemento preceduto dalla propria lunghezza per evitare ambiguità.
+     * @return La chiave della specifica.
+     */
+    public String getKey() {
+        if (isWholeTable())
+            return table;
+        StringBuilder key = new StringBuilder(table).append('?');
+        for (String column : columns)
+            appendToken(key, column);
+        key.append(';');
+        for (Condition condition : conditions) {
+            appendToken(key, condition.column);
+            appendToken(key, condition.operator);
+            appendToken(key, (condition.value instanceof String ? "S" : "N") + condition.value);
+        }
+        return key.toString();
+    }
+
+    private static void appendToken(StringBuilder key, String token) {
+        key.append(token.length()).append(':').append(token);
+    }
+
+    /**
+     * Restituisce una rappresentazione leggibile della specifica, nella forma di una query SQL.
+     * @return La stringa che descrive la specifica.
+     */
+    public String toString() {
+        StringBuilder out = new StringBuilder(table);
+        if (!columns.isEmpty())
+            out.append(" ").append(columns);
+        for (int i = 0; i < conditions.size(); i++) {
+            Condition condition = conditions.get(i);
+            out.append(i == 0 ? " where " : " and ").append(condition.column).append(' ')
+                    .append(condition.operator).append(' ').append(condition.value);
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,120 @@
+package database;
+
+import java.nio.DoubleBuffer;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * Buffer per i valori di una colonna numerica, memorizzati in un array di double.
+ * Mantiene durante l'inserimento il valore minimo e massimo della colonna.
+ * @see ColumnBuffer
+ */
+public class NumericColumnBuffer extends ColumnBuffer {
+
+    /**
+     * Valori della colonna.
+     */
+    private double[] values = new double[INITIAL_CAPACITY];
+
+    /**
+     * Valore minimo inserito.
+     */
+    private double min = Double.POSITIVE_INFINITY;
+
+    /**
+     * Valore massimo inserito.
+     */
+    private double max = Double.NEGATIVE_INFINITY;
+
+    @Override
+    void read(ResultSet rs, int columnIndex) throws SQLException {
+        add(rs.getDouble(columnIndex));
+    }
+
+    /**
+     * Aggiunge un valore in coda al buffer.
+     * @param value Il valore da aggiungere.
+     */
+    public void add(double value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, grow(values.length, size + 1));
+        }
+        values[size++] = value;
+        if (value < min) min = value;
+        if (value > max) max = value;
+    }
+
+    @Override
+    public void appendAll(ColumnBuffer other) {
+        NumericColumnBuffer o = (NumericColumnBuffer) other;
+        if (size + o.size > values.length) {
+            values = Arrays.copyOf(values, grow(values.length, size + o.size));
+        }
+        System.arraycopy(o.values, 0, values, size, o.size);
+        size += o.size;
+        if (o.min < min) min = o.min;
+        if (o.max > max) max = o.max;
+    }
+
+    @Override
+    void appendRows(ColumnBuffer other, int[] rows, int count) {
+        NumericColumnBuffer o = (NumericColumnBuffer) other;
+        if (size + count > values.length) {
+            values = Arrays.copyOf(values, grow(values.length, size + count));
+        }
+        for (int i = 0; i < count; i++) {
+            double value = o.values[rows[i]];
+            values[size++] = value;
+            if (value < min) min = value;
+            if (value > max) max = value;
+        }
+    }
+
+    @Override
+    int valueHash(int row) {
+        return Double.hashCode(values[row]);
+    }
+
+    @Override
+    boolean sameValue(int row, ColumnBuffer other, int otherRow) {
+        return Double.doubleToLongBits(values[row]) == Double.doubleToLongBits(((NumericColumnBuffer) other).values[otherRow]);
+    }
+
+    /**
+     * Restituisce il valore nella posizione specificata.
+     * @param index La posizione del valore.
+     * @return Il valore.
+     */
+    public double get(int index) {
+        return values[index];
+    }
+
+    /**
+     * Restituisce il valore minimo inserito nel buffer.
+     * @return Il minimo, +infinito se il buffer è vuoto.
+     */
+    public double getMin() {
+        return min;
+    }
+
+    /**
+     * Restituisce il valore massimo inserito nel buffer.
+     * @return Il massimo, -infinito se il buffer è vuoto.
+     */
+    public double getMax() {
+        return max;
+    }
+
+    /**
+     * Restituisce i valori del buffer come DoubleBuffer di sola lettura.
+     * L'array viene ricopiato solo se lo spazio inutilizzato supera un ottavo della sua dimensione.
+     * @return I valori della colonna.
+     */
+    public DoubleBuffer toBuffer() {
+        if (values.length - size > size >> 3) {
+            values = Arrays.copyOf(values, size);
+        }
+        return DoubleBuffer.wrap(values, 0, size).slice().asReadOnlyBuffer();
+    }
+}
@@ -0,0 +1,160 @@
+package database;
+
+import java.nio.IntBuffer;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Buffer per i valori di una colonna testuale, codificati tramite dizionario:
+ * ogni valore distinto è memorizzato una sola volta e ogni riga contiene solo l'indice (codice) del suo valore.
+ * Il dizionario coincide con l'insieme dei valori distinti della colonna. Il valore NULL ha codice -1.
+ * @see ColumnBuffer
+ */
+public class StringColumnBuffer extends ColumnBuffer {
+
+    /**
+     * Codici dei valori, uno per riga.
+     */
+    private int[] codes = new int[INITIAL_CAPACITY];
+
+    /**
+     * Valori distinti, nell'ordine in cui sono stati incontrati.
+     */
+    private final List<String> dictionary = new ArrayList<>();
+
+    /**
+     * Indice inverso del dizionario: valore -> codice.
+     */
+    private final Map<String, Integer> index = new HashMap<>();
+
+    @Override
+    void read(ResultSet rs, int columnIndex) throws SQLException {
+        add(rs.getString(columnIndex));
+    }
+
+    /**
+     * Aggiunge un valore in coda al buffer, inserendolo nel dizionario se non è già presente.
+     * @param value Il valore da aggiungere (può essere null).
+     */
+    public void add(String value) {
+        addCode(encode(value));
+    }
+
+    /**
+     * Restituisce il codice del valore, inserendolo nel dizionario se non è già presente.
+     * @param value Il valore (può essere null).
+     * @return Il codice del valore, -1 per null.
+     */
+    private int encode(String value) {
+        if (value == null) return -1;
+        Integer code = index.get(value);
+        if (code == null) {
+            code = dictionary.size();
+            dictionary.add(value);
+            index.put(value, code);
+        }
+        return code;
+    }
+
+    private void addCode(int code) {
+        if (size == codes.length) {
+            codes = Arrays.copyOf(codes, grow(codes.length, size + 1));
+        }
+        codes[size++] = code;
+    }
+
+    @Override
+    public void appendAll(ColumnBuffer other) {
+        StringColumnBuffer o = (StringColumnBuffer) other;
+        // i codici dell'altro buffer vengono tradotti nel dizionario di questo buffer
+        int[] remap = new int[o.dictionary.size()];
+        for (int i = 0; i < remap.length; i++) {
+            remap[i] = encode(o.dictionary.get(i));
+        }
+        if (size + o.size > codes.length) {
+            codes = Arrays.copyOf(codes, grow(codes.length, size + o.size));
+        }
+        for (int i = 0; i < o.size; i++) {
+            int code = o.codes[i];
+            codes[size++] = code < 0 ? code : remap[code];
+        }
+    }
+
+    @Override
+    void appendRows(ColumnBuffer other, int[] rows, int count) {
+        StringColumnBuffer o = (StringColumnBuffer) other;
+        // come in appendAll, i codici vengono tradotti una sola volta per valore del dizionario
+        int[] remap = new int[o.dictionary.size()];
+        Arrays.fill(remap, -2);
+        if (size + count > codes.length) {
+            codes = Arrays.copyOf(codes, grow(codes.length, size + count));
+        }
+        for (int i = 0; i < count; i++) {
+            int code = o.codes[rows[i]];
+            if (code >= 0) {
+                if (remap[code] == -2) remap[code] = encode(o.dictionary.get(code));
+                code = remap[code];
+            }
+            codes[size++] = code;
+        }
+    }
+
+    @Override
+    int valueHash(int row) {
+        int code = codes[row];
+        return code < 0 ? 0 : dictionary.get(code).hashCode();
+    }
+
+    @Override
+    boolean sameValue(int row, ColumnBuffer other, int otherRow) {
+        StringColumnBuffer o = (StringColumnBuffer) other;
+        int code = codes[row];
+        int otherCode = o.codes[otherRow];
+        if (code < 0 || otherCode < 0) return code < 0 && otherCode < 0;
+        return o == this ? code == otherCode : dictionary.get(code).equals(o.dictionary.get(otherCode));
+    }
+
+    /**
+     * Restituisce il codice del valore nella posizione specificata.
+     * @param row La posizione del valore.
+     * @return Il codice, -1 per null.
+     */
+    public int getCode(int row) {
+        return codes[row];
+    }
+
+    /**
+     * Restituisce il valore nella posizione specificata.
+     * @param row La posizione del valore.
+     * @return Il valore, oppure null.
+     */
+    public String get(int row) {
+        int code = codes[row];
+        return code < 0 ? null : dictionary.get(code);
+    }
+
+    /**
+     * Restituisce il dizionario dei valori distinti: il valore con codice i è in posizione i.
+     * @return L'array dei valori distinti.
+     */
+    public String[] getDictionary() {
+        return dictionary.toArray(new String[0]);
+    }
+
+    /**
+     * Restituisce i codici del buffer come IntBuffer di sola lettura.
+     * L'array viene ricopiato solo se lo spazio inutilizzato supera un ottavo della sua dimensione.
+     * @return I codici della colonna.
+     */
+    public IntBuffer toBuffer() {
+        if (codes.length - size > size >> 3) {
+            codes = Arrays.copyOf(codes, size);
+        }
+        return IntBuffer.wrap(codes, 0, size).slice().asReadOnlyBuffer();
+    }
+}
@@ -1,12 +1,24 @@
 package database;
 
+import metrics.Counter;
+import metrics.Histogram;
+import metrics.Metrics;
+import metrics.TableQueryEvent;
+import metrics.Trace;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import database.TableSchema.Column;
 
 /**
@@ -15,6 +27,21 @@ import database.TableSchema.Column;
  */
 public class TableData {
 
+    /**
+     * Durata delle query delle transazioni, una per partizione, dall'esecuzione alla lettura dell'ultima riga.
+     */
+	private static final Histogram ROWS_SECONDS = Metrics.timer("qt_load_rows_seconds", "Durata della lettura delle righe di una tabella o di una sua partizione.");
+
+    /**
+     * Righe lette dalle query delle transazioni.
+     */
+	private static final Counter ROWS = Metrics.counter("qt_load_rows_total", "Righe lette dal database.");
+
+    /**
+     * Durata delle query sui valori di una colonna (valori distinti, minimo e massimo).
+     */
+	private static final Histogram AGGREGATE_SECONDS = Metrics.timer("qt_load_aggregate_seconds", "Durata delle query di aggregazione su una colonna.");
+
     /**
      * Riferimento all'oggetto per la gestione della connessione al database.
      */
@@ -40,7 +67,7 @@ public class TableData {
 	public List<Example> getDistinctTransazioni(String table) throws SQLException, EmptySetException{
 		LinkedList<Example> transSet = new LinkedList<Example>();
 		Statement statement;
-		TableSchema tSchema=new TableSchema(db,table);
+		TableSchema tSchema=TableSchema.getSchema(db,table);
 		
 		
 		String query="select distinct ";
@@ -77,6 +104,305 @@ public class TableData {
 
 	}
 
+    /**
+     * Esegue una query sul database per estrarre tutte le transazioni (righe) distinte presenti nella tabella specificata,
+     * memorizzandole per colonne. Il risultato viene letto in streaming (una riga alla volta dal server)
+     * e ogni valore viene scritto direttamente nel buffer primitivo della sua colonna, senza creare
+     * oggetti intermedi per le righe: la memoria occupata durante il caricamento resta vicina a quella del dataset finale.
+     * @param table Il nome della tabella del database da interrogare.
+     * @return Un buffer per ogni colonna dello schema, nello stesso ordine.
+     * @throws SQLException Se si verifica un errore durante l'esecuzione della query SQL.
+     * @throws EmptySetException Se la query non restituisce alcuna riga.
+     */
+	public List<ColumnBuffer> getDistinctColumns(String table) throws SQLException, EmptySetException{
+		return getDistinctColumns(new LoadSpec(table));
+	}
+
+    /**
+     * Esegue in streaming la query delle transazioni distinte di una porzione della tabella, memorizzandole per colonne.
+     * Proiezione e filtro della specifica vengono tradotti in SQL, così che solo le righe e le colonne richieste
+     * vengano trasferite dal database; i valori del filtro sono passati come parametri della query.
+     * @param spec La porzione della tabella da leggere.
+     * @return Un buffer per ogni colonna selezionata, nell'ordine di {@link LoadSpec#getColumns(TableSchema)}.
+     * @throws SQLException Se si verifica un errore durante l'esecuzione della query SQL o la specifica non è valida per la tabella.
+     * @throws EmptySetException Se la query non restituisce alcuna riga.
+     */
+	public List<ColumnBuffer> getDistinctColumns(LoadSpec spec) throws SQLException, EmptySetException{
+		TableSchema tSchema=TableSchema.getSchema(db,spec.getTable());
+		List<Column> selected=spec.getColumns(tSchema);
+		String filter=spec.getFilter(tSchema);
+		String query=selectDistinct(selected, spec.getTable())+(filter.isEmpty() ? "" : " WHERE "+filter);
+		List<ColumnBuffer> columns = readColumns(db, spec, selected, query);
+		if(columns.get(0).size()==0) throw new EmptySetException("Empty set");
+
+		return columns;
+	}
+
+    /**
+     * Legge le transazioni distinte della tabella suddividendo la scansione in partizioni lette in parallelo.
+     * @param table Il nome della tabella del database da interrogare.
+     * @param partitions Il numero di partizioni; con un valore minore di 2 la lettura avviene su una sola connessione.
+     * @return I buffer delle colonne, nell'ordine dello schema della tabella.
+     * @throws SQLException Se si verifica un errore durante l'esecuzione di una delle query SQL.
+     * @throws EmptySetException Se la query non restituisce alcuna riga.
+     * @throws DatabaseConnectionException Se non è possibile ottenere una connessione per una partizione.
+     * @see #getDistinctColumns(LoadSpec, int)
+     */
+	public List<ColumnBuffer> getDistinctColumns(String table, int partitions) throws SQLException, EmptySetException, DatabaseConnectionException{
+		return getDistinctColumns(new LoadSpec(table), partitions);
+	}
+
+    /**
+     * Legge le transazioni distinte di una porzione della tabella suddividendo la scansione in partizioni lette in parallelo.
+     * Ogni riga è assegnata alla partizione MOD(CRC32(riga), partitions): la connessione corrente legge la prima
+     * partizione, le altre vengono lette contemporaneamente su connessioni prelevate dal pool.
+     * Le connessioni aggiuntive vengono prelevate tutte all'inizio e solo se disponibili: se il pool non ne ha
+     * abbastanza le partizioni si riducono a quelle disponibili, fino alla lettura su una sola connessione.
+     * Le stringhe concorrono all'hash con il loro peso nella collation (WEIGHT_STRING): righe che la "select distinct"
+     * considera uguali, anche se diverse per maiuscole o spazi finali in una collation *_ci, finiscono nella stessa
+     * partizione e vengono ridotte a una sola come nella lettura su una sola connessione.
+     * Le partizioni vengono poi accodate eliminando le righe ripetute, così che l'unicità del risultato
+     * non dipenda dalla sola suddivisione.
+     * L'ordine delle transazioni può differire da quello della lettura su una sola connessione.
+     * @param spec La porzione della tabella da leggere.
+     * @param partitions Il numero di partizioni; con un valore minore di 2 la lettura avviene su una sola connessione.
+     * @return Un buffer per ogni colonna selezionata, nell'ordine di {@link LoadSpec#getColumns(TableSchema)}.
+     * @throws SQLException Se si verifica un errore durante l'esecuzione di una delle query SQL o la specifica non è valida per la tabella.
+     * @throws EmptySetException Se la query non restituisce alcuna riga.
+     * @throws DatabaseConnectionException Se non è possibile ottenere una connessione per una partizione.
+     */
+	public List<ColumnBuffer> getDistinctColumns(LoadSpec spec, int partitions) throws SQLException, EmptySetException, DatabaseConnectionException{
+		if(partitions<2)
+			return getDistinctColumns(spec);
+
+		TableSchema tSchema=TableSchema.getSchema(db,spec.getTable());
+		List<Column> selected=spec.getColumns(tSchema);
+		String filter=spec.getFilter(tSchema);
+
+		//le connessioni delle altre partizioni si prelevano subito e senza attendere: chi aspettasse un posto nel pool
+		//tenendo occupata la propria connessione potrebbe esaurirlo insieme ad altri caricamenti concorrenti
+		List<DbAccess> reserved=reserveConnections(partitions-1);
+		if(reserved.isEmpty())
+			return getDistinctColumns(spec);
+		int parts=reserved.size()+1;
+
+		StringBuilder select=new StringBuilder(selectDistinct(selected, spec.getTable())).append(" WHERE ");
+		if(!filter.isEmpty())
+			select.append(filter).append(" AND ");
+		//le stringhe entrano nell'hash con il loro peso nella collation della colonna (WEIGHT_STRING), lo stesso usato
+		//dalla "select distinct": valori che questa considera uguali ('Sunny', 'sunny', 'Sunny ') finiscono così nella
+		//stessa partizione anche se i loro byte sono diversi
+		select.append("MOD(CRC32(CONCAT_WS('|'");
+		for(Column c : selected)
+			select.append(",").append(c.isNumber() ? c.getColumnName() : "WEIGHT_STRING("+c.getColumnName()+")");
+		select.append(")),").append(parts).append(")=");
+
+		//il driver MySQL legge le righe dentro blocchi synchronized, che bloccherebbero il carrier di un thread virtuale
+		ExecutorService executor = Executors.newFixedThreadPool(parts-1,
+				Thread.ofPlatform().name("qt-load-", 0).daemon(true).factory());
+		//connessioni già affidate a una partizione, che la restituisce al pool al termine della lettura
+		int handed=0;
+		try {
+			List<Future<List<ColumnBuffer>>> futures = new ArrayList<>(parts-1);
+			for(int k=1;k<parts;k++){
+				String query=select.toString()+k;
+				DbAccess partitionDb=reserved.get(k-1);
+				//le partizioni lette sugli altri thread entrano nella traccia della richiesta
+				futures.add(executor.submit(Trace.propagate(() -> {
+					try {
+						return readColumns(partitionDb, spec, selected, query);
+					} finally {
+						partitionDb.closeConnection();
+					}
+				})));
+				handed++;
+			}
+			List<List<ColumnBuffer>> partitionColumns = new ArrayList<>(parts);
+			partitionColumns.add(readColumns(db, spec, selected, select.toString()+0));
+			for(Future<List<ColumnBuffer>> future : futures)
+				partitionColumns.add(awaitPartition(future));
+			List<ColumnBuffer> columns = mergeDistinct(selected, partitionColumns);
+			if(columns.get(0).size()==0) throw new EmptySetException("Empty set");
+
+			return columns;
+		} finally {
+			//in caso di errore interrompe le partizioni ancora in lettura
+			executor.shutdownNow();
+			for(int k=handed;k<reserved.size();k++)
+				reserved.get(k).closeConnection();
+		}
+	}
+
+    /**
+     * Accoda le partizioni eliminando le righe già presenti in una partizione precedente, con una tabella hash
+     * ad indirizzamento aperto sugli indici delle righe come {@link DelimitedFileData}.
+     * Il confronto è esatto: due righe diverse solo per la collation sono già state rese uguali dalla
+     * "select distinct" della partizione in cui sono finite entrambe.
+     * @param selected Le colonne lette.
+     * @param partitions I buffer delle colonne di ogni partizione.
+     * @return Un buffer per ogni colonna con le righe distinte di tutte le partizioni.
+     */
+	private static List<ColumnBuffer> mergeDistinct(List<Column> selected, List<List<ColumnBuffer>> partitions){
+		long total=0;
+		for(List<ColumnBuffer> partition : partitions)
+			total+=partition.get(0).size();
+		long wanted=Math.max(16, total+(total>>1));
+		int capacity=wanted>=(1<<29) ? (1<<30) : Integer.highestOneBit((int) wanted)<<1;
+		long[] table=new long[capacity];
+		Arrays.fill(table, -1L);
+		int mask=capacity-1;
+
+		List<ColumnBuffer> merged=new ArrayList<>(selected.size());
+		for(Column c : selected)
+			merged.add(ColumnBuffer.forColumn(c));
+		for(int p=0;p<partitions.size();p++){
+			List<ColumnBuffer> partition=partitions.get(p);
+			int rows=partition.get(0).size();
+			int[] kept=new int[rows];
+			int count=0;
+			for(int r=0;r<rows;r++){
+				int mixed=rowHash(partition, r)*0x9E3779B9;
+				int slot=(mixed^(mixed>>>16))&mask;
+				boolean duplicate=false;
+				while(table[slot]!=-1L){
+					if(sameRow(partition, r, partitions.get((int) (table[slot]>>>32)), (int) table[slot])){
+						duplicate=true;
+						break;
+					}
+					slot=(slot+1)&mask;
+				}
+				if(!duplicate){
+					table[slot]=((long) p<<32)|r;
+					kept[count++]=r;
+				}
+			}
+			for(int j=0;j<merged.size();j++)
+				merged.get(j).appendRows(partition.get(j), kept, count);
+		}
+		return merged;
+	}
+
+	private static int rowHash(List<ColumnBuffer> columns, int row){
+		int hash=1;
+		for(ColumnBuffer column : columns)
+			hash=31*hash+column.valueHash(row);
+		return hash;
+	}
+
+	private static boolean sameRow(List<ColumnBuffer> columns, int row, List<ColumnBuffer> other, int otherRow){
+		for(int j=0;j<columns.size();j++){
+			if(!columns.get(j).sameValue(row, other.get(j), otherRow))
+				return false;
+		}
+		return true;
+	}
+
+    /**
+     * Preleva dal pool fino al numero indicato di connessioni aggiuntive, senza attendere quelle non disponibili.
+     * @param count Il numero di connessioni desiderate.
+     * @return Le connessioni prelevate, eventualmente meno di quelle richieste.
+     * @throws DatabaseConnectionException Se una nuova connessione non può essere stabilita; quelle già prelevate vengono restituite.
+     */
+	static List<DbAccess> reserveConnections(int count) throws DatabaseConnectionException{
+		List<DbAccess> reserved=new ArrayList<>(count);
+		try {
+			for(int k=0;k<count;k++){
+				DbAccess connection=new DbAccess();
+				if(!connection.tryInitConnection())
+					break;
+				reserved.add(connection);
+			}
+		} catch (DatabaseConnectionException e) {
+			for(DbAccess connection : reserved){
+				try {
+					connection.closeConnection();
+				} catch (SQLException ignored) {
+					//la connessione viene comunque restituita al pool
+				}
+			}
+			throw e;
+		}
+		return reserved;
+	}
+
+    /**
+     * Attende la lettura di una partizione, rilanciando l'eccezione che ne ha causato il fallimento.
+     * @param future Il future della partizione.
+     * @return I buffer delle colonne della partizione.
+     * @throws SQLException Se la lettura è fallita con un errore SQL o il thread è stato interrotto.
+     * @throws DatabaseConnectionException Se non è stato possibile ottenere una connessione per la partizione.
+     */
+	private static List<ColumnBuffer> awaitPartition(Future<List<ColumnBuffer>> future) throws SQLException, DatabaseConnectionException{
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while loading a partition", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof SQLException) throw (SQLException) cause;
+			if(cause instanceof DatabaseConnectionException) throw (DatabaseConnectionException) cause;
+			if(cause instanceof RuntimeException) throw (RuntimeException) cause;
+			if(cause instanceof Error) throw (Error) cause;
+			throw new SQLException(cause);
+		}
+	}
+
+    /**
+     * Costruisce la query che seleziona le transazioni distinte della tabella, limitata alle colonne indicate.
+     * @param selected Le colonne da selezionare, nell'ordine desiderato.
+     * @param table Il nome della tabella.
+     * @return Il testo della query.
+     */
+	private static String selectDistinct(List<Column> selected, String table){
+		StringBuilder query=new StringBuilder("select distinct ");
+		for(int i=0;i<selected.size();i++){
+			if(i>0)
+				query.append(",");
+			query.append(selected.get(i).getColumnName());
+		}
+		query.append(" FROM ").append(table);
+		return query.toString();
+	}
+
+    /**
+     * Esegue la query in streaming, con i parametri del filtro della specifica, e ne legge le righe nei buffer delle colonne.
+     * @param db La connessione su cui eseguire la query.
+     * @param spec La specifica i cui valori vengono associati ai parametri della query.
+     * @param selected Le colonne selezionate dalla query, che determinano il tipo dei buffer.
+     * @param query La query da eseguire.
+     * @return I buffer delle colonne, eventualmente vuoti.
+     * @throws SQLException Se si verifica un errore durante l'esecuzione della query SQL.
+     */
+	private static List<ColumnBuffer> readColumns(DbAccess db, LoadSpec spec, List<Column> selected, String query) throws SQLException{
+		List<ColumnBuffer> columns = new ArrayList<>(selected.size());
+		for(Column c : selected)
+			columns.add(ColumnBuffer.forColumn(c));
+
+		TableQueryEvent event = new TableQueryEvent();
+		event.begin();
+		long start = System.nanoTime();
+		long rows = 0;
+		try (PreparedStatement statement = db.getConnection().prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+			//con MySQL Connector/J Integer.MIN_VALUE attiva lo streaming delle righe invece di caricarle tutte in memoria
+			statement.setFetchSize(Integer.MIN_VALUE);
+			spec.bind(statement);
+			try (ResultSet rs = statement.executeQuery()) {
+				while (rs.next()) {
+					for(int i=0;i<columns.size();i++)
+						columns.get(i).read(rs, i+1);
+					rows++;
+				}
+			}
+		}
+		ROWS_SECONDS.recordSince(start);
+		ROWS.add(rows);
+		Trace.record("db.rows", start);
+		Trace.count("db.rows", rows);
+		commit(event, spec.getTable(), TableQueryEvent.ROWS, rows);
+		return columns;
+	}
+
     /**
      * Esegue una query per estrarre tutti i valori distinti (dominio) per la colonna specificata.
      * I valori vengono restituiti in un TreeSet, garantendo l'unicità e l'ordinamento.
@@ -88,7 +414,6 @@ public class TableData {
 	public  Set<Object>getDistinctColumnValues(String table,Column column) throws SQLException{
 		Set<Object> valueSet = new TreeSet<Object>();
 		Statement statement;
-		TableSchema tSchema=new TableSchema(db,table);
 		
 		
 		String query="select distinct ";
@@ -101,6 +426,9 @@ public class TableData {
 		
 		
 		
+		TableQueryEvent event = new TableQueryEvent();
+		event.begin();
+		long start = System.nanoTime();
 		statement = db.getConnection().createStatement();
 		ResultSet rs = statement.executeQuery(query);
 		while (rs.next()) {
@@ -112,6 +440,9 @@ public class TableData {
 		}
 		rs.close();
 		statement.close();
+		AGGREGATE_SECONDS.recordSince(start);
+		Trace.record("db.aggregate", start);
+		commit(event, table, TableQueryEvent.AGGREGATE, valueSet.size());
 		
 		return valueSet;
 
@@ -128,7 +459,6 @@ public class TableData {
      */
 	public  Object getAggregateColumnValue(String table,Column column,QUERY_TYPE aggregate) throws SQLException,NoValueException{
 		Statement statement;
-		TableSchema tSchema=new TableSchema(db,table);
 		Object value=null;
 		String aggregateOp="";
 		
@@ -140,6 +470,9 @@ public class TableData {
 		query+=aggregateOp+"("+column.getColumnName()+ ") FROM "+table;
 		
 		
+		TableQueryEvent event = new TableQueryEvent();
+		event.begin();
+		long start = System.nanoTime();
 		statement = db.getConnection().createStatement();
 		ResultSet rs = statement.executeQuery(query);
 		if (rs.next()) {
@@ -151,6 +484,9 @@ public class TableData {
 		}
 		rs.close();
 		statement.close();
+		AGGREGATE_SECONDS.recordSince(start);
+		Trace.record("db.aggregate", start);
+		commit(event, table, TableQueryEvent.AGGREGATE, 1);
 		if(value==null)
 			throw new NoValueException("No " + aggregateOp+ " on "+ column.getColumnName());
 			
@@ -158,4 +494,21 @@ public class TableData {
 
 	}
 
+    /**
+     * Completa l'evento JFR di una query; i campi vengono valorizzati solo se l'evento è abilitato.
+     * @param event L'evento iniziato prima della query.
+     * @param table La tabella interrogata.
+     * @param phase La fase del caricamento.
+     * @param rows Le righe lette.
+     */
+	private static void commit(TableQueryEvent event, String table, String phase, long rows){
+		event.end();
+		if(event.shouldCommit()){
+			event.table=table;
+			event.phase=phase;
+			event.rows=rows;
+			event.commit();
+		}
+	}
+
 }
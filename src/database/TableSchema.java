@@ -1,5 +1,9 @@
 package database;
 
+import metrics.Histogram;
+import metrics.Metrics;
+import metrics.TableQueryEvent;
+import metrics.Trace;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.ResultSet;
@@ -7,13 +11,27 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * La classe TableSchema modella lo schema (metadati) di una tabella del database.
  * Estrae i nomi e i tipi delle colonne del database e li mappa su tipi Java semplificati ("string" o "number").
+ * Gli schemi già letti sono mantenuti in una cache condivisa (vedi {@link #getSchema(DbAccess, String)}),
+ * così da non ripetere l'interrogazione dei metadati ad ogni caricamento.
  */
 public class TableSchema {
 
+    /**
+     * Cache degli schemi già letti, indicizzata per nome della tabella.
+     */
+    private static final Map<String, TableSchema> cache = new ConcurrentHashMap<>();
+
+    /**
+     * Durata della lettura dei metadati di una tabella, registrata solo quando lo schema non è in cache.
+     */
+    private static final Histogram SCHEMA_SECONDS = Metrics.timer("qt_load_schema_seconds", "Durata della lettura dello schema di una tabella.");
+
     /**
      * Riferimento all'oggetto per la gestione della connessione al database.
      */
@@ -79,6 +97,12 @@ public class TableSchema {
      */
     List<Column> tableSchema = new ArrayList<Column>();
 
+    /**
+     * Nomi di tutte le colonne della tabella, comprese quelle di tipo non mappato (ad esempio le date),
+     * che possono comparire nei filtri ma non come attributi.
+     */
+    private final List<String> columnNames = new ArrayList<String>();
+
     /**
      * Costruttore della classe TableSchema.
      * Si connette al database per recuperare i metadati della tabella specificata e popola l'array tableSchema.
@@ -107,7 +131,9 @@ public class TableSchema {
 
         //controlla se esiste una tabella nel db del server con il nome
         ResultSet resTables = meta.getTables(null, null, tableName, null);
-        if (!resTables.next()) {
+        boolean exists = resTables.next();
+        resTables.close();
+        if (!exists) {
             throw new SQLException("La tabella " + tableName + " non esiste nel database.");
         }
 
@@ -115,6 +141,7 @@ public class TableSchema {
 
         while (res.next()) {
 
+            columnNames.add(res.getString("COLUMN_NAME"));
             if (mapSQL_JAVATypes.containsKey(res.getString("TYPE_NAME")))
                 tableSchema.add(new Column(
                         res.getString("COLUMN_NAME"),
@@ -124,6 +151,49 @@ public class TableSchema {
         res.close();
     }
 
+    /**
+     * Restituisce lo schema della tabella specificata, leggendolo dal database solo se non è già in cache.
+     * @param db        L'oggetto DbAccess contenente la connessione al database.
+     * @param tableName Il nome della tabella di cui si vuole recuperare lo schema.
+     * @return Lo schema della tabella.
+     * @throws SQLException Se si verifica un errore durante l'accesso ai metadati del database.
+     */
+    public static TableSchema getSchema(DbAccess db, String tableName) throws SQLException {
+        TableSchema schema = cache.get(tableName);
+        if (schema == null) {
+            TableQueryEvent event = new TableQueryEvent();
+            event.begin();
+            long start = System.nanoTime();
+            schema = new TableSchema(db, tableName);
+            SCHEMA_SECONDS.recordSince(start);
+            Trace.record("db.schema", start);
+            event.end();
+            if (event.shouldCommit()) {
+                event.table = tableName;
+                event.phase = TableQueryEvent.SCHEMA;
+                event.commit();
+            }
+            TableSchema previous = cache.putIfAbsent(tableName, schema);
+            if (previous != null) schema = previous;
+        }
+        return schema;
+    }
+
+    /**
+     * Rimuove dalla cache lo schema della tabella specificata, che verrà riletto al prossimo utilizzo.
+     * @param tableName Il nome della tabella.
+     */
+    public static void invalidate(String tableName) {
+        cache.remove(tableName);
+    }
+
+    /**
+     * Rimuove dalla cache tutti gli schemi.
+     */
+    public static void invalidateAll() {
+        cache.clear();
+    }
+
     /**
      * Restituisce il numero totale di attributi (colonne) nello schema della tabella.
      * @return Il numero di colonne.
@@ -141,4 +211,31 @@ public class TableSchema {
         return tableSchema.get(index);
     }
 
-}
\ No newline at end of file
+    /**
+     * Restituisce la colonna mappata con il nome specificato, confrontato senza distinguere maiuscole e minuscole.
+     * @param name Il nome della colonna.
+     * @return L'oggetto Column, oppure null se la tabella non ha una colonna mappata con quel nome.
+     */
+    public Column getColumn(String name) {
+        for (Column c : tableSchema) {
+            if (c.getColumnName().equalsIgnoreCase(name))
+                return c;
+        }
+        return null;
+    }
+
+    /**
+     * Restituisce il nome, così come definito nel database, di una qualsiasi colonna della tabella,
+     * anche se di tipo non mappato.
+     * @param name Il nome della colonna, confrontato senza distinguere maiuscole e minuscole.
+     * @return Il nome della colonna nel database, oppure null se la tabella non ha una colonna con quel nome.
+     */
+    public String resolveColumnName(String name) {
+        for (String columnName : columnNames) {
+            if (columnName.equalsIgnoreCase(name))
+                return columnName;
+        }
+        return null;
+    }
+
+}
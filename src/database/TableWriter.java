@@ -0,0 +1,288 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+/**
+ * La classe TableWriter crea tabelle e vi inserisce righe con insert preparate eseguite a blocchi (batch).
+ * <p>
+ * Le righe vengono inserite in blocchi di dimensione configurabile; con il parametro di connessione
+ * rewriteBatchedStatements il driver MySQL invia ogni blocco come un'unica insert multi-riga.
+ * Le righe possono essere divise in intervalli contigui scritti in parallelo, ciascuno su una propria connessione del pool.
+ * <p>
+ * Con commit a blocchi le righe vengono confermate ogni tot righe per connessione, e un errore lascia nella tabella
+ * quelle già confermate. Senza commit a blocchi ogni connessione scrive in un'unica transazione, e le transazioni
+ * vengono confermate solo quando tutte le connessioni hanno terminato: un errore durante la scrittura annulla tutte le righe.
+ * Le transazioni restano però distinte e vengono confermate una dopo l'altra, per cui la garanzia è parziale:
+ * se il commit di una connessione fallisce, le righe di quelle già confermate restano nella tabella.
+ * Chi ha bisogno di un risultato tutto-o-niente deve eliminare la tabella quando la scrittura fallisce.
+ */
+public class TableWriter {
+
+    /**
+     * Numero massimo di connessioni usate in parallelo da una scrittura, inferiore alla dimensione del pool
+     * così che la scrittura non esaurisca le connessioni disponibili per gli altri client.
+     */
+    public static final int MAX_WRITERS = 4;
+
+    /**
+     * Nomi di tabella ammessi.
+     */
+    private static final Pattern TABLE_NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_]{0,63}");
+
+    /**
+     * Associa i valori di una riga ai parametri dell'insert.
+     */
+    @FunctionalInterface
+    public interface RowBinder {
+
+        /**
+         * Imposta i parametri dell'insert con i valori della riga.
+         * @param statement L'insert preparata, con un parametro per colonna.
+         * @param row L'indice della riga.
+         * @throws SQLException Se si verifica un errore nell'impostazione dei parametri.
+         */
+        void bind(PreparedStatement statement, int row) throws SQLException;
+    }
+
+    /**
+     * Riferimento all'oggetto per la gestione della connessione al database.
+     */
+    private final DbAccess db;
+
+    /**
+     * Numero di righe per batch.
+     */
+    private final int batchSize;
+
+    /**
+     * Numero di connessioni usate in parallelo.
+     */
+    private final int writers;
+
+    /**
+     * Numero di righe dopo cui ogni connessione esegue il commit; 0 per un'unica transazione.
+     */
+    private final int commitRows;
+
+    /**
+     * Costruttore della classe TableWriter.
+     * @param db L'oggetto DbAccess con la connessione attiva, usata per creare le tabelle e per il primo intervallo di righe.
+     * @param batchSize Il numero di righe per batch.
+     * @param writers Il numero di connessioni da usare in parallelo (al massimo {@link #MAX_WRITERS}).
+     * @param commitRows Il numero di righe dopo cui ogni connessione esegue il commit, oppure 0 per un'unica transazione.
+     * @throws IllegalArgumentException Se uno dei parametri non è valido.
+     */
+    public TableWriter(DbAccess db, int batchSize, int writers, int commitRows) {
+        if (batchSize < 1) throw new IllegalArgumentException("Dimensione del batch non valida: " + batchSize);
+        if (writers < 1 || writers > MAX_WRITERS) throw new IllegalArgumentException("Numero di connessioni non valido: " + writers);
+        if (commitRows < 0) throw new IllegalArgumentException("Intervallo di commit non valido: " + commitRows);
+        this.db = db;
+        this.batchSize = batchSize;
+        this.writers = writers;
+        this.commitRows = commitRows;
+    }
+
+    /**
+     * Verifica se il nome è un nome di tabella ammesso (lettere, cifre e underscore).
+     * @param table Il nome da verificare.
+     * @return true se il nome è ammesso.
+     */
+    public static boolean isValidTableName(String table) {
+        return table != null && TABLE_NAME.matcher(table).matches();
+    }
+
+    /**
+     * Crea una tabella con le colonne indicate.
+     * @param table Il nome della tabella.
+     * @param names I nomi delle colonne.
+     * @param types I tipi SQL delle colonne, nello stesso ordine dei nomi.
+     * @param replace true per eliminare la tabella se esiste già, false per fallire.
+     * @throws SQLException Se il nome non è ammesso, la tabella esiste già (e replace è false) o la creazione fallisce.
+     */
+    public void createTable(String table, String[] names, String[] types, boolean replace) throws SQLException {
+        if (!isValidTableName(table)) throw new SQLException("Nome di tabella non valido: " + table);
+        StringBuilder create = new StringBuilder("CREATE TABLE ").append(table).append(" (");
+        for (int i = 0; i < names.length; i++) {
+            if (i > 0) create.append(", ");
+            create.append(quote(names[i])).append(' ').append(types[i]);
+        }
+        create.append(")");
+        try (Statement statement = db.getConnection().createStatement()) {
+            if (replace) statement.executeUpdate("DROP TABLE IF EXISTS " + table);
+            statement.executeUpdate(create.toString());
+        }
+    }
+
+    /**
+     * Elimina una tabella, se esiste.
+     * @param table Il nome della tabella.
+     * @throws SQLException Se il nome non è ammesso o l'eliminazione fallisce.
+     */
+    public void dropTable(String table) throws SQLException {
+        if (!isValidTableName(table)) throw new SQLException("Nome di tabella non valido: " + table);
+        try (Statement statement = db.getConnection().createStatement()) {
+            statement.executeUpdate("DROP TABLE IF EXISTS " + table);
+        }
+    }
+
+    /**
+     * Inserisce le righe nella tabella. Le righe vengono divise in intervalli contigui, uno per connessione:
+     * la connessione corrente scrive il primo, le altre vengono prelevate dal pool all'inizio e solo se disponibili,
+     * per cui con il pool pieno la scrittura usa meno connessioni di quelle configurate, al limite solo quella corrente.
+     * @param table Il nome della tabella.
+     * @param names I nomi delle colonne, nell'ordine dei parametri impostati da binder.
+     * @param rows Il numero di righe.
+     * @param binder L'operazione che imposta i valori di una riga.
+     * @throws SQLException Se una delle insert fallisce; senza commit a blocchi nessuna riga viene inserita,
+     * a meno che a fallire sia il commit di una connessione successiva a quelle già confermate.
+     * @throws DatabaseConnectionException Se non è possibile stabilire una nuova connessione per un intervallo.
+     */
+    public void insert(String table, String[] names, int rows, RowBinder binder) throws SQLException, DatabaseConnectionException {
+        if (!isValidTableName(table)) throw new SQLException("Nome di tabella non valido: " + table);
+        StringBuilder insert = new StringBuilder("INSERT INTO ").append(table).append(" (");
+        for (int i = 0; i < names.length; i++) {
+            if (i > 0) insert.append(", ");
+            insert.append(quote(names[i]));
+        }
+        insert.append(") VALUES (");
+        for (int i = 0; i < names.length; i++) {
+            insert.append(i > 0 ? ", ?" : "?");
+        }
+        String sql = insert.append(")").toString();
+
+        // le connessioni degli altri intervalli si prelevano subito e senza attendere, come per la lettura a partizioni:
+        // se il pool non ne ha abbastanza le righe si dividono tra quelle disponibili
+        List<DbAccess> reserved = TableData.reserveConnections(Math.max(1, Math.min(writers, rows / batchSize)) - 1);
+        int parts = reserved.size() + 1;
+        DbAccess[] connections = new DbAccess[parts];
+        connections[0] = db;
+        for (int k = 1; k < parts; k++) {
+            connections[k] = reserved.get(k - 1);
+        }
+        //come per la lettura a partizioni, il driver MySQL non va usato da thread virtuali
+        ExecutorService executor = parts > 1 ? Executors.newFixedThreadPool(parts - 1,
+                Thread.ofPlatform().name("qt-write-", 0).daemon(true).factory()) : null;
+        List<Future<?>> futures = new ArrayList<>(parts - 1);
+        boolean committed = false;
+        try {
+            for (int k = 1; k < parts; k++) {
+                int part = k;
+                futures.add(executor.submit(() -> {
+                    write(connections[part].getConnection(), sql, start(part, parts, rows), start(part + 1, parts, rows), binder);
+                    return null;
+                }));
+            }
+            write(db.getConnection(), sql, 0, start(1, parts, rows), binder);
+            for (Future<?> future : futures) {
+                await(future);
+            }
+            // commit in sequenza: un errore a metà lascia confermati gli intervalli precedenti (vedi la descrizione della classe)
+            for (DbAccess connection : connections) {
+                connection.getConnection().commit();
+            }
+            committed = true;
+        } finally {
+            // le connessioni vengono rilasciate solo quando nessun thread le sta più usando
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    // l'errore è già stato rilanciato da await
+                }
+            }
+            if (executor != null) executor.shutdown();
+            for (int k = 0; k < parts; k++) {
+                try {
+                    release(connections[k], k > 0, committed);
+                } catch (SQLException e) {
+                    // una connessione rimasta con l'autocommit disattivato viene scartata dal pool
+                }
+            }
+        }
+    }
+
+    /**
+     * Inserisce un intervallo di righe su una connessione, in batch, senza confermare l'ultimo blocco.
+     */
+    private void write(Connection connection, String sql, int from, int to, RowBinder binder) throws SQLException {
+        connection.setAutoCommit(false);
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            int batched = 0;
+            int uncommitted = 0;
+            for (int row = from; row < to; row++) {
+                binder.bind(statement, row);
+                statement.addBatch();
+                batched++;
+                uncommitted++;
+                if (batched == batchSize || (commitRows > 0 && uncommitted >= commitRows)) {
+                    statement.executeBatch();
+                    batched = 0;
+                }
+                if (commitRows > 0 && uncommitted >= commitRows) {
+                    connection.commit();
+                    uncommitted = 0;
+                }
+            }
+            if (batched > 0) statement.executeBatch();
+        }
+    }
+
+    /**
+     * Annulla le righe non confermate, ripristina l'autocommit (il pool scarta le connessioni con una transazione aperta)
+     * e restituisce al pool le connessioni prelevate per la scrittura.
+     */
+    private static void release(DbAccess connection, boolean close, boolean committed) throws SQLException {
+        Connection c = connection.getConnection();
+        try {
+            if (!committed && !c.getAutoCommit()) c.rollback();
+        } finally {
+            try {
+                c.setAutoCommit(true);
+            } finally {
+                if (close) connection.closeConnection();
+            }
+        }
+    }
+
+    private static int start(int part, int parts, int rows) {
+        return (int) ((long) rows * part / parts);
+    }
+
+    /**
+     * Attende la scrittura di un intervallo, rilanciando l'eccezione che ne ha causato il fallimento.
+     */
+    private static void await(Future<?> future) throws SQLException, DatabaseConnectionException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while writing rows", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) throw (SQLException) cause;
+            if (cause instanceof DatabaseConnectionException) throw (DatabaseConnectionException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new SQLException(cause);
+        }
+    }
+
+    /**
+     * Racchiude il nome di una colonna tra backtick, raddoppiando quelli eventualmente presenti nel nome.
+     */
+    private static String quote(String name) {
+        return "`" + name.replace("`", "``") + "`";
+    }
+}
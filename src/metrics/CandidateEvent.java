@@ -0,0 +1,37 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Evento JFR emesso per ogni iterazione del clustering QT, cioè per ogni ricerca del cluster candidato più grande.
+ * Un'esecuzione produce un evento per cluster: per contenere la dimensione delle registrazioni continue
+ * vengono registrate di default solo le iterazioni più lunghe di un millisecondo e senza stack trace;
+ * la soglia si abbassa nelle impostazioni della registrazione (qt.CandidateCluster#threshold=0 ms).
+ * @see MiningEvent
+ */
+@Name("qt.CandidateCluster")
+@Label("Cluster candidato")
+@Category({"QT Server", "Clustering"})
+@Description("Ricerca del cluster candidato più grande tra le tuple non ancora assegnate")
+@Threshold("1 ms")
+@StackTrace(false)
+public final class CandidateEvent extends Event {
+
+    @Label("Iterazione")
+    public int iteration;
+
+    @Label("Tuple da assegnare")
+    public long remaining;
+
+    @Label("Dimensione del cluster")
+    public int clusterSize;
+
+    @Label("Distanze calcolate")
+    public long distanceEvaluations;
+}
@@ -0,0 +1,48 @@
+package metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * La classe Counter è un contatore senza lock, basato su LongAdder: l'aggiornamento da più thread
+ * non crea contesa e la somma viene calcolata solo alla lettura.
+ * Un contatore registrato come gauge può anche diminuire (ad esempio le connessioni attive).
+ * @see Metrics#counter(String, String)
+ * @see Metrics#gauge(String, String)
+ */
+public final class Counter {
+
+    private final LongAdder value = new LongAdder();
+
+    Counter() {
+    }
+
+    /**
+     * Incrementa il contatore di uno.
+     */
+    public void increment() {
+        value.increment();
+    }
+
+    /**
+     * Decrementa il contatore di uno.
+     */
+    public void decrement() {
+        value.decrement();
+    }
+
+    /**
+     * Aggiunge un valore al contatore.
+     * @param delta Il valore da aggiungere.
+     */
+    public void add(long delta) {
+        value.add(delta);
+    }
+
+    /**
+     * Restituisce il valore corrente.
+     * @return La somma degli aggiornamenti.
+     */
+    public long get() {
+        return value.sum();
+    }
+}
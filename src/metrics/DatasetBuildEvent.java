@@ -0,0 +1,23 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Evento JFR emesso alla costruzione di attributi e colonne di un dataset dai buffer letti dal database o da un file.
+ */
+@Name("qt.DatasetBuild")
+@Label("Costruzione del dataset")
+@Category({"QT Server", "Caricamento"})
+@Description("Costruzione degli attributi e delle colonne di un dataset")
+public final class DatasetBuildEvent extends Event {
+
+    @Label("Righe")
+    public long rows;
+
+    @Label("Attributi")
+    public int attributes;
+}
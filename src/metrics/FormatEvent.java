@@ -0,0 +1,44 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Evento JFR emesso alla formattazione testuale di un dataset o di un insieme di cluster da inviare al client.
+ * Il testo è quasi sempre ASCII, per cui il numero di caratteri coincide con i byte prodotti in UTF-8.
+ */
+@Name("qt.Format")
+@Label("Formattazione")
+@Category({"QT Server", "Risposta"})
+@Description("Formattazione testuale di un dataset o dei cluster")
+public final class FormatEvent extends Event {
+
+    /**
+     * Oggetto formattato: l'intero dataset.
+     */
+    public static final String DATASET = "dataset";
+
+    /**
+     * Oggetto formattato: i cluster con le loro tuple.
+     */
+    public static final String CLUSTERS = "clusters";
+
+    /**
+     * Oggetto formattato: i soli centroidi dei cluster.
+     */
+    public static final String CENTROIDS = "centroids";
+
+    @Label("Oggetto")
+    @Description("dataset, clusters o centroids")
+    public String target;
+
+    @Label("Elementi")
+    @Description("Righe o cluster formattati")
+    public long items;
+
+    @Label("Caratteri")
+    public long characters;
+}
@@ -0,0 +1,152 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * La classe Histogram registra la distribuzione di valori non negativi (tipicamente durate in nanosecondi)
+ * con bucket log-lineari, sul modello di HdrHistogram: ogni potenza di due è divisa in {@link #SUB_BUCKETS}
+ * bucket di uguale ampiezza, per cui l'errore relativo di un percentile non supera 1/16 a qualsiasi scala,
+ * da un nanosecondo a molte ore, con una memoria fissa di meno di 8 KB.
+ * <p>
+ * La registrazione non usa lock: un incremento atomico del bucket, due LongAdder per numero e somma
+ * e un confronto (raramente un CAS) per il massimo. La lettura non ferma le registrazioni concorrenti,
+ * quindi i valori letti possono includere solo in parte le registrazioni in corso.
+ */
+public final class Histogram {
+
+    /**
+     * Bit di precisione di ogni potenza di due.
+     */
+    private static final int SUB_BITS = 4;
+
+    /**
+     * Numero di bucket per ogni potenza di due.
+     */
+    static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    /**
+     * Numero di bucket necessari a coprire tutti i valori long non negativi.
+     */
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Fattore per cui moltiplicare i valori registrati quando vengono esposti (ad esempio 1e-9 per i nanosecondi in secondi).
+     */
+    private final double scale;
+
+    Histogram(double scale) {
+        this.scale = scale;
+    }
+
+    /**
+     * Registra un valore; i valori negativi sono registrati come zero.
+     * @param value Il valore da registrare.
+     */
+    public void record(long value) {
+        long v = Math.max(0, value);
+        buckets.incrementAndGet(index(v));
+        count.increment();
+        sum.add(v);
+        long current = max.get();
+        while (v > current && !max.compareAndSet(current, v)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * Registra il tempo trascorso da un istante.
+     * @param startNanos L'istante iniziale, letto con System.nanoTime().
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Restituisce l'indice del bucket del valore.
+     */
+    static int index(long value) {
+        int exponent = 63 - Long.numberOfLeadingZeros(value | 1);
+        if (exponent < SUB_BITS) return (int) value;
+        int shift = exponent - SUB_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    /**
+     * Restituisce il valore più grande contenuto nel bucket.
+     */
+    static long upperBound(int index) {
+        if (index < SUB_BUCKETS) return index;
+        int shift = index / SUB_BUCKETS - 1;
+        long lower = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lower + (1L << shift) - 1;
+    }
+
+    /**
+     * Restituisce il numero di valori registrati.
+     * @return Il numero di valori.
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Restituisce la somma dei valori registrati, scalata.
+     * @return La somma.
+     */
+    public double getSum() {
+        return sum.sum() * scale;
+    }
+
+    /**
+     * Restituisce il valore massimo registrato, scalato.
+     * @return Il massimo, oppure 0 se non ci sono valori.
+     */
+    public double getMax() {
+        return max.get() * scale;
+    }
+
+    /**
+     * Restituisce il percentile indicato, scalato: il limite superiore del bucket che lo contiene,
+     * senza superare il massimo registrato.
+     * @param percentile Il percentile, tra 0 e 100.
+     * @return Il valore del percentile, oppure 0 se non ci sono valori.
+     */
+    public double getPercentile(double percentile) {
+        return getPercentiles(percentile)[0];
+    }
+
+    /**
+     * Restituisce più percentili leggendo i bucket una sola volta.
+     * @param percentiles I percentili in ordine crescente, tra 0 e 100.
+     * @return I valori dei percentili, scalati, nello stesso ordine.
+     * @see #getPercentile(double)
+     */
+    public double[] getPercentiles(double... percentiles) {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        long highest = max.get();
+        double[] values = new double[percentiles.length];
+        if (total == 0) return values;
+        int i = 0;
+        long seen = counts[0];
+        for (int p = 0; p < percentiles.length; p++) {
+            long rank = Math.max(1, (long) Math.ceil(percentiles[p] / 100 * total));
+            while (seen < rank && i < BUCKETS - 1) {
+                seen += counts[++i];
+            }
+            values[p] = Math.min(upperBound(i), highest) * scale;
+        }
+        return values;
+    }
+}
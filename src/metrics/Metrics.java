@@ -0,0 +1,159 @@
+package metrics;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Supplier;
+
+/**
+ * La classe Metrics è il registro delle metriche del server, condiviso da tutti i package.
+ * <p>
+ * Le metriche si registrano una sola volta, di solito in un campo statico della classe che le aggiorna,
+ * e si aggiornano senza passare dal registro: l'aggiornamento costa quanto quello di un LongAdder
+ * o di un {@link Histogram}. Il nome di una metrica può contenere delle etichette nella sintassi di Prometheus,
+ * ad esempio {@code qt_command_seconds{command="1"}}: le metriche con lo stesso nome e etichette diverse
+ * formano una famiglia, che condivide tipo e descrizione.
+ * <p>
+ * {@link #writeTo(Appendable)} espone tutte le metriche nel formato testuale di Prometheus:
+ * i contatori e i gauge con il loro valore, gli istogrammi come summary con i quantili 0.5, 0.9, 0.99, 0.999
+ * e 1 (il massimo), la somma e il numero dei valori; gli istogrammi ancora vuoti vengono omessi.
+ */
+public final class Metrics {
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999, 1};
+
+    /**
+     * Le metriche registrate, ordinate per nome così che le famiglie siano contigue.
+     */
+    private static final Map<String, Object> metrics = new ConcurrentSkipListMap<>();
+
+    /**
+     * Tipo ("counter", "gauge" o "summary") e descrizione di ogni famiglia.
+     */
+    private static final Map<String, String[]> families = new ConcurrentHashMap<>();
+
+    private Metrics() {
+    }
+
+    /**
+     * Registra un contatore, oppure restituisce quello già registrato con lo stesso nome.
+     * @param name Il nome, con le eventuali etichette; per convenzione termina con "_total".
+     * @param help La descrizione della famiglia.
+     * @return Il contatore.
+     * @throws IllegalArgumentException Se la famiglia è già registrata con un altro tipo.
+     */
+    public static Counter counter(String name, String help) {
+        return register(name, "counter", help, Counter.class, Counter::new);
+    }
+
+    /**
+     * Registra un gauge, cioè un contatore che può anche diminuire.
+     * @param name Il nome, con le eventuali etichette.
+     * @param help La descrizione della famiglia.
+     * @return Il contatore del gauge.
+     * @throws IllegalArgumentException Se la famiglia è già registrata con un altro tipo.
+     */
+    public static Counter gauge(String name, String help) {
+        return register(name, "gauge", help, Counter.class, Counter::new);
+    }
+
+    /**
+     * Registra un istogramma di durate, registrate in nanosecondi ed esposte in secondi.
+     * @param name Il nome, con le eventuali etichette; per convenzione termina con "_seconds".
+     * @param help La descrizione della famiglia.
+     * @return L'istogramma.
+     * @throws IllegalArgumentException Se la famiglia è già registrata con un altro tipo.
+     */
+    public static Histogram timer(String name, String help) {
+        return register(name, "summary", help, Histogram.class, () -> new Histogram(1e-9));
+    }
+
+    /**
+     * Registra un istogramma di valori esposti così come sono registrati (ad esempio numeri di righe).
+     * @param name Il nome, con le eventuali etichette.
+     * @param help La descrizione della famiglia.
+     * @return L'istogramma.
+     * @throws IllegalArgumentException Se la famiglia è già registrata con un altro tipo.
+     */
+    public static Histogram histogram(String name, String help) {
+        return register(name, "summary", help, Histogram.class, () -> new Histogram(1));
+    }
+
+    private static <T> T register(String name, String type, String help, Class<T> kind, Supplier<T> factory) {
+        String family = family(name);
+        String[] previous = families.putIfAbsent(family, new String[]{type, help});
+        if (previous != null && !previous[0].equals(type)) {
+            throw new IllegalArgumentException("La metrica " + family + " è già registrata come " + previous[0]);
+        }
+        return kind.cast(metrics.computeIfAbsent(name, key -> factory.get()));
+    }
+
+    private static String family(String name) {
+        int brace = name.indexOf('{');
+        return brace < 0 ? name : name.substring(0, brace);
+    }
+
+    /**
+     * Scrive tutte le metriche nel formato testuale di Prometheus.
+     * @param out La destinazione.
+     * @throws IOException Se la scrittura fallisce.
+     */
+    public static void writeTo(Appendable out) throws IOException {
+        String current = null;
+        for (Map.Entry<String, Object> entry : metrics.entrySet()) {
+            String name = entry.getKey();
+            Object metric = entry.getValue();
+            // gli istogrammi vuoti (ad esempio i comandi mai ricevuti) non aggiungono informazioni
+            if (metric instanceof Histogram && ((Histogram) metric).getCount() == 0) continue;
+            String family = family(name);
+            if (!family.equals(current)) {
+                String[] description = families.get(family);
+                out.append("# HELP ").append(family).append(' ').append(description[1]).append('\n');
+                out.append("# TYPE ").append(family).append(' ').append(description[0]).append('\n');
+                current = family;
+            }
+            String labels = name.substring(family.length());
+            if (metric instanceof Counter) {
+                out.append(name).append(' ').append(Long.toString(((Counter) metric).get())).append('\n');
+            } else {
+                Histogram histogram = (Histogram) metric;
+                double[] percentiles = new double[QUANTILES.length];
+                for (int i = 0; i < QUANTILES.length; i++) percentiles[i] = QUANTILES[i] * 100;
+                double[] values = histogram.getPercentiles(percentiles);
+                for (int i = 0; i < QUANTILES.length; i++) {
+                    out.append(family).append(withLabel(labels, "quantile=\"" + format(QUANTILES[i]) + "\""))
+                            .append(' ').append(format(values[i])).append('\n');
+                }
+                out.append(family).append("_sum").append(labels).append(' ').append(format(histogram.getSum())).append('\n');
+                out.append(family).append("_count").append(labels).append(' ').append(Long.toString(histogram.getCount())).append('\n');
+            }
+        }
+    }
+
+    /**
+     * Restituisce tutte le metriche nel formato testuale di Prometheus.
+     * @return Il testo delle metriche.
+     */
+    public static String scrape() {
+        StringBuilder text = new StringBuilder();
+        try {
+            writeTo(text);
+        } catch (IOException e) {
+            // StringBuilder non genera IOException
+            throw new IllegalStateException(e);
+        }
+        return text.toString();
+    }
+
+    private static String withLabel(String labels, String label) {
+        if (labels.isEmpty()) return "{" + label + "}";
+        return labels.substring(0, labels.length() - 1) + "," + label + "}";
+    }
+
+    private static String format(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) return Long.toString((long) value);
+        return String.format(Locale.ROOT, "%.9g", value).replaceFirst("0+(e|$)", "$1").replaceFirst("\\.(e|$)", "$1");
+    }
+}
@@ -0,0 +1,31 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Evento JFR emesso per ogni esecuzione completa del clustering QT.
+ * @see CandidateEvent
+ */
+@Name("qt.Mining")
+@Label("Clustering QT")
+@Category({"QT Server", "Clustering"})
+@Description("Esecuzione completa di QTMiner.compute")
+public final class MiningEvent extends Event {
+
+    @Label("Righe")
+    public long rows;
+
+    @Label("Raggio")
+    public double radius;
+
+    @Label("Cluster")
+    @Description("Cluster prodotti")
+    public int clusters;
+
+    @Label("Distanze calcolate")
+    public long distanceEvaluations;
+}
@@ -0,0 +1,45 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Evento JFR emesso per ogni interrogazione del database durante il caricamento di un dataset:
+ * lettura dello schema, lettura delle righe (una per partizione) e query di aggregazione su una colonna.
+ * @see MiningEvent
+ */
+@Name("qt.TableQuery")
+@Label("Query di caricamento")
+@Category({"QT Server", "Caricamento"})
+@Description("Interrogazione del database per il caricamento di un dataset")
+public final class TableQueryEvent extends Event {
+
+    /**
+     * Fase del caricamento: la lettura dello schema.
+     */
+    public static final String SCHEMA = "schema";
+
+    /**
+     * Fase del caricamento: la lettura delle righe.
+     */
+    public static final String ROWS = "rows";
+
+    /**
+     * Fase del caricamento: una query di aggregazione o dei valori distinti di una colonna.
+     */
+    public static final String AGGREGATE = "aggregate";
+
+    @Label("Tabella")
+    public String table;
+
+    @Label("Fase")
+    @Description("schema, rows o aggregate")
+    public String phase;
+
+    @Label("Righe")
+    @Description("Righe lette dalla query")
+    public long rows;
+}
@@ -0,0 +1,162 @@
+package metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * La classe Trace raccoglie i tempi delle fasi di una singola richiesta, per spiegare al client dove è stato speso il tempo.
+ * <p>
+ * La traccia è associata al thread che serve la richiesta: {@link #begin(String)} la attiva e {@link #end()} la chiude,
+ * mentre il codice delle singole fasi la aggiorna con i metodi statici {@link #record(String, long)} e {@link #count(String, long)},
+ * senza riceverla come parametro. Quando nessuna traccia è attiva questi metodi costano una lettura di un ThreadLocal,
+ * per cui possono restare nel codice accanto alle metriche. Il lavoro eseguito su altri thread (ad esempio sul pool
+ * di calcolo) entra nella traccia se l'operazione viene avvolta con {@link #propagate(Callable)}.
+ * <p>
+ * Ogni fase è identificata da un nome e accumula numero di occorrenze, tempo totale e tempo massimo; le fasi eseguite
+ * in parallelo sommano i propri tempi, per cui il totale di una fase può superare la durata della richiesta.
+ * Le fasi compaiono nell'ordine in cui sono state registrate per la prima volta.
+ */
+public final class Trace {
+
+    private static final ThreadLocal<Trace> CURRENT = new ThreadLocal<>();
+
+    private final String name;
+    private final long start = System.nanoTime();
+    private long duration = -1;
+
+    /**
+     * Numero di occorrenze, tempo totale e tempo massimo (in nanosecondi) di ogni fase.
+     */
+    private final Map<String, long[]> phases = new LinkedHashMap<>();
+
+    /**
+     * Valori accumulati che non sono durate (ad esempio i byte inviati).
+     */
+    private final Map<String, long[]> values = new LinkedHashMap<>();
+
+    private Trace(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Attiva una nuova traccia sul thread corrente.
+     * @param name Il nome della richiesta tracciata.
+     * @return La traccia attivata.
+     */
+    public static Trace begin(String name) {
+        Trace trace = new Trace(name);
+        CURRENT.set(trace);
+        return trace;
+    }
+
+    /**
+     * Restituisce la traccia attiva sul thread corrente.
+     * @return La traccia, oppure null se la richiesta non è tracciata.
+     */
+    public static Trace current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Registra nella traccia attiva, se presente, una fase iniziata nell'istante indicato e appena conclusa.
+     * @param phase Il nome della fase.
+     * @param startNanos L'istante iniziale, letto con System.nanoTime().
+     */
+    public static void record(String phase, long startNanos) {
+        Trace trace = CURRENT.get();
+        if (trace != null) trace.add(phase, System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Aggiunge un valore alla traccia attiva, se presente.
+     * @param name Il nome del valore.
+     * @param delta La quantità da aggiungere.
+     */
+    public static void count(String name, long delta) {
+        Trace trace = CURRENT.get();
+        if (trace != null) trace.addValue(name, delta);
+    }
+
+    /**
+     * Avvolge un'operazione da eseguire su un altro thread così che le sue fasi entrino nella traccia attiva.
+     * @param task L'operazione.
+     * @param <T> Il tipo del risultato.
+     * @return L'operazione stessa se nessuna traccia è attiva, altrimenti un'operazione che attiva la traccia
+     * durante la propria esecuzione.
+     */
+    public static <T> Callable<T> propagate(Callable<T> task) {
+        Trace trace = CURRENT.get();
+        if (trace == null) return task;
+        return () -> {
+            Trace previous = CURRENT.get();
+            CURRENT.set(trace);
+            try {
+                return task.call();
+            } finally {
+                CURRENT.set(previous);
+            }
+        };
+    }
+
+    /**
+     * Aggiunge un'occorrenza di una fase.
+     * @param phase Il nome della fase.
+     * @param nanos La durata in nanosecondi.
+     */
+    public synchronized void add(String phase, long nanos) {
+        long[] phaseTimes = phases.computeIfAbsent(phase, k -> new long[3]);
+        phaseTimes[0]++;
+        phaseTimes[1] += nanos;
+        phaseTimes[2] = Math.max(phaseTimes[2], nanos);
+    }
+
+    /**
+     * Aggiunge una quantità a un valore.
+     * @param name Il nome del valore.
+     * @param delta La quantità da aggiungere.
+     */
+    public synchronized void addValue(String name, long delta) {
+        values.computeIfAbsent(name, k -> new long[1])[0] += delta;
+    }
+
+    /**
+     * Chiude la traccia, fissandone la durata, e la disattiva sul thread corrente.
+     */
+    public void end() {
+        synchronized (this) {
+            if (duration < 0) duration = System.nanoTime() - start;
+        }
+        if (CURRENT.get() == this) CURRENT.remove();
+    }
+
+    /**
+     * Restituisce la traccia in forma testuale, una riga per elemento con campi chiave=valore e tempi in millisecondi:
+     * <pre>
+     * request=learningFromDbTable total_ms=812.345
+     * phase=qt.iterations[2-3] count=2 total_ms=301.250 max_ms=160.002
+     * value=network.bytes_sent total=48213
+     * </pre>
+     * @return Il testo della traccia.
+     */
+    @Override
+    public synchronized String toString() {
+        StringBuilder text = new StringBuilder();
+        text.append("request=").append(name).append(" total_ms=")
+                .append(millis(duration < 0 ? System.nanoTime() - start : duration)).append('\n');
+        for (Map.Entry<String, long[]> phase : phases.entrySet()) {
+            long[] phaseTimes = phase.getValue();
+            text.append("phase=").append(phase.getKey()).append(" count=").append(phaseTimes[0])
+                    .append(" total_ms=").append(millis(phaseTimes[1])).append(" max_ms=").append(millis(phaseTimes[2])).append('\n');
+        }
+        for (Map.Entry<String, long[]> value : values.entrySet()) {
+            text.append("value=").append(value.getKey()).append(" total=").append(value.getValue()[0]).append('\n');
+        }
+        return text.toString();
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+    }
+}
@@ -2,7 +2,9 @@ package mining;
 
 import data.Data;
 import data.Tuple;
+import java.io.IOException;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
@@ -18,6 +20,11 @@ import java.util.Set;
  */
 class Cluster implements Iterable<Integer>, Comparable<Cluster>, Serializable {
 
+    /**
+     * Identificativo di versione della serializzazione, uguale a quello dei modelli salvati in formato legacy.
+     */
+    private static final long serialVersionUID = 3366361053666929556L;
+
     /**
      * Il centroide del cluster, rappresentato da una Tupla.
      */
@@ -29,6 +36,12 @@ class Cluster implements Iterable<Integer>, Comparable<Cluster>, Serializable {
      */
     private transient Set<Integer> clusteredData;
 
+    /**
+     * Indice della prima tupla aggiunta al cluster (in QTMiner la tupla usata come centroide), -1 se il cluster è vuoto.
+     * Viene salvato nel formato binario per ricostruire l'insieme degli indici nello stesso ordine.
+     */
+    private transient int firstId = -1;
+
     /**
      * Costruttore della classe Cluster.
      * Inizializza il centroide e crea il set vuoto di indici delle tuple.
@@ -40,6 +53,35 @@ class Cluster implements Iterable<Integer>, Comparable<Cluster>, Serializable {
 		
 	}
 
+    /**
+     * Riporta il cluster allo stato iniziale con un nuovo centroide, riutilizzando l'insieme degli indici
+     * già allocato (e già dimensionato) invece di crearne uno nuovo.
+     * @param centroid La tupla scelta come nuovo centroide del cluster.
+     */
+	void reset(Tuple centroid){
+		this.centroid=centroid;
+		clusteredData.clear();
+		firstId=-1;
+	}
+
+    /**
+     * Ricostruisce un cluster letto con la serializzazione Java: gli indici delle tuple non vengono salvati,
+     * quindi il cluster risulta vuoto invece che privo dell'insieme degli indici.
+     */
+	private void readObject(java.io.ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		clusteredData=new HashSet<>();
+		firstId=-1;
+	}
+
+    /**
+     * Restituisce l'indice della prima tupla aggiunta al cluster.
+     * @return L'indice della tupla, oppure -1 se il cluster è vuoto.
+     */
+	int getFirstId(){
+		return firstId;
+	}
+
     /**
      * Restituisce il centroide del cluster.
      * @return L'oggetto Tuple che rappresenta il centroide.
@@ -54,6 +96,7 @@ class Cluster implements Iterable<Integer>, Comparable<Cluster>, Serializable {
      * @return true se la tupla è stata aggiunta (cioè se è cambiata di cluster), false altrimenti.
      */
 	public boolean addData(int id){
+		if(clusteredData.isEmpty()) firstId=id;
 		return clusteredData.add(id);
 		
 	}
@@ -112,11 +155,11 @@ class Cluster implements Iterable<Integer>, Comparable<Cluster>, Serializable {
      * @return Una stringa formattata con il centroide.
      */
 	public String toString(){
-		String str="Centroid=(";
+		StringBuilder str=new StringBuilder("Centroid=(");
 		for(int i=0;i<centroid.getLength();i++)
-			str+=centroid.get(i);
-		str+=")";
-		return str;
+			str.append(centroid.get(i));
+		str.append(")");
+		return str.toString();
 		
 	}
 
@@ -128,21 +171,45 @@ class Cluster implements Iterable<Integer>, Comparable<Cluster>, Serializable {
      * @return Una stringa formattata contenente tutti i dettagli del cluster.
      */
 	public String toString(Data data){
-		String str="Centroid=(";
+		StringBuilder str=new StringBuilder();
+		try {
+			write(str, data);
+		} catch (IOException e) {
+			// StringBuilder non solleva IOException
+			throw new UncheckedIOException(e);
+		}
+		return str.toString();
+		
+	}
+
+    /**
+     * Scrive in modo incrementale la rappresentazione testuale completa del cluster, nello stesso formato di toString(Data).
+     * @param out La destinazione su cui scrivere.
+     * @param data Il dataset completo per recuperare i valori delle tuple.
+     * @throws IOException Se la scrittura sulla destinazione fallisce.
+     */
+	void write(Appendable out, Data data) throws IOException {
+		out.append("Centroid=(");
 		for(int i=0;i<centroid.getLength();i++)
-			str+=centroid.get(i)+ " ";
-		str+=")\nExamples:\n";
+			out.append(String.valueOf(centroid.get(i))).append(" ");
+		out.append(")\nExamples:\n");
+		writeMembers(out, data);
+		out.append("\nAvgDistance=").append(String.valueOf(getCentroid().avgDistance(data, clusteredData)));
+	}
 
+    /**
+     * Scrive una riga per ogni tupla del cluster, con i suoi valori e la distanza dal centroide.
+     * @param out La destinazione su cui scrivere.
+     * @param data Il dataset completo per recuperare i valori delle tuple.
+     * @throws IOException Se la scrittura sulla destinazione fallisce.
+     */
+	void writeMembers(Appendable out, Data data) throws IOException {
 		for(Integer id : clusteredData){
-			str+="[";
+			out.append("[");
 			for(int j=0;j<data.getNumberOfAttributes();j++)
-				str+=data.getValue(id, j)+" ";
-			str+="] dist="+getCentroid().getDistance(data.getItemSet(id))+"\n";
+				out.append(String.valueOf(data.getValue(id, j))).append(" ");
+			out.append("] dist=").append(String.valueOf(getCentroid().getDistance(data.getItemSet(id)))).append("\n");
 		}
-
-		str+="\nAvgDistance="+getCentroid().avgDistance(data, clusteredData);
-		return str;
-		
 	}
 
 }
@@ -0,0 +1,233 @@
+package mining;
+
+import data.ContinuousItem;
+import data.Data;
+import data.DiscreteItem;
+import data.Tuple;
+import database.DatabaseConnectionException;
+import database.DbAccess;
+import database.TableWriter;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * La classe ClusterExport scrive il risultato di un clustering in due tabelle del database, così da poterlo usare in SQL:
+ * <ul>
+ *     <li>la tabella delle assegnazioni, con una riga per tupla: indice della tupla nel dataset, cluster, distanza
+ *     dal centroide e valori degli attributi (che permettono di ricollegare la riga alla tabella di origine);</li>
+ *     <li>la tabella dei centroidi (stesso nome con il suffisso "_centroids"), con una riga per cluster:
+ *     indice del cluster, numero di tuple, distanza media e valori del centroide.</li>
+ * </ul>
+ * I cluster sono numerati da 1 nell'ordine di {@link ClusterSet}, come nel resto del protocollo.
+ * Le assegnazioni e le distanze vengono calcolate una sola volta alla creazione dell'oggetto.
+ */
+public class ClusterExport {
+
+    /**
+     * Suffisso del nome della tabella dei centroidi.
+     */
+    public static final String CENTROIDS_SUFFIX = "_centroids";
+
+    private static final String ROW = "qt_row";
+    private static final String CLUSTER = "qt_cluster";
+    private static final String DISTANCE = "qt_distance";
+    private static final String SIZE = "qt_size";
+    private static final String AVG_DISTANCE = "qt_avg_distance";
+
+    /**
+     * Il dataset su cui è stato eseguito il clustering.
+     */
+    private final Data data;
+
+    /**
+     * Indice (a partire da 1) del cluster di ogni tupla, 0 se la tupla non appartiene ad alcun cluster.
+     */
+    private final int[] clusterOf;
+
+    /**
+     * Distanza di ogni tupla dal centroide del suo cluster.
+     */
+    private final double[] distance;
+
+    /**
+     * Centroidi dei cluster.
+     */
+    private final Tuple[] centroids;
+
+    /**
+     * Numero di tuple di ogni cluster.
+     */
+    private final int[] sizes;
+
+    /**
+     * Distanza media delle tuple di ogni cluster dal centroide.
+     */
+    private final double[] avgDistance;
+
+    /**
+     * Lunghezza massima dei valori di ogni attributo discreto, usata per dimensionare le colonne VARCHAR.
+     */
+    private final int[] maxLength;
+
+    /**
+     * Costruttore della classe ClusterExport: assegna ogni tupla al suo cluster e ne calcola la distanza dal centroide.
+     * @param data Il dataset su cui è stato eseguito il clustering.
+     * @param clusters L'insieme dei cluster calcolato sul dataset.
+     */
+    public ClusterExport(Data data, ClusterSet clusters) {
+        this.data = data;
+        int rows = data.getNumberOfExamples();
+        clusterOf = new int[rows];
+        distance = new double[rows];
+        centroids = new Tuple[clusters.size()];
+        sizes = new int[clusters.size()];
+        avgDistance = new double[clusters.size()];
+        int index = 0;
+        for (Cluster c : clusters) {
+            centroids[index] = c.getCentroid();
+            double sum = 0;
+            for (int id : c) {
+                clusterOf[id] = index + 1;
+                distance[id] = centroids[index].getDistance(data.getItemSet(id));
+                sum += distance[id];
+            }
+            sizes[index] = c.getSize();
+            avgDistance[index] = sizes[index] > 0 ? sum / sizes[index] : 0;
+            index++;
+        }
+        maxLength = new int[data.getNumberOfAttributes()];
+        for (int k = 0; k < maxLength.length; k++) {
+            if (data.isContinuous(k)) continue;
+            for (int i = 0; i < rows; i++) {
+                Object value = data.getValue(i, k);
+                if (value != null) maxLength[k] = Math.max(maxLength[k], ((String) value).length());
+            }
+            for (Tuple centroid : centroids) {
+                Object value = valueOf(centroid, k);
+                if (value != null) maxLength[k] = Math.max(maxLength[k], ((String) value).length());
+            }
+        }
+    }
+
+    /**
+     * Scrive le tabelle delle assegnazioni e dei centroidi, creandole.
+     * Senza commit a blocchi, se la scrittura fallisce le tabelle appena create vengono eliminate, comprese le righe
+     * già confermate da alcune connessioni; se fallisce la creazione della tabella dei centroidi viene eliminata
+     * quella delle assegnazioni.
+     * @param table Il nome della tabella delle assegnazioni.
+     * @param replace true per sostituire le tabelle se esistono già, false per fallire.
+     * @param batchSize Il numero di righe per batch.
+     * @param writers Il numero di connessioni da usare in parallelo per le assegnazioni.
+     * @param commitRows Il numero di righe dopo cui eseguire il commit, oppure 0 per scrivere ogni connessione in un'unica transazione.
+     * @throws SQLException Se il nome della tabella non è valido o la scrittura fallisce.
+     * @throws DatabaseConnectionException Se non è possibile ottenere una connessione al database.
+     */
+    public void write(String table, boolean replace, int batchSize, int writers, int commitRows) throws SQLException, DatabaseConnectionException {
+        String centroidTable = table + CENTROIDS_SUFFIX;
+        if (!TableWriter.isValidTableName(table) || !TableWriter.isValidTableName(centroidTable))
+            throw new SQLException("Nome di tabella non valido: " + table);
+        int attributes = data.getNumberOfAttributes();
+
+        String[] assignmentNames = new String[3 + attributes];
+        String[] assignmentTypes = new String[3 + attributes];
+        assignmentNames[0] = ROW;
+        assignmentTypes[0] = "INT NOT NULL PRIMARY KEY";
+        assignmentNames[1] = CLUSTER;
+        assignmentTypes[1] = "INT";
+        assignmentNames[2] = DISTANCE;
+        assignmentTypes[2] = "DOUBLE";
+        String[] centroidNames = new String[3 + attributes];
+        String[] centroidTypes = new String[3 + attributes];
+        centroidNames[0] = CLUSTER;
+        centroidTypes[0] = "INT NOT NULL PRIMARY KEY";
+        centroidNames[1] = SIZE;
+        centroidTypes[1] = "INT NOT NULL";
+        centroidNames[2] = AVG_DISTANCE;
+        centroidTypes[2] = "DOUBLE";
+        for (int k = 0; k < attributes; k++) {
+            String type = data.isContinuous(k) ? "DOUBLE" : "VARCHAR(" + Math.max(1, maxLength[k]) + ")";
+            assignmentNames[3 + k] = data.getAttributeName(k);
+            assignmentTypes[3 + k] = type;
+            centroidNames[3 + k] = data.getAttributeName(k);
+            centroidTypes[3 + k] = type;
+        }
+
+        DbAccess db = new DbAccess();
+        db.initConnection();
+        try {
+            TableWriter writer = new TableWriter(db, batchSize, writers, commitRows);
+            writer.createTable(table, assignmentNames, assignmentTypes, replace);
+            try {
+                writer.createTable(centroidTable, centroidNames, centroidTypes, replace);
+            } catch (SQLException e) {
+                // senza la tabella dei centroidi l'esportazione non è utilizzabile: non lascia la prima a metà
+                try {
+                    writer.dropTable(table);
+                } catch (SQLException dropError) {
+                    e.addSuppressed(dropError);
+                }
+                throw e;
+            }
+            try {
+                writer.insert(table, assignmentNames, clusterOf.length, this::bindAssignment);
+                writer.insert(centroidTable, centroidNames, centroids.length, this::bindCentroid);
+            } catch (SQLException | DatabaseConnectionException | RuntimeException e) {
+                // in un'unica transazione le righe sono già state annullate, salvo quelle delle connessioni confermate
+                // prima di un commit fallito: eliminando le tabelle l'esportazione resta tutto-o-niente
+                if (commitRows == 0) {
+                    try {
+                        writer.dropTable(table);
+                        writer.dropTable(centroidTable);
+                    } catch (SQLException dropError) {
+                        e.addSuppressed(dropError);
+                    }
+                }
+                throw e;
+            }
+        } finally {
+            db.closeConnection();
+        }
+    }
+
+    private void bindAssignment(PreparedStatement statement, int row) throws SQLException {
+        statement.setInt(1, row);
+        if (clusterOf[row] > 0) {
+            statement.setInt(2, clusterOf[row]);
+            statement.setDouble(3, distance[row]);
+        } else {
+            statement.setNull(2, Types.INTEGER);
+            statement.setNull(3, Types.DOUBLE);
+        }
+        for (int k = 0; k < data.getNumberOfAttributes(); k++) {
+            setValue(statement, 4 + k, data.getValue(row, k));
+        }
+    }
+
+    private void bindCentroid(PreparedStatement statement, int index) throws SQLException {
+        statement.setInt(1, index + 1);
+        statement.setInt(2, sizes[index]);
+        statement.setDouble(3, avgDistance[index]);
+        for (int k = 0; k < centroids[index].getLength(); k++) {
+            setValue(statement, 4 + k, valueOf(centroids[index], k));
+        }
+    }
+
+    private static Object valueOf(Tuple centroid, int k) {
+        Object item = centroid.get(k);
+        return item instanceof ContinuousItem ? ((ContinuousItem) item).getValue() : ((DiscreteItem) item).getValue();
+    }
+
+    private static void setValue(PreparedStatement statement, int parameter, Object value) throws SQLException {
+        if (value == null) {
+            statement.setNull(parameter, Types.VARCHAR);
+        } else if (value instanceof Double && ((Double) value).isNaN()) {
+            // MySQL non rappresenta NaN: il valore mancante diventa NULL
+            statement.setNull(parameter, Types.DOUBLE);
+        } else if (value instanceof Double) {
+            statement.setDouble(parameter, (Double) value);
+        } else {
+            statement.setString(parameter, (String) value);
+        }
+    }
+}
@@ -1,7 +1,11 @@
 package mining;
 
 import data.Data;
+import metrics.FormatEvent;
+import metrics.Trace;
+import java.io.IOException;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
 import java.util.Iterator;
 import java.util.Set;
 import java.util.TreeSet;
@@ -15,6 +19,12 @@ import java.util.TreeSet;
  */
 public class ClusterSet implements Iterable<Cluster>, Serializable {
 
+    /**
+     * Identificativo di versione della serializzazione, fissato a quello delle versioni precedenti
+     * per poter leggere i modelli salvati in formato legacy.
+     */
+    private static final long serialVersionUID = 5985576923061157200L;
+
     /**
      * Insieme ordinato di oggetti Cluster, ordinati in base alla loro dimensione.
      */
@@ -44,6 +54,14 @@ public class ClusterSet implements Iterable<Cluster>, Serializable {
         return C.iterator();
     }
 
+    /**
+     * Restituisce il numero di cluster contenuti nell'insieme.
+     * @return Il numero di cluster.
+     */
+    public int size() {
+        return C.size();
+    }
+
     /**
      * Restituisce una rappresentazione testuale sintetica dell'insieme dei cluster.
      * La stringa contiene l'indice progressivo del cluster
@@ -51,15 +69,19 @@ public class ClusterSet implements Iterable<Cluster>, Serializable {
      * @return Una stringa formattata con la lista dei centroidi.
      */
     public String toString() {
-        String str = "";
-        int i=1;
-        for (Cluster c : this) {
-            if (c != null) {
-                str += i + ":" + c.toString() + "\n";
-            }
-            i++;
+        FormatEvent event = new FormatEvent();
+        event.begin();
+        long start = System.nanoTime();
+        StringBuilder str = new StringBuilder();
+        try {
+            writeSummary(str, 1, size());
+        } catch (IOException e) {
+            // StringBuilder non solleva IOException
+            throw new UncheckedIOException(e);
         }
-        return str;
+        commit(event, FormatEvent.CENTROIDS, str.length());
+        Trace.record("format.centroids", start);
+        return str.toString();
     }
 
     /**
@@ -70,14 +92,95 @@ public class ClusterSet implements Iterable<Cluster>, Serializable {
      * @return Una stringa formattata con la lista completa dei dettagli di ogni cluster.
      */
     public String toString(Data data){
-        String str="";
+        FormatEvent event = new FormatEvent();
+        event.begin();
+        long start = System.nanoTime();
+        StringBuilder str = new StringBuilder();
+        try {
+            write(str, data, 1, size());
+        } catch (IOException e) {
+            // StringBuilder non solleva IOException
+            throw new UncheckedIOException(e);
+        }
+        commit(event, FormatEvent.CLUSTERS, str.length());
+        Trace.record("format.clusters", start);
+        return str.toString();
+    }
+
+    /**
+     * Completa l'evento JFR di formattazione, valorizzandone i campi solo se l'evento è abilitato.
+     */
+    private void commit(FormatEvent event, String target, int characters) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.target = target;
+            event.items = size();
+            event.characters = characters;
+            event.commit();
+        }
+    }
+
+    /**
+     * Scrive in modo incrementale la rappresentazione sintetica dei cluster con indice progressivo compreso
+     * nell'intervallo specificato, nello stesso formato di toString().
+     * @param out La destinazione su cui scrivere.
+     * @param from L'indice progressivo (a partire da 1) del primo cluster da scrivere.
+     * @param to L'indice progressivo dell'ultimo cluster da scrivere (incluso).
+     * @throws IOException Se la scrittura sulla destinazione fallisce.
+     */
+    public void writeSummary(Appendable out, int from, int to) throws IOException {
         int i=1;
-        for(Cluster c : this){
-            if (c != null){
-                str += i + ":" + c.toString(data) + "\n";
+        for (Cluster c : this) {
+            if (i > to) break;
+            if (c != null && i >= from) {
+                out.append(String.valueOf(i)).append(":").append(c.toString()).append("\n");
+            }
+            i++;
+        }
+    }
+
+    /**
+     * Scrive in modo incrementale la rappresentazione dettagliata dei cluster con indice progressivo compreso
+     * nell'intervallo specificato, nello stesso formato di toString(Data).
+     * @param out La destinazione su cui scrivere.
+     * @param data Il dataset completo per recuperare i dettagli delle tuple.
+     * @param from L'indice progressivo (a partire da 1) del primo cluster da scrivere.
+     * @param to L'indice progressivo dell'ultimo cluster da scrivere (incluso).
+     * @throws IOException Se la scrittura sulla destinazione fallisce.
+     */
+    public void write(Appendable out, Data data, int from, int to) throws IOException {
+        int i=1;
+        for (Cluster c : this) {
+            if (i > to) break;
+            if (c != null && i >= from) {
+                out.append(String.valueOf(i)).append(":");
+                c.write(out, data);
+                out.append("\n");
+            }
+            i++;
+        }
+    }
+
+    /**
+     * Scrive in modo incrementale le tuple appartenenti al cluster con l'indice progressivo specificato,
+     * con la loro distanza dal centroide.
+     * @param out La destinazione su cui scrivere.
+     * @param data Il dataset completo per recuperare i dettagli delle tuple.
+     * @param index L'indice progressivo (a partire da 1) del cluster.
+     * @throws IOException Se la scrittura sulla destinazione fallisce.
+     * @throws IndexOutOfBoundsException Se non esiste un cluster con l'indice specificato.
+     */
+    public void writeMembers(Appendable out, Data data, int index) throws IOException {
+        if (index < 1 || index > size()) {
+            throw new IndexOutOfBoundsException("Cluster " + index + " not found");
+        }
+        int i=1;
+        for (Cluster c : this) {
+            if (i == index) {
+                c.writeMembers(out, data);
+                return;
             }
             i++;
         }
-        return str;
     }
 }
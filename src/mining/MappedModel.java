@@ -0,0 +1,340 @@
+package mining;
+
+import data.Tuple;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * La classe MappedModel apre in sola lettura un modello salvato nel formato di {@link ModelFile}
+ * senza caricarlo interamente in memoria.
+ * <p>
+ * All'apertura vengono letti solo i metadati, lo schema e l'indice dei cluster (numero di tuple e posizione dei membri);
+ * le sezioni dei centroidi e dei membri vengono mappate in memoria e un cluster viene decodificato solo quando
+ * viene richiesto. Aprire un modello per mostrarne l'elenco dei cluster o per assegnare una tupla al cluster più vicino
+ * richiede quindi un tempo e una memoria che dipendono dal numero di cluster e non dal numero di tuple.
+ * I centroidi decodificati vengono conservati, gli indici delle tuple no.
+ * Il modello non viene mai modificato dopo l'apertura e la stessa istanza può essere usata da più thread.
+ * <p>
+ * Il CRC32 viene verificato all'apertura solo per le sezioni lette subito: per un controllo completo del file
+ * occorre caricarlo con {@link ModelFile#read(Path)}.
+ * I file scritti prima dell'introduzione della sezione indice vengono comunque aperti: l'indice viene ricostruito
+ * scorrendo la sezione dei membri, senza decodificarli.
+ */
+public class MappedModel {
+
+    /**
+     * Il file del modello.
+     */
+    private final Path file;
+
+    private double radius;
+    private int numberOfExamples;
+    private long createdAt;
+    private String source = "";
+
+    /**
+     * Schema degli attributi dei centroidi.
+     */
+    private ModelFile.Schema schema;
+
+    /**
+     * Sezione dei centroidi mappata in memoria.
+     */
+    private ByteBuffer centroids;
+
+    /**
+     * Sezione dei membri mappata in memoria.
+     */
+    private ByteBuffer members;
+
+    /**
+     * Numero di tuple di ciascun cluster, nell'ordine dell'insieme dei cluster.
+     */
+    private int[] sizes;
+
+    /**
+     * Posizione dei membri di ciascun cluster nella sezione dei membri.
+     */
+    private int[] offsets;
+
+    /**
+     * Centroidi già decodificati (null se non ancora richiesti).
+     */
+    private Tuple[] decoded;
+
+    private MappedModel(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Apre un modello salvato nel formato binario.
+     * @param file Il file del modello.
+     * @return Il modello aperto.
+     * @throws IOException Se il file non è leggibile, non è un modello nel formato binario o è troncato.
+     */
+    public static MappedModel open(Path file) throws IOException {
+        MappedModel model = new MappedModel(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer head = ByteBuffer.allocate(2 * Integer.BYTES);
+            ModelFile.readFully(channel, head, 0);
+            if (head.getInt() != ModelFile.MAGIC) throw new IOException("Il file " + file + " non è un modello QT");
+            int version = head.getInt();
+            if (version != ModelFile.VERSION) throw new IOException("Versione del modello non supportata: " + version);
+
+            ByteBuffer index = null;
+            long position = head.capacity();
+            while (true) {
+                head.clear();
+                ModelFile.readFully(channel, head, position);
+                int tag = head.getInt();
+                int length = head.getInt();
+                long payload = position + head.capacity();
+                if (length < 0 || payload + length + Integer.BYTES > channel.size())
+                    throw new IOException("Modello troncato");
+                if (tag == ModelFile.TAG_END) break;
+                switch (tag) {
+                    case ModelFile.TAG_META:
+                        ByteBuffer meta = ModelFile.readSection(channel, tag, payload, length);
+                        model.radius = meta.getDouble();
+                        model.numberOfExamples = meta.getInt();
+                        model.createdAt = meta.getLong();
+                        model.source = ModelFile.readString(meta);
+                        break;
+                    case ModelFile.TAG_SCHEMA:
+                        model.schema = ModelFile.Schema.read(ModelFile.readSection(channel, tag, payload, length));
+                        break;
+                    case ModelFile.TAG_INDEX:
+                        index = ModelFile.readSection(channel, tag, payload, length);
+                        break;
+                    case ModelFile.TAG_CENTROIDS:
+                        model.centroids = channel.map(FileChannel.MapMode.READ_ONLY, payload, length);
+                        break;
+                    case ModelFile.TAG_MEMBERS:
+                        model.members = channel.map(FileChannel.MapMode.READ_ONLY, payload, length);
+                        break;
+                    default:
+                        // sezione di una versione successiva: ignorata
+                }
+                position = payload + length + Integer.BYTES;
+            }
+            if (model.schema == null || model.centroids == null || model.members == null)
+                throw new IOException("Modello incompleto");
+            model.buildIndex(index);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Sezione del modello troncata", e);
+        }
+        return model;
+    }
+
+    /**
+     * Legge l'indice dei cluster oppure, se il file non lo contiene, lo ricostruisce scorrendo la sezione dei membri.
+     */
+    private void buildIndex(ByteBuffer index) throws IOException {
+        int count = centroids.getInt(0);
+        if (count < 0 || Integer.BYTES + (long) count * schema.getCentroidSize() > centroids.capacity())
+            throw new IOException("Centroidi del modello non validi");
+        sizes = new int[count];
+        offsets = new int[count];
+        decoded = new Tuple[count];
+        if (index != null) {
+            if (index.getInt() != count) throw new IOException("Indice del modello non valido");
+            for (int i = 0; i < count; i++) {
+                sizes[i] = index.getInt();
+                offsets[i] = index.getInt();
+                if (offsets[i] < 0 || offsets[i] >= members.capacity()) throw new IOException("Indice del modello non valido");
+            }
+        } else {
+            ByteBuffer in = members.duplicate();
+            for (int i = 0; i < count; i++) {
+                offsets[i] = in.position();
+                sizes[i] = ModelFile.skipMembers(in);
+            }
+        }
+    }
+
+    /**
+     * Restituisce il file del modello.
+     * @return Il percorso del file.
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Restituisce la descrizione del modello.
+     * @return La descrizione, con gli stessi dati di {@link ModelFile#readInfo(Path)}.
+     */
+    public ModelInfo getInfo() {
+        return new ModelInfo(file, source, radius, numberOfExamples, sizes.length, createdAt);
+    }
+
+    /**
+     * Stima l'occupazione in memoria del modello aperto, in byte: schema, indice e centroidi (anche se non
+     * ancora decodificati). Le sezioni mappate non sono contate, perché le loro pagine appartengono alla cache
+     * del sistema operativo e non all'heap.
+     * @return La dimensione stimata.
+     */
+    public long getEstimatedSize() {
+        return 128L + schema.getEstimatedSize() + (long) sizes.length * (2 * Integer.BYTES + 32L + 48L * schema.getCentroidSize() / Integer.BYTES);
+    }
+
+    /**
+     * Restituisce il raggio usato per il clustering.
+     * @return Il raggio.
+     */
+    public double getRadius() {
+        return radius;
+    }
+
+    /**
+     * Restituisce il numero di esempi del dataset su cui è stato calcolato il modello.
+     * @return Il numero di esempi.
+     */
+    public int getNumberOfExamples() {
+        return numberOfExamples;
+    }
+
+    /**
+     * Restituisce l'istante di creazione del modello, in millisecondi dall'epoch.
+     * @return L'istante di creazione.
+     */
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    /**
+     * Restituisce il nome della sorgente dei dati su cui è stato calcolato il modello.
+     * @return Il nome della sorgente, oppure una stringa vuota se non è noto.
+     */
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * Restituisce il numero di cluster del modello.
+     * @return Il numero di cluster.
+     */
+    public int getNumberOfClusters() {
+        return sizes.length;
+    }
+
+    /**
+     * Restituisce il numero di tuple del cluster, senza decodificarne i membri.
+     * @param index L'indice progressivo (a partire da 1) del cluster.
+     * @return Il numero di tuple del cluster.
+     * @throws IndexOutOfBoundsException Se non esiste un cluster con l'indice specificato.
+     */
+    public int getClusterSize(int index) {
+        return sizes[checkIndex(index)];
+    }
+
+    /**
+     * Restituisce il centroide del cluster, decodificandolo alla prima richiesta.
+     * @param index L'indice progressivo (a partire da 1) del cluster.
+     * @return Il centroide.
+     * @throws IOException Se il centroide nel file non è valido.
+     * @throws IndexOutOfBoundsException Se non esiste un cluster con l'indice specificato.
+     */
+    public synchronized Tuple getCentroid(int index) throws IOException {
+        int i = checkIndex(index);
+        if (decoded[i] == null) {
+            ByteBuffer in = centroids.duplicate();
+            in.position(Integer.BYTES + i * schema.getCentroidSize());
+            decoded[i] = schema.readCentroid(in);
+        }
+        return decoded[i];
+    }
+
+    /**
+     * Decodifica il cluster con il suo centroide e gli indici delle sue tuple.
+     * Il cluster restituito è una copia indipendente: ogni chiamata decodifica di nuovo i membri.
+     * @param index L'indice progressivo (a partire da 1) del cluster.
+     * @return Il cluster.
+     * @throws IOException Se il cluster nel file non è valido.
+     * @throws IndexOutOfBoundsException Se non esiste un cluster con l'indice specificato.
+     */
+    public Cluster getCluster(int index) throws IOException {
+        int i = checkIndex(index);
+        Cluster c = new Cluster(getCentroid(index));
+        ByteBuffer in = members.duplicate();
+        in.position(offsets[i]);
+        try {
+            ModelFile.readMembers(in, c);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Membri del modello troncati", e);
+        }
+        return c;
+    }
+
+    /**
+     * Restituisce il cluster il cui centroide è più vicino alla tupla.
+     * @param tuple La tupla da assegnare, con gli stessi attributi del modello.
+     * @return L'indice progressivo (a partire da 1) del cluster più vicino, oppure 0 se il modello non ha cluster.
+     * @throws IOException Se un centroide nel file non è valido.
+     */
+    public int nearest(Tuple tuple) throws IOException {
+        int best = 0;
+        double bestDistance = Double.POSITIVE_INFINITY;
+        for (int index = 1; index <= sizes.length; index++) {
+            double distance = tuple.getDistance(getCentroid(index));
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = index;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Scrive la rappresentazione sintetica dei cluster con indice progressivo compreso nell'intervallo,
+     * nello stesso formato di {@link ClusterSet#writeSummary(Appendable, int, int)}. Vengono decodificati solo i centroidi.
+     * @param out La destinazione su cui scrivere.
+     * @param from L'indice progressivo (a partire da 1) del primo cluster da scrivere.
+     * @param to L'indice progressivo dell'ultimo cluster da scrivere (incluso).
+     * @throws IOException Se la scrittura sulla destinazione fallisce o un centroide non è valido.
+     */
+    public void writeSummary(Appendable out, int from, int to) throws IOException {
+        for (int index = Math.max(from, 1); index <= Math.min(to, sizes.length); index++) {
+            out.append(String.valueOf(index)).append(":").append(new Cluster(getCentroid(index)).toString()).append("\n");
+        }
+    }
+
+    /**
+     * Carica l'intero modello in memoria, decodificando tutti i cluster.
+     * @return Il modello.
+     * @throws IOException Se un cluster nel file non è valido.
+     */
+    public QTMiner toMiner() throws IOException {
+        QTMiner miner = new QTMiner(0);
+        miner.setMetadata(radius, numberOfExamples, createdAt, source);
+        // come in ModelFile.decode, l'inserimento in ordine inverso conserva l'ordine dell'insieme
+        for (int index = sizes.length; index >= 1; index--) {
+            miner.getC().add(getCluster(index));
+        }
+        return miner;
+    }
+
+    /**
+     * Restituisce la rappresentazione sintetica dell'insieme dei cluster, nello stesso formato di ClusterSet.toString().
+     * @return Una stringa con la lista dei centroidi.
+     */
+    public String toString() {
+        StringBuilder str = new StringBuilder();
+        try {
+            writeSummary(str, 1, sizes.length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return str.toString();
+    }
+
+    private int checkIndex(int index) {
+        if (index < 1 || index > sizes.length) throw new IndexOutOfBoundsException("Cluster " + index + " not found");
+        return index - 1;
+    }
+}
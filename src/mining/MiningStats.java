@@ -0,0 +1,137 @@
+package mining;
+
+import java.io.Serializable;
+import java.util.Locale;
+
+/**
+ * La classe MiningStats raccoglie i contatori del lavoro svolto da un'esecuzione di {@link QTMiner#compute(data.Data)}:
+ * distanze calcolate, coppie di tuple escluse perché già assegnate a un cluster, cluster candidati costruiti,
+ * allocazioni evitate riutilizzando i candidati scartati, iterazioni e loro durata.
+ * <p>
+ * A parte i tempi, i contatori dipendono solo dal dataset e dal raggio: due esecuzioni sugli stessi dati
+ * producono gli stessi valori su qualsiasi macchina, per cui si possono confrontare versioni diverse dell'algoritmo
+ * e riconoscere raggi o dataset patologici (ad esempio un raggio così piccolo da produrre un cluster per tupla,
+ * con un numero di iterazioni pari a quello delle tuple). I contatori vengono aggiornati una volta per candidato
+ * o per iterazione, mai per coppia di tuple, e restano sempre attivi.
+ * @see QTMiner#getStats()
+ */
+public final class MiningStats implements Serializable {
+
+    /**
+     * Identificativo di versione della serializzazione, fissato perché i contatori fanno parte dei risultati
+     * salvati su disco insieme al modello.
+     */
+    private static final long serialVersionUID = 6859950114226344459L;
+
+    private long distanceEvaluations;
+    private long pairsPruned;
+    private long candidates;
+    private long allocationsAvoided;
+    private int iterations;
+    private long iterationNanos;
+    private long maxIterationNanos;
+
+    MiningStats() {
+    }
+
+    /**
+     * Registra un'iterazione conclusa.
+     * @param nanos La durata dell'iterazione in nanosecondi.
+     */
+    void addIteration(long nanos) {
+        iterations++;
+        iterationNanos += nanos;
+        maxIterationNanos = Math.max(maxIterationNanos, nanos);
+    }
+
+    /**
+     * Registra il lavoro della ricerca di un cluster candidato.
+     * @param evaluations Le distanze calcolate.
+     * @param pruned Le coppie di tuple non confrontate perché già assegnate.
+     * @param built I candidati costruiti.
+     * @param reused I candidati ottenuti riutilizzando un candidato scartato invece di allocarne uno nuovo.
+     */
+    void addSearch(long evaluations, long pruned, long built, long reused) {
+        distanceEvaluations += evaluations;
+        pairsPruned += pruned;
+        candidates += built;
+        allocationsAvoided += reused;
+    }
+
+    /**
+     * Restituisce il numero di distanze tra tuple calcolate.
+     * @return Il numero di distanze.
+     */
+    public long getDistanceEvaluations() {
+        return distanceEvaluations;
+    }
+
+    /**
+     * Restituisce il numero di coppie di tuple che una scansione completa del dataset avrebbe confrontato
+     * e che sono state escluse perché almeno una delle due era già assegnata a un cluster.
+     * @return Il numero di coppie escluse.
+     */
+    public long getPairsPruned() {
+        return pairsPruned;
+    }
+
+    /**
+     * Restituisce il numero di cluster candidati costruiti, uno per ogni tupla non assegnata a ogni iterazione.
+     * @return Il numero di candidati.
+     */
+    public long getCandidates() {
+        return candidates;
+    }
+
+    /**
+     * Restituisce il numero di candidati costruiti riutilizzando l'insieme di un candidato scartato.
+     * @return Il numero di allocazioni evitate.
+     */
+    public long getAllocationsAvoided() {
+        return allocationsAvoided;
+    }
+
+    /**
+     * Restituisce il numero di iterazioni, pari al numero di cluster prodotti.
+     * @return Il numero di iterazioni.
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * Restituisce la durata complessiva delle iterazioni.
+     * @return La durata in nanosecondi.
+     */
+    public long getIterationNanos() {
+        return iterationNanos;
+    }
+
+    /**
+     * Restituisce la durata dell'iterazione più lunga, di solito la prima.
+     * @return La durata in nanosecondi.
+     */
+    public long getMaxIterationNanos() {
+        return maxIterationNanos;
+    }
+
+    /**
+     * Restituisce la durata media di un'iterazione.
+     * @return La durata media in nanosecondi, 0 se non ci sono iterazioni.
+     */
+    public double getMeanIterationNanos() {
+        return iterations == 0 ? 0 : (double) iterationNanos / iterations;
+    }
+
+    /**
+     * Restituisce i contatori nella forma chiave=valore, con i tempi in millisecondi.
+     * @return La stringa con i contatori.
+     */
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "distance_evaluations=%d pairs_pruned=%d candidates=%d allocations_avoided=%d"
+                        + " iterations=%d iteration_ms=%.3f mean_iteration_ms=%.3f max_iteration_ms=%.3f",
+                distanceEvaluations, pairsPruned, candidates, allocationsAvoided, iterations,
+                iterationNanos / 1e6, getMeanIterationNanos() / 1e6, maxIterationNanos / 1e6);
+    }
+}
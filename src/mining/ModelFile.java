@@ -0,0 +1,701 @@
+package mining;
+
+import data.ContinuousAttribute;
+import data.ContinuousItem;
+import data.DiscreteAttribute;
+import data.DiscreteItem;
+import data.Tuple;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * La classe ModelFile salva e carica un modello di clustering (QTMiner) in un formato binario versionato,
+ * che sostituisce la serializzazione Java del ClusterSet.
+ * <p>
+ * Il file inizia con il magic "QTMF" e la versione del formato, seguiti da una sequenza di sezioni.
+ * Ogni sezione è composta da tag, lunghezza, contenuto e CRC32 del contenuto; le sezioni con tag sconosciuto
+ * vengono ignorate, così che versioni successive possano aggiungerne di nuove. Le sezioni sono:
+ * <ul>
+ *     <li>metadati: raggio, numero di esempi del dataset, istante di creazione e nome della sorgente dei dati;</li>
+ *     <li>schema: tipo, nome e indice degli attributi, con estremi (continui) o dominio (discreti);</li>
+ *     <li>indice: per ogni cluster il numero di tuple e la posizione dei suoi membri nella sezione dei membri,
+ *     così che un singolo cluster possa essere letto senza decodificare gli altri (vedi {@link MappedModel});</li>
+ *     <li>centroidi: per ogni cluster un double per attributo continuo e un codice nel dominio per attributo discreto,
+ *     quindi a dimensione fissa;</li>
+ *     <li>membri: per ogni cluster gli indici delle tuple, ordinati e codificati nella più compatta di due forme:
+ *     una bitmap sull'intervallo tra il primo e l'ultimo indice, adatta ai cluster i cui membri sono sparsi
+ *     (un bit per indice dell'intervallo), oppure una sequenza di intervalli consecutivi (run-length) con interi
+ *     a lunghezza variabile, adatta ai cluster formati da pochi intervalli lunghi (almeno due byte per intervallo).</li>
+ * </ul>
+ * A differenza della serializzazione Java, il formato conserva gli attributi dei centroidi e gli indici
+ * delle tuple di ogni cluster: il modello caricato è identico a quello salvato.
+ */
+public class ModelFile {
+
+    /**
+     * Numero magico all'inizio del file ("QTMF").
+     */
+    static final int MAGIC = 0x51544D46;
+
+    /**
+     * Versione corrente del formato. La versione 2 ha introdotto la scelta della codifica dei membri di ogni cluster.
+     */
+    static final int VERSION = 2;
+
+    static final int TAG_END = 0;
+    static final int TAG_META = 1;
+    static final int TAG_SCHEMA = 2;
+    static final int TAG_CENTROIDS = 3;
+    static final int TAG_MEMBERS = 4;
+    static final int TAG_INDEX = 5;
+
+    private static final byte CONTINUOUS = 1;
+    private static final byte DISCRETE = 2;
+
+    /**
+     * Codifiche dei membri di un cluster: intervalli di indici consecutivi o bitmap.
+     */
+    private static final byte MEMBERS_RUNS = 0;
+    private static final byte MEMBERS_BITMAP = 1;
+
+    /**
+     * Dimensione massima ammessa per una sezione.
+     */
+    static final int MAX_SECTION_SIZE = Integer.MAX_VALUE - 8;
+
+    private ModelFile() {
+    }
+
+    /**
+     * Salva il modello nel file specificato. Il file viene scritto con un nome temporaneo nella stessa
+     * directory e poi rinominato, così che un lettore non veda mai un file parziale.
+     * @param miner Il modello da salvare.
+     * @param source Il nome della sorgente dei dati su cui è stato calcolato il modello, registrato nei metadati.
+     * @param file Il file di destinazione.
+     * @throws IOException Se si verifica un errore durante la scrittura.
+     */
+    public static void write(QTMiner miner, String source, Path file) throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+                encode(miner, source, out);
+                out.flush();
+                channel.force(false);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Verifica se il file è un modello in questo formato, controllandone il magic.
+     * @param file Il file da controllare.
+     * @return true se il file inizia con il magic "QTMF".
+     * @throws IOException Se il file non è leggibile.
+     */
+    public static boolean isModelFile(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+            return in.readInt() == MAGIC;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Legge la descrizione di un modello salvato: vengono letti solo i metadati e il numero di cluster,
+     * senza decodificare schema, centroidi e membri.
+     * @param file Il file del modello.
+     * @return La descrizione del modello.
+     * @throws IOException Se il file non è leggibile, non è un modello nel formato binario o è troncato.
+     */
+    public static ModelInfo readInfo(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer head = ByteBuffer.allocate(2 * Integer.BYTES);
+            readFully(channel, head, 0);
+            if (head.getInt() != MAGIC) throw new IOException("Il file " + file + " non è un modello QT");
+            int version = head.getInt();
+            if (version != VERSION) throw new IOException("Versione del modello non supportata: " + version);
+
+            ByteBuffer meta = null;
+            int clusters = -1;
+            long position = head.capacity();
+            while (meta == null || clusters < 0) {
+                head.clear();
+                readFully(channel, head, position);
+                int tag = head.getInt();
+                int length = head.getInt();
+                long payload = position + head.capacity();
+                if (length < 0 || payload + length + Integer.BYTES > channel.size()) throw new IOException("Modello troncato");
+                if (tag == TAG_END) throw new IOException("Modello incompleto");
+                if (tag == TAG_META) {
+                    meta = readSection(channel, tag, payload, length);
+                } else if (tag == TAG_CENTROIDS || tag == TAG_INDEX) {
+                    // entrambe le sezioni iniziano con il numero di cluster
+                    ByteBuffer count = ByteBuffer.allocate(Integer.BYTES);
+                    readFully(channel, count, payload);
+                    clusters = count.getInt();
+                }
+                position = payload + length + Integer.BYTES;
+            }
+            double radius = meta.getDouble();
+            int examples = meta.getInt();
+            long createdAt = meta.getLong();
+            return new ModelInfo(file, readString(meta), radius, examples, clusters, createdAt);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Sezione del modello troncata", e);
+        }
+    }
+
+    /**
+     * Carica un modello salvato con {@link #write(QTMiner, String, Path)}.
+     * @param file Il file del modello.
+     * @return Il modello.
+     * @throws IOException Se il file non è leggibile, non è nel formato atteso o è corrotto.
+     */
+    public static QTMiner read(Path file) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file), 1 << 16)) {
+            return decode(new DataInputStream(in));
+        }
+    }
+
+    /**
+     * Scrive il modello nel formato binario sulla destinazione.
+     * @param miner Il modello.
+     * @param source Il nome della sorgente dei dati su cui è stato calcolato il modello.
+     * @param out La destinazione.
+     * @throws IOException Se la scrittura fallisce o il modello non è rappresentabile.
+     */
+    static void encode(QTMiner miner, String source, DataOutput out) throws IOException {
+        ClusterSet clusters = miner.getC();
+        List<Cluster> list = new ArrayList<>(clusters.size());
+        for (Cluster c : clusters) list.add(c);
+        Schema schema = Schema.of(list);
+
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+
+        Section meta = new Section();
+        meta.writeDouble(miner.getRadius());
+        meta.writeInt(miner.getNumberOfExamples());
+        meta.writeLong(miner.getCreatedAt());
+        writeString(meta, source == null ? "" : source);
+        meta.writeTo(out, TAG_META);
+
+        Section schemaSection = new Section();
+        schema.write(schemaSection);
+        schemaSection.writeTo(out, TAG_SCHEMA);
+
+        Section centroids = new Section();
+        centroids.writeInt(list.size());
+        for (Cluster c : list) {
+            schema.writeCentroid(centroids, c.getCentroid());
+        }
+
+        Section members = new Section();
+        Section index = new Section();
+        index.writeInt(list.size());
+        for (Cluster c : list) {
+            index.writeInt(c.getSize());
+            index.writeInt(members.size());
+            writeMembers(members, c);
+        }
+        index.writeTo(out, TAG_INDEX);
+        centroids.writeTo(out, TAG_CENTROIDS);
+        members.writeTo(out, TAG_MEMBERS);
+
+        out.writeInt(TAG_END);
+        out.writeInt(0);
+        out.writeInt(0);
+    }
+
+    /**
+     * Legge un modello in formato binario dalla sorgente.
+     * @param in La sorgente, posizionata all'inizio del modello.
+     * @return Il modello.
+     * @throws IOException Se la lettura fallisce o il contenuto non è valido.
+     */
+    static QTMiner decode(DataInput in) throws IOException {
+        if (in.readInt() != MAGIC) throw new IOException("Il contenuto non è un modello QT");
+        int version = in.readInt();
+        if (version != VERSION) throw new IOException("Versione del modello non supportata: " + version);
+
+        QTMiner miner = new QTMiner(0);
+        Schema schema = null;
+        List<Cluster> list = null;
+        try {
+            while (true) {
+                int tag = in.readInt();
+                ByteBuffer section = readSection(in, tag);
+                if (tag == TAG_END) break;
+                switch (tag) {
+                    case TAG_META:
+                        miner.setMetadata(section.getDouble(), section.getInt(), section.getLong(), readString(section));
+                        break;
+                    case TAG_SCHEMA:
+                        schema = Schema.read(section);
+                        break;
+                    case TAG_CENTROIDS:
+                        if (schema == null) throw new IOException("Centroidi del modello senza schema");
+                        int count = section.getInt();
+                        list = new ArrayList<>(count);
+                        for (int i = 0; i < count; i++) {
+                            list.add(new Cluster(schema.readCentroid(section)));
+                        }
+                        break;
+                    case TAG_MEMBERS:
+                        if (list == null) throw new IOException("Membri del modello senza centroidi");
+                        for (Cluster c : list) {
+                            readMembers(section, c);
+                        }
+                        break;
+                    default:
+                        // l'indice serve solo alla lettura su richiesta; le sezioni di versioni successive vengono ignorate
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Sezione del modello troncata", e);
+        }
+        if (list == null) throw new IOException("Modello senza cluster");
+        // ClusterSet ordina per dimensione e inserisce un cluster prima di quelli di pari dimensione:
+        // l'inserimento in ordine inverso ricostruisce esattamente l'ordine salvato
+        for (int i = list.size() - 1; i >= 0; i--) {
+            miner.getC().add(list.get(i));
+        }
+        return miner;
+    }
+
+    /**
+     * Scrive gli indici delle tuple del cluster: numero di tuple, indice della prima tupla aggiunta, codifica e indici.
+     * Gli indici vengono scritti nella forma che occupa meno byte tra:
+     * <ul>
+     *     <li>intervalli ({@link #MEMBERS_RUNS}): numero di intervalli di indici consecutivi e, per ognuno,
+     *     distanza dalla fine del precedente e lunghezza;</li>
+     *     <li>bitmap ({@link #MEMBERS_BITMAP}): indice minimo, numero di bit e un bit per ogni indice
+     *     dall'indice minimo al massimo, a partire dal bit meno significativo di ogni byte.</li>
+     * </ul>
+     * I membri di un cluster QT sono di solito sparsi nel dataset e la bitmap costa un bit per indice dell'intervallo
+     * invece di almeno due byte per membro; gli intervalli restano più compatti per i cluster di indici contigui.
+     * In lettura la prima tupla viene aggiunta per prima e le altre in ordine crescente, come in QTMiner.compute:
+     * l'insieme ricostruito ha quindi anche lo stesso ordine di iterazione.
+     */
+    private static void writeMembers(Section out, Cluster c) throws IOException {
+        int[] ids = new int[c.getSize()];
+        int n = 0;
+        for (int id : c) ids[n++] = id;
+        Arrays.sort(ids);
+        int runs = 0;
+        long runsSize = Integer.BYTES;
+        int previousEnd = 0;
+        for (int i = 0; i < n; ) {
+            int j = i + 1;
+            while (j < n && ids[j] == ids[j - 1] + 1) j++;
+            runs++;
+            runsSize += varIntSize(ids[i] - previousEnd) + varIntSize(j - i);
+            previousEnd = ids[i] + (j - i);
+            i = j;
+        }
+        int span = n == 0 ? 0 : ids[n - 1] - ids[0] + 1;
+        long bitmapSize = n == 0 ? Long.MAX_VALUE : varIntSize(ids[0]) + varIntSize(span) + (span + 7L) / 8;
+
+        out.writeInt(n);
+        out.writeInt(c.getFirstId());
+        if (bitmapSize < runsSize) {
+            out.writeByte(MEMBERS_BITMAP);
+            writeVarInt(out, ids[0]);
+            writeVarInt(out, span);
+            byte[] bitmap = new byte[(span + 7) / 8];
+            for (int i = 0; i < n; i++) {
+                int bit = ids[i] - ids[0];
+                bitmap[bit >>> 3] |= (byte) (1 << (bit & 7));
+            }
+            out.write(bitmap);
+        } else {
+            out.writeByte(MEMBERS_RUNS);
+            out.writeInt(runs);
+            previousEnd = 0;
+            for (int i = 0; i < n; ) {
+                int start = ids[i];
+                int j = i + 1;
+                while (j < n && ids[j] == ids[j - 1] + 1) j++;
+                writeVarInt(out, start - previousEnd);
+                writeVarInt(out, j - i);
+                previousEnd = start + (j - i);
+                i = j;
+            }
+        }
+    }
+
+    static void readMembers(ByteBuffer in, Cluster c) throws IOException {
+        int n = in.getInt();
+        int first = in.getInt();
+        byte encoding = in.get();
+        if (n < 0) throw new IOException("Membri del modello non validi");
+        if (first >= 0) c.addData(first);
+        int read = 0;
+        if (encoding == MEMBERS_BITMAP) {
+            int base = readVarInt(in);
+            int span = readVarInt(in);
+            checkBitmap(in, base, span, n);
+            for (int i = 0; i < (int) ((span + 7L) / 8); i++) {
+                int bits = in.get() & 0xFF;
+                while (bits != 0) {
+                    int bit = 8 * i + Integer.numberOfTrailingZeros(bits);
+                    if (bit >= span || ++read > n) throw new IOException("Membri del modello non validi");
+                    c.addData(base + bit);
+                    bits &= bits - 1;
+                }
+            }
+        } else if (encoding == MEMBERS_RUNS) {
+            int runs = in.getInt();
+            if (runs < 0 || runs > n) throw new IOException("Membri del modello non validi");
+            int previousEnd = 0;
+            for (int r = 0; r < runs; r++) {
+                int start = previousEnd + readVarInt(in);
+                int length = readVarInt(in);
+                if (length <= 0 || read + length > n || start < previousEnd) throw new IOException("Membri del modello non validi");
+                for (int id = start; id < start + length; id++) {
+                    c.addData(id);
+                }
+                read += length;
+                previousEnd = start + length;
+            }
+        } else {
+            throw new IOException("Codifica dei membri del modello sconosciuta: " + encoding);
+        }
+        if (read != n) throw new IOException("Membri del modello non validi");
+    }
+
+    /**
+     * Salta i membri di un cluster senza decodificarli.
+     * @param in La sezione dei membri, posizionata all'inizio del cluster.
+     * @return Il numero di tuple del cluster.
+     */
+    static int skipMembers(ByteBuffer in) throws IOException {
+        int n = in.getInt();
+        in.getInt();
+        byte encoding = in.get();
+        if (n < 0) throw new IOException("Membri del modello non validi");
+        if (encoding == MEMBERS_BITMAP) {
+            int base = readVarInt(in);
+            int span = readVarInt(in);
+            checkBitmap(in, base, span, n);
+            in.position(in.position() + (int) ((span + 7L) / 8));
+        } else if (encoding == MEMBERS_RUNS) {
+            int runs = in.getInt();
+            if (runs < 0 || runs > n) throw new IOException("Membri del modello non validi");
+            for (int r = 0; r < 2 * runs; r++) {
+                readVarInt(in);
+            }
+        } else {
+            throw new IOException("Codifica dei membri del modello sconosciuta: " + encoding);
+        }
+        return n;
+    }
+
+    /**
+     * Verifica che la bitmap di un cluster sia coerente con il numero di tuple e contenuta nella sezione.
+     */
+    private static void checkBitmap(ByteBuffer in, int base, int span, int n) throws IOException {
+        if (base < 0 || span < n || (long) base + span > Integer.MAX_VALUE || (span + 7L) / 8 > in.remaining()) {
+            throw new IOException("Membri del modello non validi");
+        }
+    }
+
+    private static int varIntSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            size++;
+            value >>>= 7;
+        }
+        return size;
+    }
+
+    private static void writeVarInt(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(ByteBuffer in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.get() & 0xFF;
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Intero a lunghezza variabile non valido");
+    }
+
+    private static void writeString(DataOutput out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(ByteBuffer in) throws IOException {
+        int length = in.getInt();
+        if (length < 0 || length > in.remaining()) throw new IOException("Stringa del modello non valida");
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Legge il contenuto di una sezione e ne verifica il CRC32.
+     * @return Il contenuto della sezione.
+     */
+    private static ByteBuffer readSection(DataInput in, int tag) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_SECTION_SIZE) throw new IOException("Sezione " + tag + " del modello non valida");
+        byte[] payload = new byte[length];
+        in.readFully(payload);
+        ByteBuffer section = ByteBuffer.wrap(payload);
+        verify(tag, section, in.readInt());
+        return section;
+    }
+
+    /**
+     * Legge dal file il contenuto di una sezione e ne verifica il CRC32.
+     * @param channel Il canale del file.
+     * @param tag Il tag della sezione.
+     * @param position La posizione del contenuto nel file.
+     * @param length La lunghezza del contenuto.
+     * @return Il contenuto della sezione.
+     * @throws IOException Se il file è troncato o il CRC32 non corrisponde.
+     */
+    static ByteBuffer readSection(FileChannel channel, int tag, long position, int length) throws IOException {
+        ByteBuffer section = ByteBuffer.allocate(length + Integer.BYTES);
+        readFully(channel, section, position);
+        int crc = section.getInt(length);
+        section.limit(length);
+        verify(tag, section, crc);
+        return section;
+    }
+
+    static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) throw new IOException("Modello troncato");
+        }
+        buffer.flip();
+    }
+
+    /**
+     * Verifica il CRC32 del contenuto di una sezione.
+     * @param tag Il tag della sezione, riportato nel messaggio d'errore.
+     * @param payload Il contenuto della sezione; la sua posizione non viene modificata.
+     * @param expected Il CRC32 registrato nel file.
+     * @throws IOException Se il CRC32 non corrisponde.
+     */
+    static void verify(int tag, ByteBuffer payload, int expected) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+        if (expected != (int) crc.getValue()) throw new IOException("Sezione " + tag + " del modello corrotta");
+    }
+
+    /**
+     * Sezione in costruzione: il contenuto viene accumulato in memoria per poterne scrivere lunghezza e CRC32.
+     */
+    private static class Section extends DataOutputStream {
+
+        Section() {
+            super(new ByteArrayOutputStream());
+        }
+
+        void writeTo(DataOutput target, int tag) throws IOException {
+            flush();
+            ByteArrayOutputStream bytes = (ByteArrayOutputStream) out;
+            CRC32 crc = new CRC32();
+            byte[] payload = bytes.toByteArray();
+            crc.update(payload);
+            target.writeInt(tag);
+            target.writeInt(payload.length);
+            target.write(payload);
+            target.writeInt((int) crc.getValue());
+        }
+    }
+
+    /**
+     * Schema degli attributi dei centroidi. Per gli attributi discreti mantiene il dominio,
+     * con cui i valori dei centroidi vengono codificati come indici.
+     * Un modello caricato con la serializzazione Java non conserva gli attributi dei centroidi:
+     * in quel caso lo schema viene ricavato dai soli valori e l'attributo risulta sconosciuto.
+     */
+    static class Schema {
+
+        private final byte[] kinds;
+        private final Object[] attributes;
+        private final List<List<String>> domains = new ArrayList<>();
+        private final List<Map<String, Integer>> codes = new ArrayList<>();
+
+        private Schema(int size) {
+            kinds = new byte[size];
+            attributes = new Object[size];
+        }
+
+        static Schema of(List<Cluster> clusters) {
+            if (clusters.isEmpty()) return new Schema(0);
+            Tuple first = clusters.get(0).getCentroid();
+            Schema schema = new Schema(first.getLength());
+            for (int k = 0; k < first.getLength(); k++) {
+                boolean continuous = first.get(k) instanceof ContinuousItem;
+                schema.kinds[k] = continuous ? CONTINUOUS : DISCRETE;
+                schema.attributes[k] = continuous ? ((ContinuousItem) first.get(k)).getAttribute() : ((DiscreteItem) first.get(k)).getAttribute();
+                List<String> domain = new ArrayList<>();
+                Map<String, Integer> index = new HashMap<>();
+                if (schema.attributes[k] instanceof DiscreteAttribute) {
+                    for (String value : (DiscreteAttribute) schema.attributes[k]) {
+                        index.put(value, domain.size());
+                        domain.add(value);
+                    }
+                }
+                schema.domains.add(domain);
+                schema.codes.add(index);
+            }
+            // i valori dei centroidi assenti dal dominio (ad esempio se l'attributo è sconosciuto) vengono aggiunti
+            for (Cluster c : clusters) {
+                for (int k = 0; k < schema.kinds.length; k++) {
+                    if (schema.kinds[k] == DISCRETE) {
+                        String value = (String) ((DiscreteItem) c.getCentroid().get(k)).getValue();
+                        if (value != null && !schema.codes.get(k).containsKey(value)) {
+                            schema.codes.get(k).put(value, schema.domains.get(k).size());
+                            schema.domains.get(k).add(value);
+                        }
+                    }
+                }
+            }
+            return schema;
+        }
+
+        void write(DataOutput out) throws IOException {
+            out.writeInt(kinds.length);
+            for (int k = 0; k < kinds.length; k++) {
+                out.writeByte(kinds[k]);
+                out.writeBoolean(attributes[k] != null);
+                if (kinds[k] == CONTINUOUS) {
+                    ContinuousAttribute attribute = (ContinuousAttribute) attributes[k];
+                    writeString(out, attribute == null ? "" : attribute.getName());
+                    out.writeInt(attribute == null ? k : attribute.getIndex());
+                    out.writeDouble(attribute == null ? Double.NaN : attribute.getMin());
+                    out.writeDouble(attribute == null ? Double.NaN : attribute.getMax());
+                } else {
+                    DiscreteAttribute attribute = (DiscreteAttribute) attributes[k];
+                    writeString(out, attribute == null ? "" : attribute.getName());
+                    out.writeInt(attribute == null ? k : attribute.getIndex());
+                    out.writeInt(domains.get(k).size());
+                    for (String value : domains.get(k)) {
+                        writeString(out, value);
+                    }
+                }
+            }
+        }
+
+        static Schema read(ByteBuffer in) throws IOException {
+            int size = in.getInt();
+            if (size < 0) throw new IOException("Schema del modello non valido");
+            Schema schema = new Schema(size);
+            for (int k = 0; k < size; k++) {
+                byte kind = in.get();
+                boolean known = in.get() != 0;
+                String name = readString(in);
+                int index = in.getInt();
+                List<String> domain = new ArrayList<>();
+                if (kind == CONTINUOUS) {
+                    double min = in.getDouble();
+                    double max = in.getDouble();
+                    schema.attributes[k] = known ? new ContinuousAttribute(name, index, min, max) : null;
+                } else if (kind == DISCRETE) {
+                    int n = in.getInt();
+                    for (int i = 0; i < n; i++) {
+                        domain.add(readString(in));
+                    }
+                    schema.attributes[k] = known ? new DiscreteAttribute(name, index, new HashSet<>(domain)) : null;
+                } else {
+                    throw new IOException("Tipo di attributo sconosciuto nel modello: " + kind);
+                }
+                schema.kinds[k] = kind;
+                schema.domains.add(domain);
+                schema.codes.add(null);
+            }
+            return schema;
+        }
+
+        void writeCentroid(DataOutput out, Tuple centroid) throws IOException {
+            if (centroid.getLength() != kinds.length) throw new IOException("Centroidi con un numero di attributi diverso");
+            for (int k = 0; k < kinds.length; k++) {
+                if (kinds[k] == CONTINUOUS) {
+                    out.writeDouble((Double) ((ContinuousItem) centroid.get(k)).getValue());
+                } else {
+                    String value = (String) ((DiscreteItem) centroid.get(k)).getValue();
+                    out.writeInt(value == null ? -1 : codes.get(k).get(value));
+                }
+            }
+        }
+
+        /**
+         * Stima l'occupazione in memoria dello schema, in byte.
+         */
+        long getEstimatedSize() {
+            long size = 64L + 48L * kinds.length;
+            for (List<String> domain : domains) {
+                for (String value : domain) {
+                    size += 56L + 2L * value.length();
+                }
+            }
+            return size;
+        }
+
+        /**
+         * Restituisce la dimensione in byte di un centroide, uguale per tutti i cluster.
+         */
+        int getCentroidSize() {
+            int size = 0;
+            for (byte kind : kinds) {
+                size += kind == CONTINUOUS ? Double.BYTES : Integer.BYTES;
+            }
+            return size;
+        }
+
+        Tuple readCentroid(ByteBuffer in) throws IOException {
+            Tuple centroid = new Tuple(kinds.length);
+            for (int k = 0; k < kinds.length; k++) {
+                if (kinds[k] == CONTINUOUS) {
+                    centroid.add(new ContinuousItem((ContinuousAttribute) attributes[k], in.getDouble()), k);
+                } else {
+                    int code = in.getInt();
+                    if (code < -1 || code >= domains.get(k).size()) throw new IOException("Centroide del modello non valido");
+                    centroid.add(new DiscreteItem((DiscreteAttribute) attributes[k], code < 0 ? null : domains.get(k).get(code)), k);
+                }
+            }
+            return centroid;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package mining;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Locale;
+
+/**
+ * La classe ModelInfo descrive un modello salvato senza caricarne i cluster:
+ * file, sorgente dei dati, raggio, numero di esempi e di cluster e istante di creazione.
+ * Viene letta dai metadati del file con {@link ModelFile#readInfo(Path)}.
+ */
+public class ModelInfo {
+
+    private final Path file;
+    private final String source;
+    private final double radius;
+    private final int numberOfExamples;
+    private final int numberOfClusters;
+    private final long createdAt;
+
+    ModelInfo(Path file, String source, double radius, int numberOfExamples, int numberOfClusters, long createdAt) {
+        this.file = file;
+        this.source = source;
+        this.radius = radius;
+        this.numberOfExamples = numberOfExamples;
+        this.numberOfClusters = numberOfClusters;
+        this.createdAt = createdAt;
+    }
+
+    /**
+     * Restituisce il file del modello.
+     * @return Il percorso del file.
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Restituisce il nome della sorgente dei dati (ad esempio la tabella) su cui è stato calcolato il modello.
+     * @return Il nome della sorgente, oppure una stringa vuota se non è noto.
+     */
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * Restituisce il raggio usato per il clustering.
+     * @return Il raggio.
+     */
+    public double getRadius() {
+        return radius;
+    }
+
+    /**
+     * Restituisce il numero di esempi del dataset su cui è stato calcolato il modello.
+     * @return Il numero di esempi.
+     */
+    public int getNumberOfExamples() {
+        return numberOfExamples;
+    }
+
+    /**
+     * Restituisce il numero di cluster del modello.
+     * @return Il numero di cluster.
+     */
+    public int getNumberOfClusters() {
+        return numberOfClusters;
+    }
+
+    /**
+     * Restituisce l'istante di creazione del modello, in millisecondi dall'epoch.
+     * @return L'istante di creazione.
+     */
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    /**
+     * Restituisce una riga che descrive il modello.
+     * @return La stringa con file, sorgente, raggio, numero di esempi e di cluster e data di creazione.
+     */
+    public String toString() {
+        return String.format(Locale.ROOT, "%s source=%s radius=%s examples=%d clusters=%d created=%s",
+                file, source.isEmpty() ? "-" : source, radius, numberOfExamples, numberOfClusters, Instant.ofEpochMilli(createdAt));
+    }
+}
@@ -2,15 +2,45 @@ package mining;
 
 import data.Data;
 import data.Tuple;
+import metrics.CandidateEvent;
+import metrics.Counter;
+import metrics.Histogram;
+import metrics.Metrics;
+import metrics.MiningEvent;
+import metrics.Trace;
 import java.io.*;
+import java.util.concurrent.CancellationException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 /**
  * La classe QTMiner implementa l'algoritmo di clustering QT (Quality Threshold).
  * Si occupa di trovare un set di cluster nel dataset che rispettino un raggio massimo di distanza (radius).
- * Implementa Serializable per consentire il salvataggio e il caricamento di ClusterSet su file.
+ * Il modello viene salvato su file nel formato binario di {@link ModelFile}; anche la serializzazione Java
+ * dell'oggetto usa lo stesso formato, così da conservare gli indici delle tuple dei cluster.
  */
 public class QTMiner implements Serializable{
 
+    /**
+     * Identificativo di versione della serializzazione. Il contenuto è scritto nel formato di {@link ModelFile},
+     * che ha una propria versione: l'identificativo è fissato perché le modifiche alla classe non rendano
+     * illeggibili i modelli contenuti nei risultati salvati su disco.
+     */
+    private static final long serialVersionUID = 8461436280176894847L;
+
+    // Metriche del clustering, aggregate su tutte le esecuzioni del server
+    private static final Histogram COMPUTE_SECONDS = Metrics.timer("qt_mining_compute_seconds", "Durata di un'esecuzione completa di QTMiner.compute.");
+    private static final Histogram ITERATION_SECONDS = Metrics.timer("qt_mining_iteration_seconds",
+            "Durata di un'iterazione di QTMiner.compute, cioè della ricerca del cluster candidato più grande.");
+    private static final Counter ITERATIONS = Metrics.counter("qt_mining_iterations_total", "Iterazioni di QTMiner.compute.");
+    private static final Counter DISTANCE_EVALUATIONS = Metrics.counter("qt_mining_distance_evaluations_total",
+            "Distanze tra tuple calcolate dall'algoritmo QT.");
+    private static final Counter PAIRS_PRUNED = Metrics.counter("qt_mining_pairs_pruned_total",
+            "Coppie di tuple non confrontate dall'algoritmo QT perché già assegnate a un cluster.");
+    private static final Counter CANDIDATES = Metrics.counter("qt_mining_candidates_total", "Cluster candidati costruiti dall'algoritmo QT.");
+    private static final Counter ALLOCATIONS_AVOIDED = Metrics.counter("qt_mining_allocations_avoided_total",
+            "Cluster candidati ottenuti riutilizzando un candidato scartato.");
+
     /**
      * L'insieme finale dei cluster trovati dall'algoritmo.
      */
@@ -18,9 +48,29 @@ public class QTMiner implements Serializable{
 
     /**
      * Il raggio massimo di distanza utilizzato per definire l'appartenenza a un cluster.
-     * Dichiarato transient: questo campo non viene salvato durante la serializzazione.
      */
-    private transient double radius;
+    private double radius;
+
+    /**
+     * Il numero di esempi del dataset su cui è stato calcolato il modello.
+     */
+    private int numberOfExamples;
+
+    /**
+     * L'istante (in millisecondi) in cui è stato calcolato il modello.
+     */
+    private long createdAt;
+
+    /**
+     * Il nome della sorgente dei dati registrato nel file da cui è stato caricato il modello, oppure una stringa vuota.
+     */
+    private String source = "";
+
+    /**
+     * I contatori del lavoro svolto dall'ultima esecuzione di {@link #compute(Data)}, oppure null se il modello
+     * è stato caricato da file. Non fanno parte del modello e non vengono salvati su file.
+     */
+    private transient MiningStats stats;
 
     /**
      * Costruttore per l'esecuzione del clustering.
@@ -33,31 +83,120 @@ public class QTMiner implements Serializable{
     }
 
     /**
-     * Costruttore per il caricamento di un risultato di clustering salvato in precedenza.
-     * Deserializza l'oggetto ClusterSet (C) dal file specificato.
-     * @param fileName Il nome del file da cui caricare il ClusterSet.
+     * Costruttore per il caricamento di un modello salvato in precedenza.
+     * Il file può essere nel formato binario di {@link ModelFile} oppure, per compatibilità, un ClusterSet
+     * salvato con la serializzazione Java dalle versioni precedenti (riconosciuto dall'intestazione 0xACED);
+     * in quest'ultimo caso i cluster non contengono gli indici delle tuple.
+     * @param fileName Il nome del file da cui caricare il modello.
      * @throws FileNotFoundException Se il file non viene trovato.
-     * @throws IOException In caso di errori I/O durante la lettura.
-     * @throws ClassNotFoundException Se la classe serializzata (ClusterSet) non è trovata.
+     * @throws IOException In caso di errori I/O durante la lettura o se il file non è un modello valido.
+     * @throws ClassNotFoundException Se la classe serializzata (ClusterSet) di un file in formato legacy non è trovata.
      */
     public QTMiner(String fileName) throws FileNotFoundException, IOException, ClassNotFoundException {
-        FileInputStream inFile = new FileInputStream(fileName);
-        ObjectInputStream inStream = new ObjectInputStream(inFile);
-        this.C = (ClusterSet) inStream.readObject();
-        inStream.close();
+        Path file = Path.of(fileName);
+        if (!Files.exists(file)) throw new FileNotFoundException(fileName);
+        if (isSerialized(file)) {
+            try (ObjectInputStream inStream = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                this.C = (ClusterSet) inStream.readObject();
+            }
+        } else {
+            copyFrom(ModelFile.read(file));
+        }
+    }
+
+    /**
+     * Verifica se il file inizia con l'intestazione della serializzazione Java.
+     */
+    private static boolean isSerialized(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return in.read() == 0xAC && in.read() == 0xED;
+        }
+    }
+
+    private void copyFrom(QTMiner other) {
+        this.C = other.C;
+        this.radius = other.radius;
+        this.numberOfExamples = other.numberOfExamples;
+        this.createdAt = other.createdAt;
+        this.source = other.source;
     }
 
     /**
-     * Salva il ClusterSet (C) corrente in un file binario tramite serializzazione.
-     * @param fileName Il nome del file in cui salvare il ClusterSet.
+     * Salva il modello corrente in un file binario nel formato di {@link ModelFile}.
+     * Il nome della sorgente dei dati eventualmente letto dal file del modello viene conservato.
+     * @param fileName Il nome del file in cui salvare il modello.
      * @throws FileNotFoundException Se il percorso del file non è valido.
      * @throws IOException In caso di errori I/O durante la scrittura.
      */
     public void salva(String fileName) throws FileNotFoundException, IOException{
-        FileOutputStream outFile = new FileOutputStream(fileName);
-        ObjectOutputStream outStream = new ObjectOutputStream(outFile);
-        outStream.writeObject(this.C);
-        outStream.close();
+        salva(fileName, source);
+    }
+
+    /**
+     * Salva il modello corrente in un file binario, registrando nei metadati la sorgente dei dati.
+     * @param fileName Il nome del file in cui salvare il modello.
+     * @param source Il nome della sorgente dei dati (ad esempio la tabella) su cui è stato calcolato il modello.
+     * @throws FileNotFoundException Se il percorso del file non è valido.
+     * @throws IOException In caso di errori I/O durante la scrittura.
+     */
+    public void salva(String fileName, String source) throws FileNotFoundException, IOException{
+        Path file = Path.of(fileName);
+        Path dir = file.toAbsolutePath().getParent();
+        if (dir == null || !Files.isDirectory(dir)) throw new FileNotFoundException(fileName);
+        ModelFile.write(this, source, file);
+    }
+
+    /**
+     * Serializza il modello nel formato binario di ModelFile invece che campo per campo.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ModelFile.encode(this, source, out);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException {
+        copyFrom(ModelFile.decode(in));
+    }
+
+    /**
+     * Restituisce il raggio usato per il clustering.
+     * @return Il raggio.
+     */
+    public double getRadius() {
+        return radius;
+    }
+
+    /**
+     * Restituisce il numero di esempi del dataset su cui è stato calcolato il modello.
+     * @return Il numero di esempi, 0 se il modello è stato caricato da un file in formato legacy.
+     */
+    public int getNumberOfExamples() {
+        return numberOfExamples;
+    }
+
+    /**
+     * Restituisce l'istante in cui è stato calcolato il modello.
+     * @return L'istante in millisecondi, 0 se il modello è stato caricato da un file in formato legacy.
+     */
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    /**
+     * Restituisce il nome della sorgente dei dati registrato nel file del modello.
+     * @return Il nome della sorgente, oppure una stringa vuota se non noto.
+     */
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * Imposta i metadati letti dal file del modello.
+     */
+    void setMetadata(double radius, int numberOfExamples, long createdAt, String source) {
+        this.radius = radius;
+        this.numberOfExamples = numberOfExamples;
+        this.createdAt = createdAt;
+        this.source = source;
     }
 
     /**
@@ -68,6 +207,25 @@ public class QTMiner implements Serializable{
         return C;
     }
 
+    /**
+     * Restituisce il numero di distanze tra tuple calcolate dall'ultima esecuzione di {@link #compute(Data)},
+     * comprese quelle delle chiamate successive a {@link #buildCandidateCluster(Data, boolean[])}.
+     * Il valore dipende solo dal dataset e dal raggio, quindi misura il lavoro dell'algoritmo indipendentemente dalla macchina.
+     * @return Il numero di distanze calcolate.
+     * @see #getStats()
+     */
+    public long getDistanceEvaluations() {
+        return stats == null ? 0 : stats.getDistanceEvaluations();
+    }
+
+    /**
+     * Restituisce i contatori del lavoro svolto dall'ultima esecuzione di {@link #compute(Data)}.
+     * @return I contatori, oppure null se il modello è stato caricato da file e non è mai stato calcolato.
+     */
+    public MiningStats getStats() {
+        return stats;
+    }
+
     /**
      * Esegue l'algoritmo di clustering QT sul dataset fornito.
      * L'algoritmo procede iterativamente trovando e aggiungendo il cluster candidato più grande
@@ -76,20 +234,47 @@ public class QTMiner implements Serializable{
      * @return Il numero totale di cluster trovati.
      * @throws ClusteringRadiusException Se tutte le tuple finiscono in un unico cluster.
      * @throws EmptyDatasetException Se il dataset (Data) non contiene esempi.
+     * @throws CancellationException Se il thread viene interrotto durante il clustering.
      */
     public int compute(Data data)throws ClusteringRadiusException, EmptyDatasetException{
         int numclusters=0;
 
         if(data.getNumberOfExamples()==0){throw new EmptyDatasetException("The dataset is empty!");}
+        numberOfExamples=data.getNumberOfExamples();
+        createdAt=System.currentTimeMillis();
+        stats=new MiningStats();
 
         boolean isClustered[]=new boolean[data.getNumberOfExamples()];
         for(int i=0;i<isClustered.length;i++)
             isClustered[i]=false;
 
+        MiningEvent miningEvent=new MiningEvent();
+        miningEvent.begin();
+        Trace trace=Trace.current();
+        long computeStart=System.nanoTime();
         int countClustered=0;
         while(countClustered!=data.getNumberOfExamples()){
             //Ricerca cluster più popoloso
+            CandidateEvent candidateEvent=new CandidateEvent();
+            candidateEvent.begin();
+            long iterationStart=System.nanoTime();
+            long evaluationsBefore=stats.getDistanceEvaluations();
             Cluster c=buildCandidateCluster(data, isClustered);
+            long iterationNanos=System.nanoTime()-iterationStart;
+            ITERATION_SECONDS.record(iterationNanos);
+            ITERATIONS.increment();
+            stats.addIteration(iterationNanos);
+            if(trace!=null){
+                trace.add(iterationBatch(numclusters+1), iterationNanos);
+            }
+            candidateEvent.end();
+            if(candidateEvent.shouldCommit()){
+                candidateEvent.iteration=numclusters+1;
+                candidateEvent.remaining=data.getNumberOfExamples()-countClustered;
+                candidateEvent.clusterSize=c.getSize();
+                candidateEvent.distanceEvaluations=stats.getDistanceEvaluations()-evaluationsBefore;
+                candidateEvent.commit();
+            }
             C.add(c);
             numclusters++;
 
@@ -100,40 +285,101 @@ public class QTMiner implements Serializable{
             }
             countClustered+=c.getSize();
         }
+        COMPUTE_SECONDS.recordSince(computeStart);
+        if(trace!=null){
+            trace.addValue("qt.distance_evaluations", stats.getDistanceEvaluations());
+            trace.addValue("qt.pairs_pruned", stats.getPairsPruned());
+            trace.addValue("qt.candidates", stats.getCandidates());
+            trace.addValue("qt.allocations_avoided", stats.getAllocationsAvoided());
+        }
+        miningEvent.end();
+        if(miningEvent.shouldCommit()){
+            miningEvent.rows=numberOfExamples;
+            miningEvent.radius=radius;
+            miningEvent.clusters=numclusters;
+            miningEvent.distanceEvaluations=stats.getDistanceEvaluations();
+            miningEvent.commit();
+        }
         if(numclusters==1){throw new ClusteringRadiusException("14 tuples in one cluster!");}
         return numclusters;
     }
 
+    /**
+     * Restituisce il nome della fase della traccia in cui ricade un'iterazione. Le iterazioni sono raggruppate
+     * in blocchi di dimensione crescente (1, 2-3, 4-7, ...): le prime, che esaminano quasi tutto il dataset,
+     * restano distinte, mentre le molte iterazioni finali su poche tuple occupano poche righe.
+     * @param iteration Il numero dell'iterazione, a partire da 1.
+     * @return Il nome della fase.
+     */
+    private static String iterationBatch(int iteration) {
+        int first = Integer.highestOneBit(iteration);
+        return "qt.iterations[" + first + "-" + (2 * first - 1) + "]";
+    }
+
     /**
      * Trova il cluster candidato più grande (cioè con più membri) tra tutte le tuple non ancora clusterizzate.
-     * Ogni tupla non clusterizzata è considerata un potenziale centroide.
+     * Ogni tupla non clusterizzata è considerata un potenziale centroide. Un candidato scartato non viene lasciato
+     * al garbage collector: il suo insieme di indici viene svuotato e riutilizzato dal candidato successivo.
+     * Il lavoro svolto viene aggiunto ai contatori di {@link #getStats()} e alle metriche del server.
+     * La ricerca controlla l'interruzione del thread prima di ogni candidato, così che un job annullato
+     * liberi il thread di calcolo entro la costruzione di un solo candidato.
      * @param data Il dataset su cui lavorare.
      * @param isClustered Array booleano che indica quali tuple sono già state assegnate a un cluster.
      * @return Il cluster candidato (oggetto Cluster) più popoloso trovato nell'iterazione corrente.
+     * @throws CancellationException Se il thread viene interrotto durante la ricerca.
      */
     public Cluster buildCandidateCluster(Data data, boolean isClustered[]){
         Cluster bestCluster=null;
         int maxSize = 0;
+        long evaluations = 0;
+        long built = 0;
+        long reused = 0;
+        // Candidato scartato il cui insieme viene riutilizzato dal candidato successivo
+        Cluster spare = null;
 
         for(int i=0;i<data.getNumberOfExamples();i++){
             if(!isClustered[i]){
+                if(Thread.currentThread().isInterrupted()){
+                    throw new CancellationException("Clustering interrupted");
+                }
                 Tuple centroid = data.getItemSet(i);
-                Cluster candidate = new Cluster(centroid);
+                Cluster candidate;
+                if(spare!=null){
+                    candidate=spare;
+                    candidate.reset(centroid);
+                    spare=null;
+                    reused++;
+                }else{
+                    candidate=new Cluster(centroid);
+                }
+                built++;
                 candidate.addData(i);
 
                 for(int j=0;j<data.getNumberOfExamples();j++){
                     if(!isClustered[j]){
                         Tuple currentTuple = data.getItemSet(j);
                         double distance = centroid.getDistance(currentTuple);
+                        evaluations++;
                         if(distance<=radius) candidate.addData(j);
                     }
                 }
                 if(candidate.getSize()>maxSize){
                     maxSize=candidate.getSize();
+                    spare=bestCluster;
                     bestCluster=candidate;
+                }else{
+                    spare=candidate;
                 }
             }
         }
+        long n = data.getNumberOfExamples();
+        long pruned = n*n-evaluations;
+        if(stats==null) stats=new MiningStats();
+        stats.addSearch(evaluations, pruned, built, reused);
+        DISTANCE_EVALUATIONS.add(evaluations);
+        PAIRS_PRUNED.add(pruned);
+        CANDIDATES.add(built);
+        ALLOCATIONS_AVOIDED.add(reused);
         return bestCluster;
     }
 }
@@ -0,0 +1,387 @@
+package server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Implementazione di MessageChannel per il protocollo binario compatto.
+ * <p>
+ * Negoziazione: il client invia la sequenza magica "QTBP" seguita da un byte con la versione massima supportata;
+ * il server risponde con la stessa sequenza magica e la versione scelta (la minore tra le due).
+ * <p>
+ * Ogni messaggio è un frame composto da un intero (4 byte, big endian) con la lunghezza del contenuto,
+ * seguito da un byte che ne indica il tipo e dalla codifica del valore:
+ * Integer su 4 byte, Double su 8 byte, String in UTF-8 (la lunghezza è quella del frame).
+ * A differenza della serializzazione Java non vengono trasmessi descrittori di classe
+ * e il canale non mantiene alcuno stato tra un messaggio e l'altro.
+ * <p>
+ * Dalla versione 2 il client invia dopo la versione un byte di opzioni, a cui il server risponde con le opzioni accettate.
+ * Se è stata concordata la compressione ({@link #FLAG_DEFLATE}) le String più lunghe di {@link #COMPRESSION_THRESHOLD}
+ * byte vengono inviate compresse con Deflate: il frame contiene la lunghezza originale su 4 byte seguita dai dati compressi.
+ * Compressore e decompressore vengono creati una sola volta per connessione e riutilizzati per tutti i messaggi.
+ * @see MessageChannel
+ */
+class BinaryMessageChannel implements MessageChannel {
+
+    /**
+     * Sequenza magica che apre la negoziazione del protocollo binario.
+     */
+    static final byte[] MAGIC = {'Q', 'T', 'B', 'P'};
+
+    /**
+     * Versione più recente del protocollo supportata dal server.
+     */
+    static final int VERSION = 2;
+
+    /**
+     * Opzione di negoziazione: compressione Deflate delle String di grandi dimensioni (dalla versione 2).
+     */
+    static final int FLAG_DEFLATE = 1;
+
+    /**
+     * Opzioni supportate dal server.
+     */
+    static final int SUPPORTED_FLAGS = FLAG_DEFLATE;
+
+    /**
+     * Dimensione minima (in byte UTF-8) oltre la quale una String viene compressa.
+     */
+    static final int COMPRESSION_THRESHOLD = 1024;
+
+    /**
+     * Tipo di frame: Integer.
+     */
+    static final byte TAG_INT = 1;
+
+    /**
+     * Tipo di frame: Double.
+     */
+    static final byte TAG_DOUBLE = 2;
+
+    /**
+     * Tipo di frame: String codificata in UTF-8.
+     */
+    static final byte TAG_STRING = 3;
+
+    /**
+     * Tipo di frame: String codificata in UTF-8 e compressa con Deflate.
+     */
+    static final byte TAG_DEFLATED_STRING = 4;
+
+    /**
+     * Dimensione massima accettata per un frame in ingresso.
+     */
+    static final int MAX_FRAME_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * Rapporto massimo tra la lunghezza originale e quella compressa ottenibile con Deflate.
+     */
+    private static final int MAX_DEFLATE_RATIO = 1032;
+
+    /**
+     * Stream di input dei frame.
+     */
+    private final DataInputStream in;
+
+    /**
+     * Stream di output (bufferizzato) dei frame.
+     */
+    private final DataOutputStream out;
+
+    /**
+     * Versione del protocollo negoziata con il client.
+     */
+    private final int version;
+
+    /**
+     * Opzioni negoziate con il client.
+     */
+    private final int flags;
+
+    /**
+     * Compressore riutilizzato per tutti i messaggi della connessione, null se la compressione non è attiva.
+     */
+    private final Deflater deflater;
+
+    /**
+     * Decompressore riutilizzato per tutti i messaggi della connessione, null se la compressione non è attiva.
+     */
+    private final Inflater inflater;
+
+    /**
+     * Buffer riutilizzato per l'output del compressore.
+     */
+    private byte[] compressionBuffer = new byte[0];
+
+    /**
+     * Statistiche di compressione della connessione.
+     */
+    private final CompressionStats stats = new CompressionStats();
+
+    /**
+     * Statistiche di compressione condivise dal server, oppure null.
+     */
+    private final CompressionStats serverStats;
+
+    /**
+     * Costruttore della classe BinaryMessageChannel, da usare a negoziazione conclusa.
+     * @param input Lo stream di input della socket.
+     * @param output Lo stream di output della socket.
+     * @param version La versione del protocollo negoziata.
+     * @param flags Le opzioni negoziate.
+     * @param serverStats Le statistiche di compressione condivise dal server, oppure null.
+     */
+    BinaryMessageChannel(InputStream input, OutputStream output, int version, int flags, CompressionStats serverStats) {
+        this.in = new DataInputStream(input);
+        this.out = new DataOutputStream(new BufferedOutputStream(output));
+        this.version = version;
+        this.flags = flags;
+        this.serverStats = serverStats;
+        if ((flags & FLAG_DEFLATE) != 0) {
+            this.deflater = new Deflater(Deflater.BEST_SPEED);
+            this.inflater = new Inflater();
+        } else {
+            this.deflater = null;
+            this.inflater = null;
+        }
+    }
+
+    /**
+     * Completa lato server la negoziazione del protocollo binario.
+     * @param input Lo stream di input della socket, posizionato sull'inizio della sequenza magica.
+     * @param output Lo stream di output della socket.
+     * @param serverStats Le statistiche di compressione condivise dal server.
+     * @return Il canale binario negoziato.
+     * @throws IOException Se la sequenza iniziale non è valida o in caso di errori di comunicazione.
+     */
+    static BinaryMessageChannel accept(InputStream input, OutputStream output, CompressionStats serverStats) throws IOException {
+        DataInputStream handshake = new DataInputStream(input);
+        byte[] magic = new byte[MAGIC.length];
+        handshake.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("Sequenza iniziale del protocollo non riconosciuta");
+        }
+        int requested = handshake.readUnsignedByte();
+        if (requested < 1) {
+            throw new IOException("Versione del protocollo non valida: " + requested);
+        }
+        int version = Math.min(requested, VERSION);
+        int flags = version >= 2 ? handshake.readUnsignedByte() & SUPPORTED_FLAGS : 0;
+        BinaryMessageChannel channel = new BinaryMessageChannel(input, output, version, flags, serverStats);
+        channel.out.write(MAGIC);
+        channel.out.writeByte(version);
+        if (version >= 2) {
+            channel.out.writeByte(flags);
+        }
+        channel.out.flush();
+        return channel;
+    }
+
+    /**
+     * Esegue lato client la negoziazione del protocollo binario.
+     * @param socket La socket connessa al server.
+     * @param flags Le opzioni richieste al server.
+     * @return Il canale binario negoziato.
+     * @throws IOException Se il server non risponde con il protocollo binario o in caso di errori di comunicazione.
+     */
+    static BinaryMessageChannel connect(Socket socket, int flags) throws IOException {
+        InputStream input = new BufferedInputStream(socket.getInputStream());
+        DataOutputStream handshake = new DataOutputStream(socket.getOutputStream());
+        handshake.write(MAGIC);
+        handshake.writeByte(VERSION);
+        handshake.writeByte(flags);
+        handshake.flush();
+
+        DataInputStream reply = new DataInputStream(input);
+        byte[] magic = new byte[MAGIC.length];
+        reply.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("Il server non supporta il protocollo binario");
+        }
+        int version = reply.readUnsignedByte();
+        int accepted = version >= 2 ? reply.readUnsignedByte() : 0;
+        return new BinaryMessageChannel(input, socket.getOutputStream(), version, accepted, null);
+    }
+
+    /**
+     * Restituisce la versione del protocollo negoziata.
+     * @return La versione negoziata.
+     */
+    int getVersion() {
+        return version;
+    }
+
+    /**
+     * Restituisce le opzioni negoziate.
+     * @return Le opzioni negoziate.
+     */
+    int getFlags() {
+        return flags;
+    }
+
+    /**
+     * Restituisce le statistiche di compressione della connessione.
+     * @return Le statistiche della connessione.
+     */
+    CompressionStats getStats() {
+        return stats;
+    }
+
+    @Override
+    public Object read() throws IOException {
+        int length = in.readInt();
+        if (length < 1 || length > MAX_FRAME_SIZE) {
+            throw new IOException("Lunghezza del frame non valida: " + length);
+        }
+        byte tag = in.readByte();
+        switch (tag) {
+            case TAG_INT:
+                checkLength(tag, length, 1 + Integer.BYTES);
+                return in.readInt();
+            case TAG_DOUBLE:
+                checkLength(tag, length, 1 + Double.BYTES);
+                return in.readDouble();
+            case TAG_STRING:
+                byte[] bytes = new byte[length - 1];
+                in.readFully(bytes);
+                return new String(bytes, StandardCharsets.UTF_8);
+            case TAG_DEFLATED_STRING:
+                return readDeflatedString(length - 1);
+            default:
+                throw new IOException("Tipo di frame sconosciuto: " + tag);
+        }
+    }
+
+    /**
+     * Verifica che un frame di lunghezza fissa dichiari la lunghezza del suo tipo: un valore diverso
+     * farebbe perdere l'allineamento con i frame successivi.
+     */
+    private static void checkLength(byte tag, int length, int expected) throws IOException {
+        if (length != expected) {
+            throw new IOException("Lunghezza " + length + " non valida per un frame di tipo " + tag + ", attesa " + expected);
+        }
+    }
+
+    @Override
+    public void write(Object message) throws IOException {
+        if (message instanceof Integer) {
+            out.writeInt(1 + Integer.BYTES);
+            out.writeByte(TAG_INT);
+            out.writeInt((Integer) message);
+        } else if (message instanceof Double) {
+            out.writeInt(1 + Double.BYTES);
+            out.writeByte(TAG_DOUBLE);
+            out.writeDouble((Double) message);
+        } else if (message instanceof String) {
+            byte[] bytes = ((String) message).getBytes(StandardCharsets.UTF_8);
+            if (deflater == null || bytes.length < COMPRESSION_THRESHOLD || !writeDeflated(bytes)) {
+                out.writeInt(1 + bytes.length);
+                out.writeByte(TAG_STRING);
+                out.write(bytes);
+            }
+        } else {
+            throw new IllegalArgumentException("Tipo di messaggio non supportato: " + message.getClass().getName());
+        }
+    }
+
+    /**
+     * Comprime il messaggio con il compressore della connessione e lo scrive come frame compresso.
+     * @param bytes La codifica UTF-8 del messaggio.
+     * @return true se il frame compresso è stato scritto, false se la compressione non riduce la dimensione.
+     * @throws IOException In caso di errori di comunicazione.
+     */
+    private boolean writeDeflated(byte[] bytes) throws IOException {
+        long start = System.nanoTime();
+        deflater.reset();
+        deflater.setInput(bytes);
+        deflater.finish();
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == compressionBuffer.length) {
+                compressionBuffer = Arrays.copyOf(compressionBuffer, Math.max(4096, compressionBuffer.length * 2));
+            }
+            length += deflater.deflate(compressionBuffer, length, compressionBuffer.length - length);
+        }
+        long elapsed = System.nanoTime() - start;
+        if (length + Integer.BYTES >= bytes.length) {
+            return false;
+        }
+        out.writeInt(1 + Integer.BYTES + length);
+        out.writeByte(TAG_DEFLATED_STRING);
+        out.writeInt(bytes.length);
+        out.write(compressionBuffer, 0, length);
+        stats.record(bytes.length, length, elapsed);
+        if (serverStats != null) {
+            serverStats.record(bytes.length, length, elapsed);
+        }
+        return true;
+    }
+
+    /**
+     * Legge e decomprime una String inviata in un frame compresso.
+     * @param length La lunghezza del contenuto del frame (esclusa l'etichetta del tipo).
+     * @return La String decompressa.
+     * @throws IOException Se la compressione non è stata negoziata o i dati sono corrotti.
+     */
+    private String readDeflatedString(int length) throws IOException {
+        if (inflater == null) {
+            throw new IOException("Frame compresso ricevuto senza aver negoziato la compressione");
+        }
+        if (length < Integer.BYTES) {
+            throw new IOException("Frame compresso troppo corto: " + length);
+        }
+        int rawLength = in.readInt();
+        int compressedLength = length - Integer.BYTES;
+        // Deflate non comprime oltre circa 1032:1: una lunghezza originale maggiore è falsa
+        // e servirebbe solo a far allocare al server un buffer grande quanto dichiarato dal client
+        if (rawLength < 0 || rawLength > MAX_FRAME_SIZE || rawLength > (long) compressedLength * MAX_DEFLATE_RATIO) {
+            throw new IOException("Lunghezza originale del frame non valida: " + rawLength);
+        }
+        byte[] compressed = new byte[compressedLength];
+        in.readFully(compressed);
+        byte[] bytes = new byte[rawLength];
+        inflater.reset();
+        inflater.setInput(compressed);
+        try {
+            int n = 0;
+            while (n < rawLength && !inflater.finished()) {
+                int read = inflater.inflate(bytes, n, rawLength - n);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                n += read;
+            }
+            if (n != rawLength) {
+                throw new IOException("Frame compresso troncato");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Frame compresso non valido: " + e.getMessage());
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            in.close();
+        } finally {
+            if (deflater != null) deflater.end();
+            if (inflater != null) inflater.end();
+            out.close();
+        }
+    }
+}
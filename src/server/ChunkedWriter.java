@@ -0,0 +1,107 @@
+package server;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * La classe ChunkedWriter invia al client un testo di grandi dimensioni come sequenza di messaggi String
+ * di lunghezza limitata, man mano che il testo viene prodotto.
+ * Alla chiusura invia l'ultimo blocco parziale seguito dal terminatore (una String vuota):
+ * poiché nessun blocco è mai vuoto, il client legge messaggi finché non riceve il terminatore.
+ */
+class ChunkedWriter extends Writer {
+
+    /**
+     * Dimensione massima predefinita (in caratteri) di ogni blocco.
+     */
+    static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * Messaggio che chiude la sequenza di blocchi.
+     */
+    static final String TERMINATOR = "";
+
+    /**
+     * Canale su cui vengono inviati i blocchi.
+     */
+    private final MessageChannel channel;
+
+    /**
+     * Buffer del blocco corrente.
+     */
+    private final char[] chunk;
+
+    /**
+     * Numero di caratteri presenti nel buffer.
+     */
+    private int length;
+
+    /**
+     * Costruttore della classe ChunkedWriter.
+     * @param channel Il canale su cui inviare i blocchi.
+     * @param chunkSize La dimensione massima di ogni blocco in caratteri.
+     */
+    ChunkedWriter(MessageChannel channel, int chunkSize) {
+        this.channel = channel;
+        this.chunk = new char[chunkSize];
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        while (len > 0) {
+            int n = Math.min(len, chunk.length - length);
+            System.arraycopy(cbuf, off, chunk, length, n);
+            length += n;
+            off += n;
+            len -= n;
+            if (length == chunk.length) {
+                sendChunk();
+            }
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        while (len > 0) {
+            int n = Math.min(len, chunk.length - length);
+            str.getChars(off, off + n, chunk, length);
+            length += n;
+            off += n;
+            len -= n;
+            if (length == chunk.length) {
+                sendChunk();
+            }
+        }
+    }
+
+    /**
+     * Invia il blocco corrente, se non vuoto, e svuota il canale verso il client.
+     * @throws IOException In caso di errori di comunicazione.
+     */
+    @Override
+    public void flush() throws IOException {
+        sendChunk();
+        channel.flush();
+    }
+
+    /**
+     * Invia l'ultimo blocco e il terminatore. Non chiude il canale sottostante.
+     * @throws IOException In caso di errori di comunicazione.
+     */
+    @Override
+    public void close() throws IOException {
+        sendChunk();
+        channel.write(TERMINATOR);
+    }
+
+    /**
+     * Invia il contenuto del buffer come un unico messaggio.
+     * @throws IOException In caso di errori di comunicazione.
+     */
+    private void sendChunk() throws IOException {
+        if (length > 0) {
+            channel.write(new String(chunk, 0, length));
+            length = 0;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package server;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * La classe CompressionStats raccoglie le statistiche sulla compressione delle risposte inviate ai client:
+ * numero di messaggi compressi, byte prima e dopo la compressione e tempo speso a comprimere.
+ * Un'istanza è condivisa da tutto il server, ogni canale ne mantiene inoltre una propria.
+ * I contatori sono LongAdder, quindi l'aggiornamento da più connessioni non crea contesa.
+ */
+class CompressionStats {
+
+    /**
+     * Numero di messaggi inviati compressi.
+     */
+    private final LongAdder messages = new LongAdder();
+
+    /**
+     * Byte dei messaggi compressi prima della compressione.
+     */
+    private final LongAdder rawBytes = new LongAdder();
+
+    /**
+     * Byte dei messaggi compressi dopo la compressione.
+     */
+    private final LongAdder compressedBytes = new LongAdder();
+
+    /**
+     * Tempo speso a comprimere, in nanosecondi.
+     */
+    private final LongAdder nanos = new LongAdder();
+
+    /**
+     * Registra la compressione di un messaggio.
+     * @param raw I byte del messaggio prima della compressione.
+     * @param compressed I byte del messaggio dopo la compressione.
+     * @param elapsedNanos Il tempo impiegato in nanosecondi.
+     */
+    void record(long raw, long compressed, long elapsedNanos) {
+        messages.increment();
+        rawBytes.add(raw);
+        compressedBytes.add(compressed);
+        nanos.add(elapsedNanos);
+    }
+
+    long getMessages() {
+        return messages.sum();
+    }
+
+    long getRawBytes() {
+        return rawBytes.sum();
+    }
+
+    long getCompressedBytes() {
+        return compressedBytes.sum();
+    }
+
+    long getNanos() {
+        return nanos.sum();
+    }
+
+    /**
+     * Restituisce il rapporto di compressione (byte originali / byte compressi).
+     * @return Il rapporto di compressione, 1.0 se nessun messaggio è stato compresso.
+     */
+    double getRatio() {
+        long compressed = getCompressedBytes();
+        return compressed == 0 ? 1.0 : (double) getRawBytes() / compressed;
+    }
+
+    /**
+     * Restituisce una rappresentazione testuale delle statistiche.
+     * @return La stringa con messaggi, byte, rapporto e tempo di compressione.
+     */
+    public String toString() {
+        return String.format(Locale.ROOT, "messages=%d raw=%d compressed=%d ratio=%.2f time=%.3fms",
+                getMessages(), getRawBytes(), getCompressedBytes(), getRatio(), getNanos() / 1e6);
+    }
+}
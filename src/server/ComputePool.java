@@ -0,0 +1,172 @@
+package server;
+
+import metrics.Trace;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * La classe ComputePool gestisce un pool limitato di thread di piattaforma su cui vengono eseguite
+ * le operazioni onerose per la CPU (caricamento dei dati, clustering, formattazione dei risultati).
+ * Le connessioni, servite da thread virtuali, sottomettono qui il lavoro pesante: al massimo un'operazione
+ * per core è in esecuzione, le altre attendono in una coda limitata. Quando anche la coda è piena
+ * il chiamante resta bloccato finché non si libera un posto (backpressure).
+ */
+class ComputePool {
+
+    /**
+     * Esecutore con un numero fisso di thread di piattaforma.
+     */
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Permessi disponibili: uno per ogni operazione in esecuzione o in coda.
+     */
+    private final Semaphore permits;
+
+    /**
+     * Costruttore della classe ComputePool.
+     * @param threads Il numero di thread di calcolo (tipicamente il numero di core).
+     * @param queueCapacity Il numero massimo di operazioni in attesa oltre a quelle in esecuzione.
+     */
+    ComputePool(int threads, int queueCapacity) {
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                Thread.ofPlatform().name("qt-compute-", 0).daemon(true).factory());
+        this.permits = new Semaphore(threads + queueCapacity, true);
+    }
+
+    /**
+     * Esegue l'operazione sul pool e attende il risultato.
+     * Se il pool e la coda sono saturi il thread chiamante resta bloccato finché non si libera un permesso.
+     * Le eccezioni sollevate dall'operazione vengono rilanciate al chiamante così come sono.
+     * Se il chiamante sta tracciando una richiesta, l'operazione entra nella sua traccia insieme all'attesa
+     * di un posto nel pool (fase "compute.queue").
+     * @param task L'operazione da eseguire.
+     * @param <T> Il tipo del risultato.
+     * @return Il risultato dell'operazione.
+     * @throws Exception L'eccezione sollevata dall'operazione, oppure InterruptedException se il chiamante viene interrotto.
+     */
+    <T> T execute(Callable<T> task) throws Exception {
+        PermitTask<T> future = submit(traced(task));
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) throw (Exception) cause;
+            throw (Error) cause;
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw e;
+        }
+    }
+
+    /**
+     * Avvolge l'operazione perché registri nella traccia attiva l'attesa prima dell'esecuzione e le proprie fasi.
+     */
+    private static <T> Callable<T> traced(Callable<T> task) {
+        if (Trace.current() == null) return task;
+        long queued = System.nanoTime();
+        return Trace.propagate(() -> {
+            Trace.record("compute.queue", queued);
+            return task.call();
+        });
+    }
+
+    /**
+     * Accoda l'operazione sul pool senza attenderne il completamento.
+     * A differenza di execute non blocca mai il chiamante: se pool e coda sono saturi l'operazione viene rifiutata.
+     * @param task L'operazione da eseguire.
+     * @param <T> Il tipo del risultato.
+     * @return Il future associato all'operazione.
+     * @throws RejectedExecutionException Se non ci sono posti liberi in coda.
+     */
+    <T> Future<T> trySubmit(Callable<T> task) {
+        if (!permits.tryAcquire()) {
+            throw new RejectedExecutionException("Coda di calcolo piena");
+        }
+        return enqueue(task);
+    }
+
+    /**
+     * Acquisisce un permesso (attendendo se necessario) e accoda l'operazione sull'esecutore.
+     * @param task L'operazione da eseguire.
+     * @param <T> Il tipo del risultato.
+     * @return Il future associato all'operazione.
+     * @throws InterruptedException Se il chiamante viene interrotto durante l'attesa di un permesso.
+     */
+    private <T> PermitTask<T> submit(Callable<T> task) throws InterruptedException {
+        permits.acquire();
+        return enqueue(task);
+    }
+
+    /**
+     * Accoda l'operazione sull'esecutore; il chiamante deve già possedere un permesso.
+     * @param task L'operazione da eseguire.
+     * @param <T> Il tipo del risultato.
+     * @return Il future associato all'operazione.
+     */
+    private <T> PermitTask<T> enqueue(Callable<T> task) {
+        PermitTask<T> future = new PermitTask<>(task);
+        try {
+            executor.execute(future);
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+        return future;
+    }
+
+    /**
+     * Restituisce il numero di operazioni attualmente in esecuzione.
+     * @return Il numero di thread attivi.
+     */
+    int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * Restituisce il numero di operazioni in coda in attesa di un thread.
+     * @return La dimensione della coda.
+     */
+    int getQueuedCount() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Arresta il pool: le operazioni già accodate vengono completate, le nuove rifiutate.
+     */
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Future che rilascia il proprio permesso quando il thread del pool ha finito di eseguirlo.
+     * Il permesso non viene rilasciato in done(): l'annullamento di un'operazione in esecuzione completa subito
+     * il future, ma l'operazione continua a occupare il thread finché non si accorge dell'interruzione,
+     * e nel frattempo il pool non deve accettare altro lavoro al suo posto. Anche un'operazione annullata
+     * prima dell'avvio occupa un posto in coda finché un thread non la estrae.
+     * @param <T> Il tipo del risultato.
+     */
+    private class PermitTask<T> extends FutureTask<T> {
+
+        PermitTask(Callable<T> task) {
+            super(task);
+        }
+
+        @Override
+        public void run() {
+            try {
+                super.run();
+            } finally {
+                permits.release();
+            }
+        }
+    }
+}
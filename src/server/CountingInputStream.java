@@ -0,0 +1,49 @@
+package server;
+
+import metrics.Counter;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * La classe CountingInputStream conta i byte letti da uno stream, aggiungendoli a un contatore delle metriche.
+ * Va posta sotto il buffer, così che il contatore venga aggiornato una volta per ogni lettura dalla socket
+ * e non per ogni byte.
+ * @see CountingOutputStream
+ */
+class CountingInputStream extends FilterInputStream {
+
+    private final Counter bytes;
+
+    CountingInputStream(InputStream in, Counter bytes) {
+        super(in);
+        this.bytes = bytes;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b >= 0) bytes.increment();
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = super.read(b, off, len);
+        if (n > 0) bytes.add(n);
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(n);
+        bytes.add(skipped);
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        // il contatore non può tornare indietro con reset()
+        return false;
+    }
+}
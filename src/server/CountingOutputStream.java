@@ -0,0 +1,43 @@
+package server;
+
+import metrics.Counter;
+import metrics.Trace;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * La classe CountingOutputStream conta i byte scritti su uno stream, aggiungendoli a un contatore delle metriche
+ * e alla traccia della richiesta servita dal thread che scrive, se presente. Lo stream sottostante alla bufferizzazione
+ * dei canali riceve blocchi interi, per cui la traccia viene consultata una volta per blocco e non per messaggio.
+ * @see CountingInputStream
+ */
+class CountingOutputStream extends FilterOutputStream {
+
+    /**
+     * Nome del valore della traccia con i byte inviati.
+     */
+    static final String TRACE_BYTES = "network.bytes_sent";
+
+    private final Counter bytes;
+
+    CountingOutputStream(OutputStream out, Counter bytes) {
+        super(out);
+        this.bytes = bytes;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        bytes.increment();
+        Trace.count(TRACE_BYTES, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        // FilterOutputStream scriverebbe un byte alla volta
+        out.write(b, off, len);
+        bytes.add(len);
+        Trace.count(TRACE_BYTES, len);
+    }
+}
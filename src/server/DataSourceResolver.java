@@ -0,0 +1,120 @@
+package server;
+
+import data.DataSource;
+import data.DelimitedFileSource;
+import data.SnapshotSource;
+import data.SyntheticSource;
+import data.TableSource;
+import database.LoadSpec;
+import java.nio.file.Path;
+
+/**
+ * La classe DataSourceResolver traduce il nome di un dataset inviato dal client nella sorgente da cui caricarlo.
+ * Il prefisso del nome indica il tipo di sorgente:
+ * <ul>
+ *     <li>"snapshot:nome" - lo snapshot nome.qts nella directory degli snapshot;</li>
+ *     <li>"csv:file" e "tsv:file" - il file delimitato (da virgole o tabulazioni) nella directory dei file;</li>
+ *     <li>"synth:specifica" - un dataset sintetico generato secondo la specifica (vedi {@link SyntheticSource#parse}),
+ *     disponibile solo se il server ne ammette le dimensioni;</li>
+ *     <li>nessun prefisso - la tabella del database con quel nome.</li>
+ * </ul>
+ * Lo stesso nome è usato come chiave della cache dei dataset.
+ * I nomi dei file non possono contenere separatori di percorso, così da non uscire dalle directory configurate.
+ */
+class DataSourceResolver {
+
+    static final String SNAPSHOT_PREFIX = "snapshot:";
+    static final String CSV_PREFIX = "csv:";
+    static final String TSV_PREFIX = "tsv:";
+    static final String SYNTH_PREFIX = "synth:";
+
+    /**
+     * Numero di partizioni lette in parallelo per le tabelle.
+     */
+    private final int loadPartitions;
+
+    /**
+     * Numero di thread usati per analizzare i file delimitati.
+     */
+    private final int parseThreads;
+
+    /**
+     * Directory degli snapshot.
+     */
+    private final Path snapshotDir;
+
+    /**
+     * Directory dei file delimitati.
+     */
+    private final Path filesDir;
+
+    /**
+     * Numero massimo di valori di un dataset sintetico (vedi {@link SyntheticSource#getGeneratedValues()});
+     * 0 disattiva i dataset sintetici.
+     */
+    private final long maxSyntheticValues;
+
+    DataSourceResolver(int loadPartitions, int parseThreads, Path snapshotDir, Path filesDir, long maxSyntheticValues) {
+        this.loadPartitions = loadPartitions;
+        this.parseThreads = parseThreads;
+        this.snapshotDir = snapshotDir;
+        this.filesDir = filesDir;
+        this.maxSyntheticValues = maxSyntheticValues;
+    }
+
+    /**
+     * Restituisce la sorgente corrispondente al nome.
+     * @param name Il nome del dataset, con l'eventuale prefisso del tipo di sorgente.
+     * @return La sorgente da cui caricare il dataset.
+     * @throws IllegalArgumentException Se il nome del file o la specifica del dataset sintetico non sono validi,
+     * oppure se il dataset sintetico è disattivato o supera le dimensioni ammesse.
+     */
+    DataSource resolve(String name) {
+        if (name.startsWith(SNAPSHOT_PREFIX)) {
+            return new SnapshotSource(snapshotFile(name.substring(SNAPSHOT_PREFIX.length())));
+        }
+        if (name.startsWith(CSV_PREFIX)) {
+            return new DelimitedFileSource(file(filesDir, name.substring(CSV_PREFIX.length())), ',', parseThreads);
+        }
+        if (name.startsWith(TSV_PREFIX)) {
+            return new DelimitedFileSource(file(filesDir, name.substring(TSV_PREFIX.length())), '\t', parseThreads);
+        }
+        if (name.startsWith(SYNTH_PREFIX)) {
+            if (maxSyntheticValues <= 0) throw new IllegalArgumentException("Dataset sintetici non abilitati sul server");
+            SyntheticSource source = SyntheticSource.parse(name.substring(SYNTH_PREFIX.length()));
+            // il controllo precede il caricamento: un dataset troppo grande esaurirebbe l'heap condiviso con gli altri client
+            if (source.getGeneratedValues() > maxSyntheticValues) {
+                throw new IllegalArgumentException("Dataset sintetico troppo grande: " + source.getGeneratedValues()
+                        + " valori, al massimo " + maxSyntheticValues);
+            }
+            return source;
+        }
+        return new TableSource(new LoadSpec(name), loadPartitions);
+    }
+
+    /**
+     * Restituisce la sorgente di una porzione di tabella.
+     * @param spec La porzione della tabella.
+     * @return La sorgente da cui caricare il dataset.
+     */
+    DataSource resolve(LoadSpec spec) {
+        return new TableSource(spec, loadPartitions);
+    }
+
+    /**
+     * Restituisce il file dello snapshot con il nome specificato.
+     * @param name Il nome dello snapshot, senza prefisso né estensione.
+     * @return Il percorso del file.
+     * @throws IllegalArgumentException Se il nome non è valido.
+     */
+    Path snapshotFile(String name) {
+        return file(snapshotDir, name + ".qts");
+    }
+
+    private static Path file(Path dir, String name) {
+        if (!name.matches("[A-Za-z0-9_-][A-Za-z0-9_.-]*")) {
+            throw new IllegalArgumentException("Nome di file non valido: " + name);
+        }
+        return dir.resolve(name);
+    }
+}
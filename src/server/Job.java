@@ -0,0 +1,210 @@
+package server;
+
+import data.Data;
+import mining.QTMiner;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * La classe Job modella un'operazione asincrona (caricamento di una tabella o clustering)
+ * sottomessa da un client e identificata da un id numerico.
+ * Il risultato resta disponibile sul server e può essere recuperato anche da una connessione diversa
+ * da quella che ha sottomesso il job.
+ */
+class Job {
+
+    /**
+     * Stati possibili di un job.
+     */
+    enum Status {
+        /** Il job è in coda in attesa di un thread di calcolo. */
+        QUEUED,
+        /** Il job è in esecuzione. */
+        RUNNING,
+        /** Il job è terminato con successo e il risultato è disponibile. */
+        DONE,
+        /** Il job è terminato con un errore. */
+        FAILED,
+        /** Il job è stato annullato dal client. */
+        CANCELLED
+    }
+
+    /**
+     * Risultato di un job completato: i messaggi da inviare al client che lo richiede
+     * e lo stato (dataset o modello) da installare sulla sua connessione.
+     */
+    static class Result {
+
+        /**
+         * Il nome del dataset su cui ha operato il job.
+         */
+        private final String name;
+
+        /**
+         * Il dataset prodotto dal job, oppure null.
+         */
+        private final Data data;
+
+        /**
+         * Il modello prodotto dal job, oppure null.
+         */
+        private final QTMiner miner;
+
+        /**
+         * La sequenza di messaggi della risposta, nello stesso formato dei comandi sincroni.
+         */
+        private final List<Object> messages;
+
+        Result(String name, Data data, QTMiner miner, List<Object> messages) {
+            this.name = name;
+            this.data = data;
+            this.miner = miner;
+            this.messages = messages;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        Data getData() {
+            return data;
+        }
+
+        QTMiner getMiner() {
+            return miner;
+        }
+
+        List<Object> getMessages() {
+            return messages;
+        }
+    }
+
+    /**
+     * Identificativo univoco del job.
+     */
+    private final int id;
+
+    /**
+     * Descrizione leggibile del job (tipo e parametri).
+     */
+    private final String description;
+
+    /**
+     * Istante di sottomissione in millisecondi.
+     */
+    private final long submittedAt = System.currentTimeMillis();
+
+    /**
+     * Indica se un thread di calcolo ha preso in carico il job.
+     */
+    private volatile boolean started;
+
+    /**
+     * Future associato all'esecuzione sul pool di calcolo.
+     */
+    private volatile Future<Result> future;
+
+    Job(int id, String description) {
+        this.id = id;
+        this.description = description;
+    }
+
+    int getId() {
+        return id;
+    }
+
+    String getDescription() {
+        return description;
+    }
+
+    long getSubmittedAt() {
+        return submittedAt;
+    }
+
+    void setFuture(Future<Result> future) {
+        this.future = future;
+    }
+
+    void markStarted() {
+        started = true;
+    }
+
+    /**
+     * Restituisce lo stato corrente del job.
+     * @return Lo stato del job.
+     */
+    Status getStatus() {
+        if (future.isCancelled()) return Status.CANCELLED;
+        if (future.isDone()) {
+            try {
+                future.get();
+                return Status.DONE;
+            } catch (ExecutionException | InterruptedException e) {
+                return Status.FAILED;
+            }
+        }
+        return started ? Status.RUNNING : Status.QUEUED;
+    }
+
+    /**
+     * Verifica se il job è terminato (con successo, con errore o per annullamento).
+     * @return true se il job non è più in coda né in esecuzione.
+     */
+    boolean isFinished() {
+        return future.isDone();
+    }
+
+    /**
+     * Attende la terminazione del job per al massimo il tempo indicato.
+     * @param timeoutMillis Il tempo massimo di attesa in millisecondi.
+     * @return Lo stato del job al termine dell'attesa.
+     * @throws InterruptedException Se il thread viene interrotto durante l'attesa.
+     */
+    Status await(long timeoutMillis) throws InterruptedException {
+        try {
+            future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException | CancellationException | TimeoutException e) {
+            // lo stato viene ricavato dal future
+        }
+        return getStatus();
+    }
+
+    /**
+     * Restituisce il risultato del job se completato con successo.
+     * @return Il risultato del job.
+     * @throws IllegalStateException Se il job non è ancora terminato o è stato annullato.
+     * @throws ExecutionException Se il job è terminato con un errore.
+     */
+    Result getResult() throws ExecutionException {
+        if (!future.isDone() || future.isCancelled()) {
+            throw new IllegalStateException("Job " + id + " not completed");
+        }
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            // il future è già completo: get non può bloccare
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Annulla il job, interrompendolo se già in esecuzione.
+     * @return true se il job è stato annullato, false se era già terminato.
+     */
+    boolean cancel() {
+        return future.cancel(true);
+    }
+
+    /**
+     * Restituisce una rappresentazione testuale del job nel formato "id stato descrizione".
+     * @return La stringa che descrive il job.
+     */
+    public String toString() {
+        return id + " " + getStatus() + " " + description;
+    }
+}
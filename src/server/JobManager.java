@@ -0,0 +1,90 @@
+package server;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * La classe JobManager mantiene il registro dei job asincroni del server.
+ * I job vengono eseguiti sul pool di calcolo condiviso; quando il pool è saturo la sottomissione
+ * viene rifiutata invece di bloccare il client. I job terminati restano consultabili
+ * finché non vengono scartati per fare posto ai più recenti.
+ */
+class JobManager {
+
+    /**
+     * Numero massimo di job conservati nel registro.
+     */
+    private static final int MAX_JOBS = 256;
+
+    /**
+     * Pool di calcolo su cui vengono eseguiti i job.
+     */
+    private final ComputePool computePool;
+
+    /**
+     * Generatore degli identificativi dei job.
+     */
+    private final AtomicInteger nextId = new AtomicInteger();
+
+    /**
+     * Registro dei job, ordinato per identificativo (e quindi per ordine di sottomissione).
+     */
+    private final ConcurrentSkipListMap<Integer, Job> jobs = new ConcurrentSkipListMap<>();
+
+    JobManager(ComputePool computePool) {
+        this.computePool = computePool;
+    }
+
+    /**
+     * Sottomette un nuovo job al pool di calcolo.
+     * @param description La descrizione del job.
+     * @param work L'operazione da eseguire, che produce il risultato del job.
+     * @return Il job appena creato.
+     * @throws RejectedExecutionException Se la coda del pool di calcolo è piena.
+     */
+    Job submit(String description, Callable<Job.Result> work) {
+        Job job = new Job(nextId.incrementAndGet(), description);
+        job.setFuture(computePool.trySubmit(() -> {
+            job.markStarted();
+            return work.call();
+        }));
+        jobs.put(job.getId(), job);
+        evictFinished();
+        return job;
+    }
+
+    /**
+     * Restituisce il job con l'identificativo specificato.
+     * @param id L'identificativo del job.
+     * @return Il job, oppure null se non esiste (o è stato scartato).
+     */
+    Job get(int id) {
+        return jobs.get(id);
+    }
+
+    /**
+     * Restituisce l'elenco dei job presenti nel registro, in ordine di sottomissione.
+     * @return La lista dei job.
+     */
+    List<Job> list() {
+        return new ArrayList<>(jobs.values());
+    }
+
+    /**
+     * Scarta i job terminati più vecchi finché il registro non rientra nella dimensione massima.
+     * I job in coda o in esecuzione non vengono mai scartati.
+     */
+    private void evictFinished() {
+        Iterator<Job> it = jobs.values().iterator();
+        while (jobs.size() > MAX_JOBS && it.hasNext()) {
+            if (it.next().isFinished()) {
+                it.remove();
+            }
+        }
+    }
+}
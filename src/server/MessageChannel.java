@@ -0,0 +1,91 @@
+package server;
+
+import metrics.Counter;
+import metrics.Metrics;
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+
+/**
+ * L'interfaccia MessageChannel modella il canale di comunicazione tra il server e un client.
+ * Ogni messaggio è un Integer, un Double o una String. Sono disponibili due implementazioni:
+ * il protocollo storico basato sulla serializzazione Java ({@link ObjectMessageChannel})
+ * e il protocollo binario compatto ({@link BinaryMessageChannel}).
+ * Il protocollo da usare viene negoziato all'apertura della connessione tramite {@link #negotiate(Socket, CompressionStats)}.
+ */
+interface MessageChannel extends Closeable {
+
+    /**
+     * Tempo massimo di attesa (in millisecondi) dei primi byte inviati dal client durante la negoziazione.
+     */
+    int HANDSHAKE_TIMEOUT = 2000;
+
+    /**
+     * Byte ricevuti dai client su tutte le connessioni, compresa la negoziazione.
+     */
+    Counter BYTES_IN = Metrics.counter("qt_network_received_bytes_total", "Byte ricevuti dai client.");
+
+    /**
+     * Byte inviati ai client su tutte le connessioni, compresa la negoziazione.
+     */
+    Counter BYTES_OUT = Metrics.counter("qt_network_sent_bytes_total", "Byte inviati ai client.");
+
+    /**
+     * Legge il prossimo messaggio inviato dal client.
+     * @return Il messaggio letto (Integer, Double o String).
+     * @throws IOException In caso di errori di comunicazione o di messaggi malformati.
+     * @throws ClassNotFoundException Se il protocollo storico riceve un oggetto di classe sconosciuta.
+     */
+    Object read() throws IOException, ClassNotFoundException;
+
+    /**
+     * Scrive un messaggio verso il client. Il messaggio può restare nel buffer fino alla chiamata di flush().
+     * @param message Il messaggio da inviare (Integer, Double o String).
+     * @throws IOException In caso di errori di comunicazione.
+     */
+    void write(Object message) throws IOException;
+
+    /**
+     * Invia al client tutti i messaggi ancora nel buffer.
+     * @throws IOException In caso di errori di comunicazione.
+     */
+    void flush() throws IOException;
+
+    /**
+     * Negozia il protocollo con il client appena connesso e restituisce il canale corrispondente.
+     * Un client storico inizia la connessione con l'intestazione di ObjectOutputStream (0xACED),
+     * un client binario con la sequenza magica del protocollo binario seguita dalla versione richiesta.
+     * Se il client non invia nulla entro {@link #HANDSHAKE_TIMEOUT} viene considerato un client storico
+     * in attesa dell'intestazione del server.
+     * @param socket La socket della connessione.
+     * @param compressionStats Le statistiche di compressione condivise dal server.
+     * @return Il canale negoziato.
+     * @throws IOException In caso di errori di comunicazione o di sequenza iniziale non riconosciuta.
+     */
+    static MessageChannel negotiate(Socket socket, CompressionStats compressionStats) throws IOException {
+        // Entrambi i canali accumulano la risposta e la inviano con flush(): l'algoritmo di Nagle tratterrebbe
+        // soltanto l'ultimo segmento di una risposta grande fino all'ACK ritardato del client
+        socket.setTcpNoDelay(true);
+        InputStream in = new BufferedInputStream(new CountingInputStream(socket.getInputStream(), BYTES_IN));
+        OutputStream out = new CountingOutputStream(socket.getOutputStream(), BYTES_OUT);
+        int first;
+        socket.setSoTimeout(HANDSHAKE_TIMEOUT);
+        try {
+            in.mark(1);
+            first = in.read();
+            in.reset();
+        } catch (SocketTimeoutException e) {
+            first = ObjectMessageChannel.STREAM_MAGIC_FIRST_BYTE;
+        } finally {
+            socket.setSoTimeout(0);
+        }
+        if (first == BinaryMessageChannel.MAGIC[0]) {
+            return BinaryMessageChannel.accept(in, out, compressionStats);
+        }
+        return new ObjectMessageChannel(in, out);
+    }
+}
@@ -0,0 +1,90 @@
+package server;
+
+import mining.MiningStats;
+import mining.QTMiner;
+import java.io.Serializable;
+
+/**
+ * La classe MiningResult modella il risultato di un'esecuzione del clustering QT su un dataset con un dato raggio:
+ * il modello calcolato, il numero di cluster, la loro rappresentazione testuale già formattata
+ * e i contatori del lavoro svolto dall'algoritmo.
+ * Il risultato non viene modificato dopo la creazione e può essere condiviso tra più connessioni.
+ */
+class MiningResult implements Serializable {
+
+    /**
+     * Identificativo di versione della serializzazione, fissato perché i risultati salvati su disco da {@link ResultCache}
+     * restino leggibili dopo modifiche compatibili della classe; va cambiato solo se cambia il significato dei campi.
+     */
+    private static final long serialVersionUID = 7477795496834206618L;
+
+    /**
+     * Il modello prodotto dal clustering.
+     */
+    private final QTMiner miner;
+
+    /**
+     * Il numero di cluster trovati.
+     */
+    private final int numberOfClusters;
+
+    /**
+     * La rappresentazione testuale dettagliata dei cluster, come restituita da ClusterSet.toString(Data).
+     */
+    private final String clusters;
+
+    /**
+     * Il numero di esempi del dataset su cui è stato eseguito il clustering.
+     */
+    private final int numberOfExamples;
+
+    /**
+     * I contatori dell'esecuzione che ha prodotto il risultato.
+     */
+    private final MiningStats stats;
+
+    /**
+     * Costruttore della classe MiningResult.
+     * @param miner Il modello prodotto dal clustering.
+     * @param numberOfClusters Il numero di cluster trovati.
+     * @param clusters La rappresentazione testuale dettagliata dei cluster.
+     * @param numberOfExamples Il numero di esempi del dataset.
+     * @param stats I contatori dell'esecuzione del clustering.
+     */
+    MiningResult(QTMiner miner, int numberOfClusters, String clusters, int numberOfExamples, MiningStats stats) {
+        this.miner = miner;
+        this.numberOfClusters = numberOfClusters;
+        this.clusters = clusters;
+        this.numberOfExamples = numberOfExamples;
+        this.stats = stats;
+    }
+
+    QTMiner getMiner() {
+        return miner;
+    }
+
+    int getNumberOfClusters() {
+        return numberOfClusters;
+    }
+
+    String getClusters() {
+        return clusters;
+    }
+
+    /**
+     * Restituisce i contatori dell'esecuzione che ha prodotto il risultato; un risultato riletto dalla cache
+     * su disco conserva quelli dell'esecuzione originale.
+     * @return I contatori del clustering.
+     */
+    MiningStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Stima l'occupazione in memoria del risultato, in byte.
+     * @return La dimensione stimata del risultato.
+     */
+    long getEstimatedSize() {
+        return 256L + 2L * clusters.length() + 48L * numberOfExamples;
+    }
+}
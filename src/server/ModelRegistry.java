@@ -0,0 +1,138 @@
+package server;
+
+import mining.MappedModel;
+import mining.ModelFile;
+import mining.ModelInfo;
+import mining.QTMiner;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * La classe ModelRegistry cataloga i modelli salvati nel formato binario e mantiene aperti quelli usati di recente,
+ * condivisi da tutte le connessioni.
+ * <p>
+ * Il catalogo associa al percorso di ogni modello noto la sua descrizione (sorgente, raggio, numero di esempi e di cluster,
+ * data di creazione): contiene i modelli trovati all'avvio nella directory dei modelli, quelli salvati dai client
+ * e quelli aperti almeno una volta. I modelli aperti sono istanze di {@link MappedModel} in una {@link SharedCache}
+ * limitata in memoria: richieste concorrenti per lo stesso file ricevono la stessa istanza, e l'apertura di un modello
+ * già in cache non accede al disco.
+ * <p>
+ * Un modello riscritto dal server viene invalidato; un file modificato dall'esterno continua invece a essere servito
+ * dalla cache finché non ne viene scartato.
+ */
+class ModelRegistry {
+
+    /**
+     * Cache dei modelli aperti, indicizzati per percorso assoluto del file.
+     */
+    private final SharedCache<MappedModel> cache;
+
+    /**
+     * Descrizioni dei modelli noti, indicizzate per percorso assoluto del file.
+     */
+    private final ConcurrentHashMap<String, ModelInfo> catalog = new ConcurrentHashMap<>();
+
+    /**
+     * Costruttore della classe ModelRegistry.
+     * @param maxBytes Il budget di memoria in byte per i modelli aperti.
+     * @param directory La directory in cui cercare i modelli all'avvio, oppure null per partire con il catalogo vuoto.
+     */
+    ModelRegistry(long maxBytes, Path directory) {
+        this.cache = new SharedCache<>("models", maxBytes, 0, MappedModel::getEstimatedSize);
+        if (directory != null) {
+            scan(directory);
+        }
+    }
+
+    /**
+     * Aggiunge al catalogo i modelli in formato binario presenti nella directory.
+     * I file che non sono modelli o non sono leggibili vengono ignorati.
+     * @param directory La directory da esaminare (non ricorsivamente).
+     */
+    private void scan(Path directory) {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, Files::isRegularFile)) {
+            for (Path found : files) {
+                Path file = normalize(found);
+                try {
+                    if (ModelFile.isModelFile(file)) {
+                        catalog.put(file.toString(), ModelFile.readInfo(file));
+                    }
+                } catch (IOException e) {
+                    System.err.println("Modello non leggibile " + file + ": " + e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Directory dei modelli non leggibile " + directory + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Apre un modello salvato, restituendo l'istanza condivisa se è già aperto.
+     * @param fileName Il nome del file del modello.
+     * @return Il modello aperto, oppure null se il file è un modello salvato con la serializzazione Java,
+     * che non può essere aperto senza caricarlo interamente.
+     * @throws Exception Se il file non esiste, non è leggibile o non è un modello valido.
+     */
+    MappedModel open(String fileName) throws Exception {
+        Path file = normalize(Path.of(fileName));
+        String key = file.toString();
+        // i modelli in catalogo sono tutti nel formato binario: il file viene esaminato solo se non è noto
+        if (!catalog.containsKey(key) && !ModelFile.isModelFile(file)) {
+            return null;
+        }
+        try {
+            return cache.get(key, () -> {
+                MappedModel model = MappedModel.open(file);
+                catalog.put(key, model.getInfo());
+                return model;
+            });
+        } catch (IOException e) {
+            catalog.remove(key);
+            throw e;
+        }
+    }
+
+    /**
+     * Salva il modello nel file indicato e ne aggiorna il catalogo.
+     * Un'eventuale versione precedente del file ancora aperta viene scartata dalla cache.
+     * @param miner Il modello da salvare.
+     * @param source Il nome della sorgente dei dati su cui è stato calcolato il modello.
+     * @param fileName Il nome del file.
+     * @throws IOException Se si verifica un errore durante la scrittura.
+     */
+    void save(QTMiner miner, String source, String fileName) throws IOException {
+        Path file = normalize(Path.of(fileName));
+        String key = file.toString();
+        miner.salva(key, source);
+        cache.invalidate(key);
+        catalog.put(key, ModelFile.readInfo(file));
+    }
+
+    /**
+     * Restituisce le descrizioni dei modelli in catalogo, ordinate per file.
+     * @return La lista delle descrizioni.
+     */
+    List<ModelInfo> list() {
+        List<ModelInfo> models = new ArrayList<>(catalog.values());
+        models.sort(Comparator.comparing(info -> info.getFile().toString()));
+        return models;
+    }
+
+    private static Path normalize(Path file) {
+        return file.toAbsolutePath().normalize();
+    }
+
+    /**
+     * Restituisce una rappresentazione testuale dello stato del registro.
+     * @return La stringa con il numero di modelli in catalogo e le statistiche della cache.
+     */
+    public String toString() {
+        return "catalog=" + catalog.size() + " " + cache;
+    }
+}
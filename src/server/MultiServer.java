@@ -1,11 +1,20 @@
 package server;
 
+import data.Data;
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.file.Path;
 
 public class MultiServer {
     private final int PORT;
+    private final ComputePool computePool;
+    private final JobManager jobManager;
+    private final CompressionStats compressionStats = new CompressionStats();
+    private final SharedCache<Data> dataCache;
+    private final ResultCache resultCache;
+    private final DataSourceResolver dataSources;
+    private final ModelRegistry models;
 
     public static void main(String[] args) {
         new MultiServer(8080);
@@ -13,9 +22,73 @@ public class MultiServer {
 
     public MultiServer(int port){
         this.PORT = port;
+        // Pool di calcolo dimensionato sui core, con una coda limitata per le richieste in eccesso
+        int cores = Runtime.getRuntime().availableProcessors();
+        this.computePool = new ComputePool(cores, cores * 4);
+        this.jobManager = new JobManager(computePool);
+        // Cache dei dataset condivisa: un quarto dell'heap, voci valide per dieci minuti
+        this.dataCache = new SharedCache<>("data", Runtime.getRuntime().maxMemory() / 4, 10 * 60 * 1000L, Data::getEstimatedSize);
+        // Cache dei risultati del clustering: un ottavo dell'heap, salvata su disco se è indicata una directory
+        this.resultCache = createResultCache(Runtime.getRuntime().maxMemory() / 8, System.getProperty("qt.results.dir"));
+        // Sorgenti dei dataset: tabelle (lette in qt.load.partitions partizioni parallele, 1 = una sola connessione),
+        // snapshot "snapshot:<nome>" in qt.snapshot.dir e file "csv:<file>"/"tsv:<file>" in qt.files.dir;
+        // i dataset sintetici "synth:<specifica>" sono disattivati se qt.synth.max.values (valori generati) non è indicato
+        this.dataSources = new DataSourceResolver(
+                Math.max(1, Integer.getInteger("qt.load.partitions", 1)),
+                cores,
+                Path.of(System.getProperty("qt.snapshot.dir", "snapshots")),
+                Path.of(System.getProperty("qt.files.dir", "files")),
+                Math.max(0, Long.getLong("qt.synth.max.values", 0)));
+        // Registro dei modelli salvati: un sedicesimo dell'heap per quelli aperti, catalogo iniziale da qt.models.dir
+        String modelsDir = System.getProperty("qt.models.dir");
+        this.models = new ModelRegistry(Runtime.getRuntime().maxMemory() / 16, modelsDir == null ? null : Path.of(modelsDir));
         run();
     }
 
+    ComputePool getComputePool() {
+        return computePool;
+    }
+
+    JobManager getJobManager() {
+        return jobManager;
+    }
+
+    CompressionStats getCompressionStats() {
+        return compressionStats;
+    }
+
+    SharedCache<Data> getDataCache() {
+        return dataCache;
+    }
+
+    ResultCache getResultCache() {
+        return resultCache;
+    }
+
+    DataSourceResolver getDataSources() {
+        return dataSources;
+    }
+
+    ModelRegistry getModels() {
+        return models;
+    }
+
+    private static ResultCache createResultCache(long maxBytes, String directory) {
+        if (directory != null) {
+            try {
+                return new ResultCache(maxBytes, Path.of(directory));
+            } catch (IOException e) {
+                System.err.println("Directory dei risultati non utilizzabile, persistenza disattivata: " + e.getMessage());
+            }
+        }
+        try {
+            return new ResultCache(maxBytes, null);
+        } catch (IOException e) {
+            // senza directory il costruttore non accede al disco
+            throw new IllegalStateException(e);
+        }
+    }
+
     public void run() {
         ServerSocket serverSocket = null;
         try {
@@ -29,9 +102,9 @@ public class MultiServer {
                 System.out.println("Nuovo client connesso: " + socket.getInetAddress());
 
                 try {
-                    // Ad ogni nuova richiesta istanzia ServerOneClient
-                    new ServerOneClient(socket);
-                } catch (IOException e) {
+                    // Ad ogni nuova richiesta avvia ServerOneClient su un thread virtuale
+                    Thread.ofVirtual().name("qt-client-" + socket.getPort()).start(new ServerOneClient(socket, this));
+                } catch (RuntimeException e) {
                     System.err.println("Errore nell'inizializzazione del client: " + e.getMessage());
                     socket.close(); // Chiude la socket se il thread non può partire
                 }
@@ -39,6 +112,7 @@ public class MultiServer {
         } catch (IOException e) {
             System.err.println("Errore nel server: " + e.getMessage());
         } finally {
+            computePool.shutdown();
             try {
                 if (serverSocket != null) serverSocket.close();
             } catch (IOException e) {
@@ -0,0 +1,88 @@
+package server;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+
+/**
+ * Implementazione di MessageChannel per il protocollo storico, basato su ObjectOutputStream e ObjectInputStream.
+ * Resta disponibile per i client che non supportano il protocollo binario.
+ * @see MessageChannel
+ */
+class ObjectMessageChannel implements MessageChannel {
+
+    /**
+     * Primo byte dell'intestazione scritta da ObjectOutputStream (STREAM_MAGIC = 0xACED).
+     */
+    static final int STREAM_MAGIC_FIRST_BYTE = 0xAC;
+
+    /**
+     * Stream di input degli oggetti inviati dal client.
+     */
+    private final ObjectInputStream in;
+
+    /**
+     * Stream di output degli oggetti inviati al client.
+     */
+    private final ObjectOutputStream out;
+
+    /**
+     * Costruttore della classe ObjectMessageChannel.
+     * Scrive l'intestazione dello stream di output prima di leggere quella del client,
+     * come faceva il server prima dell'introduzione del protocollo binario.
+     * L'output è bufferizzato: senza buffer il marcatore di reset scritto da flush() partirebbe in un segmento TCP
+     * separato, trattenuto dall'algoritmo di Nagle fino all'ACK (ritardato) del client.
+     * @param input Lo stream di input della socket (eventualmente già bufferizzato dalla negoziazione).
+     * @param output Lo stream di output della socket.
+     * @throws IOException In caso di errori di comunicazione.
+     */
+    ObjectMessageChannel(InputStream input, OutputStream output) throws IOException {
+        this.out = new ObjectOutputStream(new BufferedOutputStream(output));
+        this.out.flush();
+        this.in = new ObjectInputStream(input);
+    }
+
+    @Override
+    public Object read() throws IOException, ClassNotFoundException {
+        return in.readObject();
+    }
+
+    /**
+     * Scrive un messaggio. Le String vengono scritte come oggetti non condivisi, che non entrano nella tabella
+     * dei riferimenti: i blocchi di una risposta inviata a pezzi (vedi {@link ChunkedWriter}) possono così essere
+     * liberati subito dopo l'invio, invece di restare in memoria fino al reset eseguito da {@link #flush()}.
+     * @param message Il messaggio da inviare.
+     * @throws IOException In caso di errori di comunicazione.
+     */
+    @Override
+    public void write(Object message) throws IOException {
+        if (message instanceof String) {
+            out.writeUnshared(message);
+        } else {
+            out.writeObject(message);
+        }
+    }
+
+    /**
+     * Invia i messaggi nel buffer e azzera la tabella dei riferimenti di ObjectOutputStream,
+     * che altrimenti crescerebbe per tutta la durata della connessione.
+     * @throws IOException In caso di errori di comunicazione.
+     */
+    @Override
+    public void flush() throws IOException {
+        out.reset();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            in.close();
+        } finally {
+            out.close();
+        }
+    }
+}
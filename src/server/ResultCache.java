@@ -0,0 +1,150 @@
+package server;
+
+import data.Data;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.concurrent.Callable;
+
+/**
+ * La classe ResultCache memorizza i risultati del clustering, condivisi da tutte le connessioni.
+ * Un risultato è identificato dall'impronta del dataset (che ne rappresenta contenuto e versione) e dal raggio:
+ * richieste ripetute con lo stesso dataset e lo stesso raggio restituiscono il risultato già calcolato
+ * invece di eseguire di nuovo QTMiner.compute.
+ * <p>
+ * In memoria i risultati sono gestiti da una {@link SharedCache} limitata; se è configurata una directory
+ * vengono anche salvati su disco, così da sopravvivere al riavvio del server.
+ * Il modello viene serializzato nel formato binario di {@link mining.ModelFile}, quindi anche i risultati letti
+ * da disco contengono gli indici delle tuple dei cluster.
+ */
+class ResultCache {
+
+    /**
+     * Cache in memoria dei risultati.
+     */
+    private final SharedCache<MiningResult> cache;
+
+    /**
+     * Directory in cui vengono salvati i risultati, oppure null se la persistenza è disattivata.
+     */
+    private final Path directory;
+
+    /**
+     * Costruttore della classe ResultCache.
+     * @param maxBytes Il budget di memoria in byte.
+     * @param directory La directory per la persistenza dei risultati, oppure null per disattivarla.
+     * @throws IOException Se non è possibile creare la directory.
+     */
+    ResultCache(long maxBytes, Path directory) throws IOException {
+        this.cache = new SharedCache<>("results", maxBytes, 0, MiningResult::getEstimatedSize);
+        this.directory = directory;
+        if (directory != null) {
+            Files.createDirectories(directory);
+        }
+    }
+
+    /**
+     * Restituisce il risultato del clustering del dataset con il raggio specificato,
+     * cercandolo in memoria, poi su disco, e calcolandolo solo se non disponibile.
+     * @param data Il dataset.
+     * @param radius Il raggio del clustering.
+     * @param compute L'operazione che esegue il clustering.
+     * @return Il risultato condiviso.
+     * @throws Exception L'eccezione sollevata dal clustering.
+     */
+    MiningResult get(Data data, double radius, Callable<MiningResult> compute) throws Exception {
+        String key = Long.toHexString(data.getFingerprint()) + "-" + data.getNumberOfExamples() + "-" + radius;
+        return cache.get(key, () -> {
+            MiningResult result = read(key);
+            if (result == null) {
+                result = compute.call();
+                write(key, result);
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Svuota la cache in memoria. I risultati salvati su disco restano validi,
+     * perché la chiave dipende dal contenuto del dataset.
+     */
+    void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * Legge da disco il risultato associato alla chiave.
+     * @param key La chiave del risultato.
+     * @return Il risultato, oppure null se non presente o non leggibile.
+     */
+    private MiningResult read(String key) {
+        if (directory == null) return null;
+        Path file = fileFor(key);
+        if (!Files.exists(file)) return null;
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (!key.equals(in.readUTF())) return null;
+            return (MiningResult) in.readObject();
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            System.err.println("Risultato in cache non leggibile " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Salva su disco il risultato associato alla chiave. Il file viene scritto con un nome temporaneo
+     * e poi rinominato, così un lettore concorrente non vede mai un file parziale.
+     * @param key La chiave del risultato.
+     * @param result Il risultato da salvare.
+     */
+    private void write(String key, MiningResult result) {
+        if (directory == null) return;
+        Path file = fileFor(key);
+        Path tmp = null;
+        try {
+            tmp = Files.createTempFile(directory, "result", ".tmp");
+            try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeUTF(key);
+                out.writeObject(result);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Impossibile salvare il risultato in cache " + file + ": " + e.getMessage());
+            try {
+                if (tmp != null) Files.deleteIfExists(tmp);
+            } catch (IOException ignored) {
+                // il file temporaneo resta nella directory, verrà sovrascritto al prossimo salvataggio
+            }
+        }
+    }
+
+    /**
+     * Restituisce il file associato alla chiave, il cui nome è l'hash SHA-256 della chiave.
+     * @param key La chiave del risultato.
+     * @return Il percorso del file.
+     */
+    private Path fileFor(String key) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            return directory.resolve(HexFormat.of().formatHex(hash) + ".qtr");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Restituisce una rappresentazione testuale delle statistiche della cache.
+     * @return La stringa con le statistiche della cache in memoria.
+     */
+    public String toString() {
+        return cache.toString() + (directory == null ? "" : " dir=" + directory);
+    }
+}
@@ -1,40 +1,101 @@
 package server;
 
 import data.Data;
-import database.DatabaseConnectionException;
-import database.EmptySetException;
-import database.NoValueException;
+import data.DataSnapshot;
+import database.LoadSpec;
+import database.TableSchema;
+import mining.ClusterExport;
+import mining.ClusterSet;
 import mining.ClusteringRadiusException;
 import mining.EmptyDatasetException;
+import mining.MappedModel;
+import mining.ModelInfo;
 import mining.QTMiner;
+import metrics.Counter;
+import metrics.Histogram;
+import metrics.Metrics;
+import metrics.Trace;
 import java.io.*;
 import java.net.Socket;
-import java.sql.SQLException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+
+public class ServerOneClient implements Runnable {
+    // Nomi dei comandi del protocollo, indicizzati per codice, usati come etichetta delle metriche
+    private static final String[] COMMANDS = {"storeTableFromDb", "learningFromDbTable", "storeClusterInFile",
+            "learningFromFile", "submitTableJob", "submitMiningJob", "jobStatus", "awaitJob", "fetchJobResult",
+            "listJobs", "cancelJob", "streamTable", "streamClusters", "streamClusterMembers", "serverStatistics",
+            "invalidateTable", "storeSliceFromDb", "saveSnapshot", "listModels", "exportClusters", "metrics"};
+    private static final Histogram[] COMMAND_SECONDS = new Histogram[COMMANDS.length];
+    static {
+        for (int code = 0; code < COMMANDS.length; code++) {
+            COMMAND_SECONDS[code] = Metrics.timer("qt_command_seconds{command=\"" + COMMANDS[code] + "\"}",
+                    "Durata dei comandi, dalla lettura del codice all'invio dell'ultimo byte della risposta.");
+        }
+    }
+    // Bit che il client può aggiungere al codice di un comando per richiederne la traccia: dopo la risposta
+    // il server invia una String con i tempi delle fasi (vedi Trace.toString) e i byte della risposta
+    static final int TRACE_FLAG = 1 << 30;
+    private static final Counter TRACED_COMMANDS = Metrics.counter("qt_command_traced_total", "Comandi eseguiti con la traccia.");
+    private static final Counter UNKNOWN_COMMANDS = Metrics.counter("qt_command_unknown_total", "Comandi con codice sconosciuto.");
+    private static final Counter CONNECTIONS = Metrics.counter("qt_connections_total", "Connessioni accettate.");
+    private static final Counter ACTIVE_CONNECTIONS = Metrics.gauge("qt_connections_active", "Connessioni aperte.");
 
-public class ServerOneClient extends Thread {
     private final Socket socket;
-    private final ObjectInputStream in;
-    private final ObjectOutputStream out;
+    private final ComputePool computePool;
+    private final JobManager jobManager;
+    private final CompressionStats compressionStats;
+    private final SharedCache<Data> dataCache;
+    private final ResultCache resultCache;
+    private final DataSourceResolver sources;
+    private final ModelRegistry models;
+    private MessageChannel channel;
     private QTMiner kmeans;
+    // Modello aperto da file senza caricarlo in memoria: alternativo a kmeans
+    private MappedModel kmeansModel;
+    private Data kmeansData;
+    private String kmeansSource;
+    private String dataName;
     private Data data;
 
-    public ServerOneClient(Socket s) throws IOException {
+    public ServerOneClient(Socket s, MultiServer server) {
         this.socket = s;
-
-        this.out = new ObjectOutputStream(socket.getOutputStream());
-        this.in = new ObjectInputStream(socket.getInputStream());
-
-        start();
+        this.computePool = server.getComputePool();
+        this.jobManager = server.getJobManager();
+        this.compressionStats = server.getCompressionStats();
+        this.dataCache = server.getDataCache();
+        this.resultCache = server.getResultCache();
+        this.sources = server.getDataSources();
+        this.models = server.getModels();
     }
 
     @Override
     public void run() {
+        CONNECTIONS.increment();
+        ACTIVE_CONNECTIONS.increment();
         try {
+            // Il protocollo viene negoziato sul thread della connessione, non su quello che accetta i client
+            this.channel = MessageChannel.negotiate(socket, compressionStats);
+
             while (true) {
-                Object codeObject = in.readObject();
+                Object codeObject = channel.read();
                 if (!(codeObject instanceof Integer)) {continue;}
 
                 int code = (Integer) codeObject;
+                // Il tempo di attesa del comando non fa parte della durata: si misura dopo averne letto il codice
+                long start = System.nanoTime();
+                Trace trace = null;
+                if ((code & TRACE_FLAG) != 0) {
+                    code &= ~TRACE_FLAG;
+                    // Senza il flag la traccia non esiste e le fasi si limitano a non trovarla
+                    trace = Trace.begin(code >= 0 && code < COMMANDS.length ? COMMANDS[code] : "command " + code);
+                    channel = new TracingMessageChannel(channel, trace);
+                    TRACED_COMMANDS.increment();
+                }
 
                 switch (code) {
                     case 0:
@@ -49,16 +110,88 @@ public class ServerOneClient extends Thread {
                     case 3:
                         learningFromFile();
                         break;
+                    case 4:
+                        submitTableJob();
+                        break;
+                    case 5:
+                        submitMiningJob();
+                        break;
+                    case 6:
+                        jobStatus();
+                        break;
+                    case 7:
+                        awaitJob();
+                        break;
+                    case 8:
+                        fetchJobResult();
+                        break;
+                    case 9:
+                        listJobs();
+                        break;
+                    case 10:
+                        cancelJob();
+                        break;
+                    case 11:
+                        streamTable();
+                        break;
+                    case 12:
+                        streamClusters();
+                        break;
+                    case 13:
+                        streamClusterMembers();
+                        break;
+                    case 14:
+                        serverStatistics();
+                        break;
+                    case 15:
+                        invalidateTable();
+                        break;
+                    case 16:
+                        storeSliceFromDb();
+                        break;
+                    case 17:
+                        saveSnapshot();
+                        break;
+                    case 18:
+                        listModels();
+                        break;
+                    case 19:
+                        exportClusters();
+                        break;
+                    case 20:
+                        metrics();
+                        break;
                     default:
-                        out.writeObject("KO: Comando sconosciuto");
+                        channel.write("KO: Comando sconosciuto");
+                }
+                // La risposta di ogni comando viene inviata in blocco
+                channel.flush();
+                if (code >= 0 && code < COMMAND_SECONDS.length) {
+                    COMMAND_SECONDS[code].recordSince(start);
+                } else {
+                    UNKNOWN_COMMANDS.increment();
+                }
+                if (trace != null) {
+                    // La traccia segue la risposta completa e ne comprende l'invio, ma non i propri byte
+                    channel = ((TracingMessageChannel) channel).getChannel();
+                    trace.end();
+                    channel.write(trace.toString());
+                    channel.flush();
                 }
             }
         }catch (IOException | ClassNotFoundException e){
             System.err.println("Errore di comunicazione : " + e.getMessage());
         }finally {
+            ACTIVE_CONNECTIONS.decrement();
+            // Un errore durante un comando tracciato lascia il canale avvolto
+            if (channel instanceof TracingMessageChannel) {
+                channel = ((TracingMessageChannel) channel).getChannel();
+            }
+            if (channel instanceof BinaryMessageChannel && ((BinaryMessageChannel) channel).getStats().getMessages() > 0) {
+                System.out.println("Compressione " + socket.getInetAddress() + ": " + ((BinaryMessageChannel) channel).getStats());
+            }
             try {
-                if (in != null) in.close();
-                if (out != null) out.close();
+                if (channel != null) channel.close();
                 if (socket != null) socket.close();
             } catch (IOException e) {
                 System.err.println("Errore chiusura socket.");
@@ -67,53 +200,377 @@ public class ServerOneClient extends Thread {
     }
 
     public void storeTableFromDb() throws IOException, ClassNotFoundException{
-        String tabName = (String) in.readObject();
+        String tabName = (String) channel.read();
+        String table;
         try {
-            data = new Data(tabName);
-            out.writeObject(data.toString());
-            out.writeObject("OK");
-        } catch ( NoValueException | DatabaseConnectionException | SQLException | EmptySetException e) {
-            out.writeObject("KO: " + e.getMessage());
+            // Il dataset viene condiviso tramite la cache; caricamento e formattazione passano dal pool di calcolo.
+            // La voce della cache si acquisisce dentro il pool: se il caricamento restasse in coda mentre la voce
+            // è già presa, i job che attendono la stessa voce sui thread del pool non lo lascerebbero mai partire
+            data = computePool.execute(() -> dataCache.get(tabName, () -> sources.resolve(tabName).load()));
+            dataName = tabName;
+            table = computePool.execute(data::toString);
+        } catch (Exception e) {
+            channel.write("KO: " + e.getMessage());
+            return;
         }
+        channel.write(table);
+        channel.write("OK");
     }
 
-    public void learningFromDbTable() throws IOException, ClassNotFoundException{
+    public void storeSliceFromDb() throws IOException, ClassNotFoundException {
+        // Parametri: tabella, colonne separate da virgola ("" = tutte), numero di condizioni e per ciascuna colonna, operatore e valore
+        String tabName = (String) channel.read();
+        String columnList = (String) channel.read();
+        int count = (Integer) channel.read();
+        Object[][] conditions = new Object[count][];
+        for (int i = 0; i < count; i++) {
+            conditions[i] = new Object[] {channel.read(), channel.read(), channel.read()};
+        }
+        String table;
+        try {
+            List<String> columns = new ArrayList<>();
+            for (String column : columnList.split(",")) {
+                if (!column.isBlank()) columns.add(column.trim());
+            }
+            LoadSpec spec = new LoadSpec(tabName, columns);
+            for (Object[] condition : conditions) {
+                spec.where((String) condition[0], (String) condition[1], condition[2]);
+            }
+            // La stessa porzione richiesta da più client viene caricata una sola volta, dentro il pool come sopra
+            data = computePool.execute(() -> dataCache.get(spec.getKey(), () -> sources.resolve(spec).load()));
+            dataName = spec.toString();
+            table = computePool.execute(data::toString);
+        } catch (Exception e) {
+            channel.write("KO: " + e.getMessage());
+            return;
+        }
+        channel.write(table);
+        channel.write("OK");
+    }
+
+    public void saveSnapshot() throws IOException, ClassNotFoundException {
+        String name = (String) channel.read();
         if (data == null) {
-            out.writeObject("KO: Data not loaded");
+            channel.write("KO: Data not loaded");
             return;
         }
+        Data current = data;
         try {
-            double r = (Double) in.readObject();
-            this.kmeans = new QTMiner(r);
-            int compute = kmeans.compute(data);
-            String cluster = kmeans.getC().toString(data);
+            Path file = sources.snapshotFile(name);
+            computePool.execute(() -> {
+                DataSnapshot.write(current, file);
+                return null;
+            });
+        } catch (Exception e) {
+            channel.write("KO: " + e.getMessage());
+            return;
+        }
+        // Un'eventuale versione precedente dello snapshot in cache non è più valida
+        dataCache.invalidate(DataSourceResolver.SNAPSHOT_PREFIX + name);
+        channel.write("OK");
+    }
 
-            out.writeObject("OK");
-            out.writeObject(compute);
-            out.writeObject(cluster);
-        }catch (ClusteringRadiusException | EmptyDatasetException e){
-            out.writeObject("KO: " + e.getMessage());
+    public void learningFromDbTable() throws IOException, ClassNotFoundException{
+        if (data == null) {
+            channel.write("KO: Data not loaded");
+            return;
         }
+        double r = (Double) channel.read();
+        Data current = data;
+        MiningResult result;
+        try {
+            // Stesso dataset e stesso raggio: il risultato viene riutilizzato invece di ripetere il clustering
+            // La voce si acquisisce dentro il pool, come per i dataset, perché i job di clustering la attendono sui suoi thread
+            result = computePool.execute(() -> resultCache.get(current, r, () -> mine(current, r)));
+        }catch (Exception e){
+            channel.write("KO: " + e.getMessage());
+            return;
+        }
+        this.kmeans = result.getMiner();
+        this.kmeansModel = null;
+        this.kmeansData = current;
+        this.kmeansSource = dataName;
+        channel.write("OK");
+        channel.write(result.getNumberOfClusters());
+        channel.write(result.getClusters());
+    }
+
+    private static MiningResult mine(Data data, double r) throws ClusteringRadiusException, EmptyDatasetException {
+        QTMiner miner = new QTMiner(r);
+        int compute = miner.compute(data);
+        return new MiningResult(miner, compute, miner.getC().toString(data), data.getNumberOfExamples(), miner.getStats());
     }
 
     public void storeClusterInFile() throws IOException, ClassNotFoundException {
-        String FileName = (String) in.readObject();
+        String FileName = (String) channel.read();
         try {
-            kmeans.salva(FileName);
-            out.writeObject("OK");
+            QTMiner miner = kmeans != null ? kmeans : kmeansModel.toMiner();
+            models.save(miner, kmeansSource, FileName);
+            channel.write("OK");
         }catch (Exception e){
-            out.writeObject("KO: " + e.getMessage());
+            channel.write("KO: " + e.getMessage());
         }
     }
 
     public void learningFromFile() throws IOException, ClassNotFoundException {
-        String FileName = (String) in.readObject();
+        String FileName = (String) channel.read();
+        String clusters;
         try {
-            this.kmeans = new QTMiner(FileName);
-            out.writeObject("OK");
-            out.writeObject(kmeans.getC().toString());
+            // Il modello è condiviso tra le connessioni: se è già aperto non si accede al disco
+            MappedModel model = models.open(FileName);
+            if (model != null) {
+                clusters = model.toString();
+                this.kmeans = null;
+                this.kmeansModel = model;
+                this.kmeansSource = model.getSource();
+            } else {
+                QTMiner miner = computePool.execute(() -> new QTMiner(FileName));
+                clusters = miner.getC().toString();
+                this.kmeans = miner;
+                this.kmeansModel = null;
+                this.kmeansSource = miner.getSource();
+            }
+            this.kmeansData = null;
         }catch (Exception e){
-            out.writeObject("KO: " + e.getMessage());
+            channel.write("KO: " + e.getMessage());
+            return;
+        }
+        channel.write("OK");
+        channel.write(clusters);
+    }
+
+    public void submitTableJob() throws IOException, ClassNotFoundException {
+        String tabName = (String) channel.read();
+        submitJob("load " + tabName, () -> {
+            Data loaded = dataCache.get(tabName, () -> sources.resolve(tabName).load());
+            return new Job.Result(tabName, loaded, null, List.of(loaded.toString(), "OK"));
+        });
+    }
+
+    public void submitMiningJob() throws IOException, ClassNotFoundException {
+        String tabName = (String) channel.read();
+        double r = (Double) channel.read();
+        submitJob("mine " + tabName + " radius=" + r, () -> {
+            Data loaded = dataCache.get(tabName, () -> sources.resolve(tabName).load());
+            MiningResult result = resultCache.get(loaded, r, () -> mine(loaded, r));
+            return new Job.Result(tabName, loaded, result.getMiner(),
+                    List.of("OK", result.getNumberOfClusters(), result.getClusters()));
+        });
+    }
+
+    private void submitJob(String description, Callable<Job.Result> work) throws IOException {
+        try {
+            Job job = jobManager.submit(description, work);
+            channel.write("OK");
+            channel.write(job.getId());
+        } catch (RejectedExecutionException e) {
+            channel.write("KO: " + e.getMessage());
+        }
+    }
+
+    public void jobStatus() throws IOException, ClassNotFoundException {
+        Job job = findJob((Integer) channel.read());
+        if (job == null) return;
+        channel.write("OK");
+        channel.write(job.getStatus().toString());
+    }
+
+    public void awaitJob() throws IOException, ClassNotFoundException {
+        int id = (Integer) channel.read();
+        int timeout = (Integer) channel.read();
+        Job job = findJob(id);
+        if (job == null) return;
+        try {
+            // L'attesa avviene sul thread virtuale della connessione, senza occupare il pool di calcolo
+            Job.Status status = job.await(timeout);
+            channel.write("OK");
+            channel.write(status.toString());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            channel.write("KO: " + e.getMessage());
+        }
+    }
+
+    public void fetchJobResult() throws IOException, ClassNotFoundException {
+        Job job = findJob((Integer) channel.read());
+        if (job == null) return;
+        Job.Result result;
+        try {
+            result = job.getResult();
+        } catch (IllegalStateException e) {
+            channel.write("KO: " + e.getMessage());
+            return;
+        } catch (ExecutionException e) {
+            channel.write("KO: " + e.getCause().getMessage());
+            return;
+        }
+        // Il risultato diventa lo stato corrente della connessione, come per i comandi sincroni
+        if (result.getData() != null) {
+            data = result.getData();
+            dataName = result.getName();
+        }
+        if (result.getMiner() != null) {
+            kmeans = result.getMiner();
+            kmeansModel = null;
+            kmeansData = result.getData();
+            kmeansSource = result.getName();
+        }
+        for (Object message : result.getMessages()) {
+            channel.write(message);
+        }
+    }
+
+    public void listJobs() throws IOException {
+        StringBuilder list = new StringBuilder();
+        for (Job job : jobManager.list()) {
+            list.append(job).append("\n");
+        }
+        channel.write("OK");
+        channel.write(list.toString());
+    }
+
+    public void cancelJob() throws IOException, ClassNotFoundException {
+        Job job = findJob((Integer) channel.read());
+        if (job == null) return;
+        if (job.cancel()) {
+            channel.write("OK");
+        } else {
+            channel.write("KO: Job " + job.getId() + " already finished");
+        }
+    }
+
+    private Job findJob(int id) throws IOException {
+        Job job = jobManager.get(id);
+        if (job == null) {
+            channel.write("KO: Job " + id + " not found");
+        }
+        return job;
+    }
+
+    public void streamTable() throws IOException, ClassNotFoundException {
+        int from = (Integer) channel.read();
+        int to = (Integer) channel.read();
+        if (data == null) {
+            channel.write("KO: Data not loaded");
+            return;
+        }
+        channel.write("OK");
+        // Il testo viene prodotto e inviato a blocchi: la formattazione avviene sul thread della connessione
+        // perché è intercalata alle scritture sulla socket
+        try (ChunkedWriter writer = new ChunkedWriter(channel, ChunkedWriter.DEFAULT_CHUNK_SIZE)) {
+            data.write(writer, from, to < 0 ? data.getNumberOfExamples() : to);
+        }
+    }
+
+    public void streamClusters() throws IOException, ClassNotFoundException {
+        int from = (Integer) channel.read();
+        int to = (Integer) channel.read();
+        if (kmeans == null && kmeansModel == null) {
+            channel.write("KO: Clusters not available");
+            return;
+        }
+        if (kmeansModel != null) {
+            channel.write("OK");
+            try (ChunkedWriter writer = new ChunkedWriter(channel, ChunkedWriter.DEFAULT_CHUNK_SIZE)) {
+                kmeansModel.writeSummary(writer, from, to < 0 ? kmeansModel.getNumberOfClusters() : to);
+            }
+            return;
+        }
+        ClusterSet clusters = kmeans.getC();
+        int last = to < 0 ? clusters.size() : to;
+        channel.write("OK");
+        try (ChunkedWriter writer = new ChunkedWriter(channel, ChunkedWriter.DEFAULT_CHUNK_SIZE)) {
+            // Un modello caricato da file non conosce le tuple: se ne invia solo il riepilogo
+            if (kmeansData != null) {
+                clusters.write(writer, kmeansData, from, last);
+            } else {
+                clusters.writeSummary(writer, from, last);
+            }
+        }
+    }
+
+    public void streamClusterMembers() throws IOException, ClassNotFoundException {
+        int index = (Integer) channel.read();
+        if (kmeans == null || kmeansData == null) {
+            channel.write("KO: Clusters not available");
+            return;
+        }
+        ClusterSet clusters = kmeans.getC();
+        if (index < 1 || index > clusters.size()) {
+            channel.write("KO: Cluster " + index + " not found");
+            return;
+        }
+        channel.write("OK");
+        try (ChunkedWriter writer = new ChunkedWriter(channel, ChunkedWriter.DEFAULT_CHUNK_SIZE)) {
+            clusters.writeMembers(writer, kmeansData, index);
+        }
+    }
+
+    public void serverStatistics() throws IOException {
+        String stats = "compute.active=" + computePool.getActiveCount() + "\n"
+                + "compute.queued=" + computePool.getQueuedCount() + "\n"
+                + "jobs=" + jobManager.list().size() + "\n"
+                + "compression: " + compressionStats + "\n"
+                + "dataCache: " + dataCache + "\n"
+                + "resultCache: " + resultCache + "\n"
+                + "models: " + models + "\n";
+        channel.write("OK");
+        channel.write(stats);
+    }
+
+    public void metrics() throws IOException {
+        // Tutte le metriche del server nel formato testuale di Prometheus
+        channel.write("OK");
+        channel.write(Metrics.scrape());
+    }
+
+    public void exportClusters() throws IOException, ClassNotFoundException {
+        String table = (String) channel.read();
+        // Il protocollo binario non trasmette Boolean: 1 = ricrea le tabelle, 0 = fallisce se esistono già
+        boolean replace = (Integer) channel.read() != 0;
+        int batchSize = (Integer) channel.read();
+        int writers = (Integer) channel.read();
+        // Righe dopo cui eseguire il commit; 0 = un'unica transazione, annullata interamente in caso di errore
+        int commitRows = (Integer) channel.read();
+        if (kmeans == null || kmeansData == null) {
+            channel.write("KO: Clusters not available");
+            return;
+        }
+        ClusterSet clusters = kmeans.getC();
+        Data current = kmeansData;
+        try {
+            computePool.execute(() -> {
+                new ClusterExport(current, clusters).write(table, replace, batchSize, writers, commitRows);
+                return null;
+            });
+        } catch (Exception e) {
+            channel.write("KO: " + e.getMessage());
+            return;
+        }
+        channel.write("OK");
+    }
+
+    public void listModels() throws IOException {
+        // Una riga per ogni modello in catalogo, letta dai metadati senza caricare i cluster
+        StringBuilder list = new StringBuilder();
+        for (ModelInfo info : models.list()) {
+            list.append(info).append("\n");
+        }
+        channel.write("OK");
+        channel.write(list.toString());
+    }
+
+    public void invalidateTable() throws IOException, ClassNotFoundException {
+        String tabName = (String) channel.read();
+        // Una stringa vuota invalida l'intera cache
+        if (tabName.isEmpty()) {
+            dataCache.invalidateAll();
+            TableSchema.invalidateAll();
+        } else {
+            // Insieme alla tabella vengono invalidate anche le sue porzioni caricate con il comando 16
+            dataCache.invalidateIf(key -> key.equals(tabName) || key.startsWith(tabName + "?"));
+            TableSchema.invalidate(tabName);
         }
+        channel.write("OK");
     }
 }
@@ -0,0 +1,253 @@
+package server;
+
+import metrics.Trace;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * La classe SharedCache mantiene una cache di oggetti immutabili condivisa da tutte le connessioni,
+ * indicizzata da una chiave testuale. È usata per i dataset caricati (indicizzati per nome della tabella)
+ * e per i risultati del clustering: poiché i valori non vengono modificati dopo la creazione,
+ * la stessa istanza può essere usata da più client contemporaneamente.
+ * <p>
+ * Richieste concorrenti per la stessa chiave provocano un solo caricamento: la prima richiesta
+ * lo esegue, le altre ne attendono il risultato. I valori sono mantenuti in ordine LRU
+ * e vengono scartati i meno usati quando la loro dimensione stimata supera il budget di memoria;
+ * una voce scade inoltre dopo il tempo di vita configurato, e può essere invalidata esplicitamente.
+ * @param <V> Il tipo dei valori in cache.
+ */
+class SharedCache<V> {
+
+    /**
+     * Voce della cache: il valore (o il suo caricamento in corso) con dimensione e istante di caricamento.
+     * @param <V> Il tipo del valore.
+     */
+    private static class Entry<V> {
+
+        /**
+         * Future completato con il valore al termine del caricamento.
+         */
+        private final CompletableFuture<V> future = new CompletableFuture<>();
+
+        /**
+         * Dimensione stimata del valore in byte, 0 finché il caricamento non è terminato.
+         */
+        private long size;
+
+        /**
+         * Istante (in millisecondi) in cui il caricamento è terminato.
+         */
+        private long loadedAt;
+
+        boolean isLoaded() {
+            return future.isDone();
+        }
+    }
+
+    /**
+     * Budget di memoria in byte per i valori in cache.
+     */
+    private final long maxBytes;
+
+    /**
+     * Funzione che stima la dimensione in byte di un valore.
+     */
+    private final ToLongFunction<V> sizer;
+
+    /**
+     * Tempo di vita delle voci in millisecondi (0 = nessuna scadenza).
+     */
+    private final long ttlMillis;
+
+    /**
+     * Voci della cache in ordine di accesso (dalla meno recente alla più recente).
+     */
+    private final LinkedHashMap<String, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Somma delle dimensioni stimate dei valori caricati.
+     */
+    private long usedBytes;
+
+    /**
+     * Nomi delle fasi con cui un accesso compare nella traccia della richiesta: un hit comprende l'eventuale
+     * attesa del caricamento eseguito da un altro thread, un miss comprende il caricamento.
+     */
+    private final String hitPhase;
+    private final String missPhase;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    /**
+     * Costruttore della classe SharedCache.
+     * @param name Il nome della cache, usato nelle fasi della traccia ({@code cache.<nome>.hit} e {@code cache.<nome>.miss}).
+     * @param maxBytes Il budget di memoria in byte.
+     * @param ttlMillis Il tempo di vita delle voci in millisecondi (0 = nessuna scadenza).
+     * @param sizer La funzione che stima la dimensione in byte di un valore.
+     */
+    SharedCache(String name, long maxBytes, long ttlMillis, ToLongFunction<V> sizer) {
+        this.hitPhase = "cache." + name + ".hit";
+        this.missPhase = "cache." + name + ".miss";
+        this.maxBytes = maxBytes;
+        this.ttlMillis = ttlMillis;
+        this.sizer = sizer;
+    }
+
+    /**
+     * Restituisce il valore associato alla chiave, caricandolo se non è in cache.
+     * Se un altro thread sta già caricando la stessa chiave ne attende il risultato invece di ripetere il caricamento.
+     * Il caricamento viene eseguito dal thread chiamante, che non deve quindi attendere una risorsa condivisa
+     * con i thread in attesa della stessa voce (ad esempio un posto nel pool di calcolo da cui vengono chiamati).
+     * @param key La chiave (ad esempio il nome della tabella).
+     * @param loader L'operazione che produce il valore.
+     * @return Il valore condiviso.
+     * @throws Exception L'eccezione sollevata dal caricamento.
+     */
+    V get(String key, Callable<V> loader) throws Exception {
+        long start = System.nanoTime();
+        Entry<V> entry;
+        boolean owner = false;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry != null && isExpired(entry, System.currentTimeMillis())) {
+                remove(key, entry);
+                entry = null;
+            }
+            if (entry == null) {
+                entry = new Entry<>();
+                entries.put(key, entry);
+                owner = true;
+                misses.increment();
+            } else {
+                hits.increment();
+            }
+        }
+        if (owner) {
+            load(key, entry, loader);
+        }
+        try {
+            return entry.future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) throw (Exception) cause;
+            throw (Error) cause;
+        } finally {
+            Trace.record(owner ? missPhase : hitPhase, start);
+        }
+    }
+
+    /**
+     * Esegue il caricamento per conto di tutti i thread in attesa della stessa voce.
+     * @param key La chiave.
+     * @param entry La voce da completare.
+     * @param loader L'operazione che produce il valore.
+     */
+    private void load(String key, Entry<V> entry, Callable<V> loader) {
+        V value;
+        try {
+            value = loader.call();
+        } catch (Throwable e) {
+            failures.increment();
+            synchronized (this) {
+                // un caricamento fallito non resta in cache: la richiesta successiva riprova
+                if (entries.get(key) == entry) entries.remove(key);
+            }
+            entry.future.completeExceptionally(e);
+            return;
+        }
+        synchronized (this) {
+            entry.size = sizer.applyAsLong(value);
+            entry.loadedAt = System.currentTimeMillis();
+            if (entries.get(key) == entry) {
+                usedBytes += entry.size;
+                evict();
+            }
+        }
+        entry.future.complete(value);
+    }
+
+    /**
+     * Invalida la voce associata alla chiave; il prossimo accesso la ricaricherà.
+     * @param key La chiave.
+     * @return true se la chiave era in cache.
+     */
+    synchronized boolean invalidate(String key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) return false;
+        remove(key, entry);
+        return true;
+    }
+
+    /**
+     * Invalida tutte le voci la cui chiave soddisfa il predicato.
+     * @param keyFilter Il predicato sulle chiavi.
+     * @return Il numero di voci invalidate.
+     */
+    synchronized int invalidateIf(Predicate<String> keyFilter) {
+        int removed = 0;
+        Iterator<Map.Entry<String, Entry<V>>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Entry<V>> e = it.next();
+            if (keyFilter.test(e.getKey())) {
+                it.remove();
+                if (e.getValue().isLoaded()) usedBytes -= e.getValue().size;
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Invalida tutte le voci della cache.
+     */
+    synchronized void invalidateAll() {
+        entries.clear();
+        usedBytes = 0;
+    }
+
+    /**
+     * Scarta le voci scadute e, in ordine LRU, quelle necessarie a rientrare nel budget di memoria.
+     * Le voci in caricamento non vengono scartate.
+     */
+    private void evict() {
+        long now = System.currentTimeMillis();
+        Iterator<Entry<V>> it = entries.values().iterator();
+        while (it.hasNext()) {
+            Entry<V> entry = it.next();
+            if (entry.isLoaded() && (usedBytes > maxBytes || isExpired(entry, now))) {
+                it.remove();
+                usedBytes -= entry.size;
+                evictions.increment();
+            }
+        }
+    }
+
+    private boolean isExpired(Entry<V> entry, long now) {
+        return ttlMillis > 0 && entry.isLoaded() && now - entry.loadedAt > ttlMillis;
+    }
+
+    private void remove(String key, Entry<V> entry) {
+        entries.remove(key);
+        if (entry.isLoaded()) usedBytes -= entry.size;
+    }
+
+    /**
+     * Restituisce una rappresentazione testuale dello stato e delle statistiche della cache.
+     * @return La stringa con voci, memoria occupata, hit, miss, scarti e caricamenti falliti.
+     */
+    public synchronized String toString() {
+        return String.format(Locale.ROOT, "entries=%d used=%dB budget=%dB hits=%d misses=%d evictions=%d failures=%d",
+                entries.size(), usedBytes, maxBytes, hits.sum(), misses.sum(), evictions.sum(), failures.sum());
+    }
+}
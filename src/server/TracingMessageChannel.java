@@ -0,0 +1,54 @@
+package server;
+
+import metrics.Trace;
+import java.io.IOException;
+
+/**
+ * La classe TracingMessageChannel avvolge il canale di una connessione per la durata di un comando tracciato
+ * e registra nella traccia il tempo speso a scrivere i messaggi ("response.serialize") e a inviarli ("response.send").
+ * Un messaggio più grande del buffer del canale viene in parte inviato già durante la scrittura,
+ * per cui la serializzazione può comprendere una parte dell'invio.
+ * @see ServerOneClient#TRACE_FLAG
+ */
+class TracingMessageChannel implements MessageChannel {
+
+    private final MessageChannel channel;
+    private final Trace trace;
+
+    TracingMessageChannel(MessageChannel channel, Trace trace) {
+        this.channel = channel;
+        this.trace = trace;
+    }
+
+    /**
+     * Restituisce il canale avvolto.
+     * @return Il canale della connessione.
+     */
+    MessageChannel getChannel() {
+        return channel;
+    }
+
+    @Override
+    public Object read() throws IOException, ClassNotFoundException {
+        return channel.read();
+    }
+
+    @Override
+    public void write(Object message) throws IOException {
+        long start = System.nanoTime();
+        channel.write(message);
+        trace.add("response.serialize", System.nanoTime() - start);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        long start = System.nanoTime();
+        channel.flush();
+        trace.add("response.send", System.nanoTime() - start);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}